@@ -0,0 +1,210 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the quality metrics of an {@link MzQC} object by their CV
+ * accession. The index is built once in a single pass over the run and set
+ * qualities. Afterwards, the metrics of an accession for a single run or set
+ * are returned in constant time, and the metrics of an accession across all
+ * runs or sets in time linear to their number.
+ *
+ * The index references the metric objects of the underlying {@link MzQC}
+ * object, it does not reflect later modifications of the metric lists.
+ *
+ * <pre>
+ * AccessionIndex index = AccessionIndex.of(mzQC);
+ * List&lt;QualityMetric&gt; ms1Spectra = index.getRunQualityMetrics(5, "MS:4000059");
+ * </pre>
+ */
+public final class AccessionIndex {
+
+    /**
+     * Compressed sparse row storage of the metrics of one accession. The
+     * metrics of quality {@code i} are stored in
+     * {@code metrics[offsets[i]]} to {@code metrics[offsets[i + 1] - 1]}.
+     */
+    private record Entry(int[] offsets, QualityMetric[] metrics) {
+
+        List<QualityMetric> get(int index) {
+            int from = offsets[index];
+            int to = offsets[index + 1];
+            if (from == to) {
+                return Collections.emptyList();
+            }
+            return Collections.unmodifiableList(Arrays.asList(metrics).subList(from, to));
+        }
+
+        List<QualityMetric> all() {
+            return Collections.unmodifiableList(Arrays.asList(metrics));
+        }
+    }
+
+    private final int runCount;
+    private final int setCount;
+    private final Map<String, Entry> runIndex;
+    private final Map<String, Entry> setIndex;
+
+    private AccessionIndex(int runCount, int setCount, Map<String, Entry> runIndex, Map<String, Entry> setIndex) {
+        this.runCount = runCount;
+        this.setCount = setCount;
+        this.runIndex = runIndex;
+        this.setIndex = setIndex;
+    }
+
+    /**
+     * Build the accession index for the run and set qualities of the given
+     * object.
+     *
+     * @param mzQC the mzQC object.
+     * @return the accession index.
+     */
+    public static AccessionIndex of(MzQC mzQC) {
+        return new AccessionIndex(
+                mzQC.runQualities().size(),
+                mzQC.setQualities().size(),
+                build(mzQC.runQualities()),
+                build(mzQC.setQualities()));
+    }
+
+    private static Map<String, Entry> build(List<BaseQuality> qualities) {
+        int n = qualities.size();
+        Map<String, int[]> counts = new HashMap<>();
+        Map<String, List<QualityMetric>> metrics = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            for (QualityMetric metric : qualities.get(i).qualityMetrics()) {
+                String accession = metric.accession();
+                counts.computeIfAbsent(accession, (key) -> new int[n + 1])[i + 1]++;
+                metrics.computeIfAbsent(accession, (key) -> new ArrayList<>()).add(metric);
+            }
+        }
+        Map<String, Entry> index = new HashMap<>(counts.size() * 2);
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            int[] offsets = entry.getValue();
+            for (int i = 1; i <= n; i++) {
+                offsets[i] += offsets[i - 1];
+            }
+            index.put(entry.getKey(), new Entry(offsets, metrics.get(entry.getKey()).toArray(QualityMetric[]::new)));
+        }
+        return index;
+    }
+
+    /**
+     * Returns the accessions of all run quality metrics.
+     *
+     * @return the run quality accessions.
+     */
+    public Set<String> getRunAccessions() {
+        return Collections.unmodifiableSet(runIndex.keySet());
+    }
+
+    /**
+     * Returns the accessions of all set quality metrics.
+     *
+     * @return the set quality accessions.
+     */
+    public Set<String> getSetAccessions() {
+        return Collections.unmodifiableSet(setIndex.keySet());
+    }
+
+    /**
+     * Returns the metrics with the given accession for the given run.
+     *
+     * @param index the zero-based array index of a run.
+     * @param accession the cv accession of the metrics to return.
+     * @return an unmodifiable list of metrics, empty if the run has no metric
+     * with that accession.
+     * @throws IllegalArgumentException if the index is invalid
+     */
+    public List<QualityMetric> getRunQualityMetrics(int index, String accession) {
+        if (index < 0 || index >= runCount) {
+            throw new IllegalArgumentException("Can not access run " + index);
+        }
+        Entry entry = runIndex.get(accession);
+        return entry == null ? Collections.emptyList() : entry.get(index);
+    }
+
+    /**
+     * Returns the metrics with the given accession across all runs, in run
+     * order.
+     *
+     * @param accession the cv accession of the metrics to return.
+     * @return an unmodifiable list of metrics.
+     */
+    public List<QualityMetric> getRunQualityMetrics(String accession) {
+        Entry entry = runIndex.get(accession);
+        return entry == null ? Collections.emptyList() : entry.all();
+    }
+
+    /**
+     * Returns the metrics with the given accession for the given set.
+     *
+     * @param index the zero-based array index of a set.
+     * @param accession the cv accession of the metrics to return.
+     * @return an unmodifiable list of metrics, empty if the set has no metric
+     * with that accession.
+     * @throws IllegalArgumentException if the index is invalid
+     */
+    public List<QualityMetric> getSetQualityMetrics(int index, String accession) {
+        if (index < 0 || index >= setCount) {
+            throw new IllegalArgumentException("Can not access set " + index);
+        }
+        Entry entry = setIndex.get(accession);
+        return entry == null ? Collections.emptyList() : entry.get(index);
+    }
+
+    /**
+     * Returns the metrics with the given accession across all sets, in set
+     * order.
+     *
+     * @param accession the cv accession of the metrics to return.
+     * @return an unmodifiable list of metrics.
+     */
+    public List<QualityMetric> getSetQualityMetrics(String accession) {
+        Entry entry = setIndex.get(accession);
+        return entry == null ? Collections.emptyList() : entry.all();
+    }
+
+    /**
+     * Returns the indices of the runs that have at least one metric with the
+     * given accession, in ascending order.
+     *
+     * @param accession the cv accession.
+     * @return the run indices.
+     */
+    public int[] getRunsWithAccession(String accession) {
+        Entry entry = runIndex.get(accession);
+        if (entry == null) {
+            return new int[0];
+        }
+        int[] runs = new int[runCount];
+        int size = 0;
+        for (int i = 0; i < runCount; i++) {
+            if (entry.offsets[i + 1] > entry.offsets[i]) {
+                runs[size++] = i;
+            }
+        }
+        return Arrays.copyOf(runs, size);
+    }
+}
@@ -15,6 +15,23 @@
  */
 package org.lifstools.jmzqc;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.net.URI;
 
 /**
@@ -23,6 +40,8 @@ import java.net.URI;
  *
  * Type of input file.
  */
+@JsonDeserialize(using = AnalysisSoftware.Deserializer.class)
+@JsonSerialize(using = AnalysisSoftware.Serializer.class)
 public record AnalysisSoftware(
         String accession,
         String description,
@@ -31,4 +50,83 @@ public record AnalysisSoftware(
         URI uri,
         String version) {
 
+    private static final SerializableString ACCESSION = new SerializedString("accession");
+    private static final SerializableString DESCRIPTION = new SerializedString("description");
+    private static final SerializableString NAME = new SerializedString("name");
+    private static final SerializableString VALUE = new SerializedString("value");
+    private static final SerializableString URI_FIELD = new SerializedString("uri");
+    private static final SerializableString VERSION = new SerializedString("version");
+
+    static class Deserializer extends JsonDeserializer<AnalysisSoftware> implements ResolvableDeserializer {
+
+        private static final List<Object> PROPERTIES = List.of("accession", "description", "name", "value", "uri", "version");
+
+        private JsonDeserializer<Object> untyped;
+        private JsonDeserializer<Object> uriDeserializer;
+
+        @Override
+        public void resolve(DeserializationContext deserializationContext) throws JsonMappingException {
+            untyped = JsonCodecs.find(deserializationContext, Object.class);
+            uriDeserializer = JsonCodecs.find(deserializationContext, URI.class);
+        }
+
+        @Override
+        public Collection<Object> getKnownPropertyNames() {
+            return PROPERTIES;
+        }
+
+        @Override
+        public AnalysisSoftware deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JsonProcessingException {
+            JsonToken token = JsonCodecs.firstProperty(jsonParser);
+            if (token == null) {
+                return (AnalysisSoftware) deserializationContext.handleUnexpectedToken(AnalysisSoftware.class, jsonParser);
+            }
+            String accession = null;
+            String description = null;
+            String name = null;
+            Object value = null;
+            URI uri = null;
+            String version = null;
+            for (; token == JsonToken.FIELD_NAME; token = jsonParser.nextToken()) {
+                String field = jsonParser.currentName();
+                jsonParser.nextToken();
+                try {
+                    switch (field) {
+                        case "accession" ->
+                            accession = JsonCodecs.readString(jsonParser, deserializationContext);
+                        case "description" ->
+                            description = JsonCodecs.readString(jsonParser, deserializationContext);
+                        case "name" ->
+                            name = JsonCodecs.readString(jsonParser, deserializationContext);
+                        case "value" ->
+                            value = JsonCodecs.readValue(jsonParser, deserializationContext, untyped);
+                        case "uri" ->
+                            uri = JsonCodecs.readValue(jsonParser, deserializationContext, uriDeserializer);
+                        case "version" ->
+                            version = JsonCodecs.readString(jsonParser, deserializationContext);
+                        default ->
+                            deserializationContext.handleUnknownProperty(jsonParser, this, AnalysisSoftware.class, field);
+                    }
+                } catch (Exception ex) {
+                    throw JsonCodecs.wrap(ex, deserializationContext, AnalysisSoftware.class, field);
+                }
+            }
+            return Interner.intern(deserializationContext, new AnalysisSoftware(accession, description, name, value, uri, version));
+        }
+    }
+
+    static class Serializer extends JsonSerializer<AnalysisSoftware> {
+
+        @Override
+        public void serialize(AnalysisSoftware software, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+            jsonGenerator.writeStartObject(software);
+            JsonCodecs.writeString(jsonGenerator, ACCESSION, software.accession);
+            JsonCodecs.writeString(jsonGenerator, DESCRIPTION, software.description);
+            JsonCodecs.writeString(jsonGenerator, NAME, software.name);
+            JsonCodecs.writeValue(jsonGenerator, serializerProvider, VALUE, software.value);
+            JsonCodecs.writeUri(jsonGenerator, URI_FIELD, software.uri);
+            JsonCodecs.writeString(jsonGenerator, VERSION, software.version);
+            jsonGenerator.writeEndObject();
+        }
+    }
 }
@@ -15,6 +15,22 @@
  */
 package org.lifstools.jmzqc;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
+import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
@@ -26,13 +42,75 @@ import java.util.List;
  * Element containing metadata and qualityMetrics for a collection of related
  * runs (set).
  */
+@JsonDeserialize(using = BaseQuality.Deserializer.class)
+@JsonSerialize(using = BaseQuality.Serializer.class)
 public record BaseQuality(
         Metadata metadata,
         List<QualityMetric> qualityMetrics) {
 
+    private static final SerializableString METADATA = new SerializedString("metadata");
+    private static final SerializableString QUALITY_METRICS = new SerializedString("qualityMetrics");
+
     public BaseQuality  {
         if (qualityMetrics == null) {
             qualityMetrics = Collections.emptyList();
         }
     }
+
+    static class Deserializer extends JsonDeserializer<BaseQuality> implements ResolvableDeserializer {
+
+        private static final List<Object> PROPERTIES = List.of("metadata", "qualityMetrics");
+
+        private JsonDeserializer<Object> metadataDeserializer;
+        private JsonDeserializer<Object> metricDeserializer;
+
+        @Override
+        public void resolve(DeserializationContext deserializationContext) throws JsonMappingException {
+            metadataDeserializer = JsonCodecs.find(deserializationContext, Metadata.class);
+            metricDeserializer = JsonCodecs.find(deserializationContext, QualityMetric.class);
+        }
+
+        @Override
+        public Collection<Object> getKnownPropertyNames() {
+            return PROPERTIES;
+        }
+
+        @Override
+        public BaseQuality deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JsonProcessingException {
+            JsonToken token = JsonCodecs.firstProperty(jsonParser);
+            if (token == null) {
+                return (BaseQuality) deserializationContext.handleUnexpectedToken(BaseQuality.class, jsonParser);
+            }
+            Metadata metadata = null;
+            List<QualityMetric> qualityMetrics = null;
+            for (; token == JsonToken.FIELD_NAME; token = jsonParser.nextToken()) {
+                String field = jsonParser.currentName();
+                jsonParser.nextToken();
+                try {
+                    switch (field) {
+                        case "metadata" ->
+                            metadata = JsonCodecs.readValue(jsonParser, deserializationContext, metadataDeserializer);
+                        case "qualityMetrics" ->
+                            qualityMetrics = JsonCodecs.readList(jsonParser, deserializationContext, metricDeserializer);
+                        default ->
+                            deserializationContext.handleUnknownProperty(jsonParser, this, BaseQuality.class, field);
+                    }
+                } catch (Exception ex) {
+                    throw JsonCodecs.wrap(ex, deserializationContext, BaseQuality.class, field);
+                }
+            }
+            return new BaseQuality(metadata, qualityMetrics);
+        }
+    }
+
+    static class Serializer extends JsonSerializer<BaseQuality> {
+
+        @Override
+        public void serialize(BaseQuality quality, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+            jsonGenerator.writeStartObject(quality);
+            JsonCodecs.writeValue(jsonGenerator, serializerProvider, METADATA, quality.metadata);
+            JsonCodecs.writeList(jsonGenerator, serializerProvider, QUALITY_METRICS, quality.qualityMetrics, QualityMetric.class);
+            jsonGenerator.writeEndObject();
+        }
+    }
 }
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.networknt.schema.ValidationMessage;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Validates many mzQC files concurrently with one shared, precompiled
+ * {@link MzQCValidator}. Files are validated on a {@link ForkJoinPool} with a
+ * configurable number of threads, results are returned in input order.
+ *
+ * <pre>
+ * List&lt;Path&gt; files = BatchValidator.resolve(List.of("runs/", "other/*.mzQC"));
+ * List&lt;BatchValidator.Result&gt; results = new BatchValidator(8).validate(files);
+ * BatchValidator.writeTsv(writer, results);
+ * </pre>
+ */
+public class BatchValidator {
+
+    /**
+     * Validation status of a single file.
+     */
+    public enum Status {
+        /**
+         * The file was read and produced no validation messages.
+         */
+        VALID,
+        /**
+         * The file was read and produced validation messages.
+         */
+        INVALID,
+        /**
+         * The file could not be read, parsed or validated.
+         */
+        ERROR
+    }
+
+    /**
+     * Validation result for a single file.
+     *
+     * @param file the validated file.
+     * @param status the validation status.
+     * @param messages the validation messages, empty unless the status is
+     * {@link Status#INVALID}.
+     * @param error the error message, null unless the status is
+     * {@link Status#ERROR}.
+     * @param durationNanos the time taken to read and validate the file.
+     */
+    public record Result(Path file, Status status, Set<ValidationMessage> messages, String error, long durationNanos) {
+
+        public Result {
+            messages = messages == null ? Collections.emptySet() : messages;
+        }
+
+        /**
+         * Returns the time taken to read and validate the file.
+         *
+         * @return the duration in milliseconds.
+         */
+        public double durationMillis() {
+            return durationNanos / 1_000_000.0d;
+        }
+    }
+
+    private final int threads;
+    private final MzQCValidator validator;
+
+    /**
+     * Create a new batch validator with one thread per available processor.
+     */
+    public BatchValidator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a new batch validator with the given number of threads and the
+     * default validator.
+     *
+     * @param threads the number of threads, at least one.
+     * @throws IllegalArgumentException if threads is smaller than one.
+     */
+    public BatchValidator(int threads) {
+        this(threads, MzQCValidator.getDefault());
+    }
+
+    /**
+     * Create a new batch validator with the given number of threads and
+     * validator.
+     *
+     * @param threads the number of threads, at least one.
+     * @param validator the validator shared by all threads.
+     * @throws IllegalArgumentException if threads is smaller than one.
+     */
+    public BatchValidator(int threads, MzQCValidator validator) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1, was " + threads);
+        }
+        this.threads = threads;
+        this.validator = validator;
+    }
+
+    /**
+     * Resolve input arguments to a list of files. Each input may be a file, a
+     * directory, which is searched recursively for mzQC files as defined by
+     * {@link MzQCFormat#isMzQCFileName(String)}, or a glob pattern like
+     * {@code data/**&#47;*.mzQC}. Duplicates are removed, the order of the
+     * inputs is kept and files found in a directory or by a pattern are
+     * sorted.
+     *
+     * @param inputs the files, directories or glob patterns.
+     * @return the resolved files.
+     * @throws IOException if a directory can not be searched.
+     */
+    public static List<Path> resolve(List<String> inputs) throws IOException {
+        Set<Path> files = new LinkedHashSet<>();
+        for (String input : inputs) {
+            int globStart = indexOfGlob(input);
+            if (globStart >= 0) {
+                int separator = input.lastIndexOf('/', globStart);
+                Path base = separator < 0 ? Paths.get("") : Paths.get(input.substring(0, separator + 1));
+                Path searchBase = separator < 0 ? Paths.get(".") : base;
+                PathMatcher matcher = base.getFileSystem().getPathMatcher("glob:" + input.substring(separator + 1));
+                try (Stream<Path> paths = Files.walk(searchBase)) {
+                    paths.filter(Files::isRegularFile)
+                            .filter((p) -> matcher.matches(searchBase.relativize(p)))
+                            .map((p) -> base.resolve(searchBase.relativize(p)))
+                            .sorted()
+                            .forEachOrdered(files::add);
+                }
+            } else {
+                Path path = Paths.get(input);
+                if (Files.isDirectory(path)) {
+                    try (Stream<Path> paths = Files.walk(path)) {
+                        paths.filter(Files::isRegularFile)
+                                .filter((p) -> MzQCFormat.isMzQCFileName(p.getFileName().toString()))
+                                .sorted()
+                                .forEachOrdered(files::add);
+                    }
+                } else {
+                    files.add(path);
+                }
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * Read a list of inputs from a file, one per line. Blank lines and lines
+     * starting with {@code #} are ignored.
+     *
+     * @param fileList the file containing the inputs.
+     * @return the inputs.
+     * @throws IOException if the file can not be read.
+     */
+    public static List<String> readFileList(Path fileList) throws IOException {
+        try (Stream<String> lines = Files.lines(fileList)) {
+            return lines.map(String::strip)
+                    .filter((l) -> !l.isEmpty() && !l.startsWith("#"))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static int indexOfGlob(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            switch (input.charAt(i)) {
+                case '*', '?', '[', '{' -> {
+                    return i;
+                }
+                default -> {
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Validate the given files concurrently.
+     *
+     * @param files the files to validate.
+     * @return the results, in the order of the files.
+     */
+    public List<Result> validate(List<Path> files) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Future<Result>> futures = new ArrayList<>(files.size());
+            for (Path file : files) {
+                futures.add(pool.submit(() -> validate(file)));
+            }
+            List<Result> results = new ArrayList<>(files.size());
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while validating files", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Unexpected error while validating files", ex.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Validate a single file.
+     *
+     * @param file the file to validate.
+     * @return the result.
+     */
+    public Result validate(Path file) {
+        long start = System.nanoTime();
+        try {
+            Set<ValidationMessage> messages = validator.validate(file.toFile());
+            return new Result(file, messages.isEmpty() ? Status.VALID : Status.INVALID, messages, null, System.nanoTime() - start);
+        } catch (IOException | RuntimeException ex) {
+            String error = ex.getMessage() == null ? ex.getClass().getName() : ex.getMessage();
+            return new Result(file, Status.ERROR, null, error, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Write the results as a tab-separated report with one line per
+     * validation message, or one line per file without messages.
+     *
+     * @param writer the writer, not closed by this method.
+     * @param results the results.
+     * @throws IOException if writing fails.
+     */
+    public static void writeTsv(Writer writer, List<Result> results) throws IOException {
+        writer.write(String.join("\t", "File", "Status", "DurationMillis", "Code", "Path", "SchemaPath", "Type", "Message"));
+        writer.write("\n");
+        for (Result result : results) {
+            String prefix = String.join("\t", result.file().toString(), result.status().name(), String.format(Locale.ROOT, "%.3f", result.durationMillis()));
+            if (result.messages().isEmpty()) {
+                writer.write(String.join("\t", prefix, "", "", "", "", tsv(result.error())));
+                writer.write("\n");
+            }
+            for (ValidationMessage message : result.messages()) {
+                writer.write(String.join("\t", prefix, tsv(message.getCode()), tsv(message.getPath()), tsv(message.getSchemaPath()), tsv(message.getType()), tsv(message.getMessage())));
+                writer.write("\n");
+            }
+        }
+    }
+
+    private static String tsv(String value) {
+        return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    /**
+     * Write the results as a JSON report with a summary and one entry per
+     * file.
+     *
+     * @param writer the writer, not closed by this method.
+     * @param results the results.
+     * @throws IOException if writing fails.
+     */
+    public static void writeJson(Writer writer, List<Result> results) throws IOException {
+        try (JsonGenerator generator = Converter.getObjectMapper().getFactory().createGenerator(writer)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("summary");
+            generator.writeNumberField("files", results.size());
+            for (Status status : Status.values()) {
+                generator.writeNumberField(status.name().toLowerCase(Locale.ROOT), results.stream().filter((r) -> r.status() == status).count());
+            }
+            generator.writeEndObject();
+            generator.writeArrayFieldStart("results");
+            for (Result result : results) {
+                generator.writeStartObject();
+                generator.writeStringField("file", result.file().toString());
+                generator.writeStringField("status", result.status().name());
+                generator.writeNumberField("durationMillis", result.durationMillis());
+                if (result.error() != null) {
+                    generator.writeStringField("error", result.error());
+                }
+                generator.writeArrayFieldStart("messages");
+                for (ValidationMessage message : result.messages()) {
+                    generator.writeStartObject();
+                    generator.writeStringField("code", message.getCode());
+                    generator.writeStringField("path", message.getPath());
+                    generator.writeStringField("schemaPath", message.getSchemaPath());
+                    generator.writeStringField("type", message.getType());
+                    generator.writeStringField("message", message.getMessage());
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+}
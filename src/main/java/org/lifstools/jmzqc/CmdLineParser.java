@@ -19,10 +19,16 @@ import com.networknt.schema.ValidationMessage;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.nio.file.Files;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -105,6 +111,13 @@ public class CmdLineParser {
         String versionOpt = addVersionOption(options);
         String inputFileOpt = addFileInputOption(options);
         String outputToFileOpt = addOutputToFileOption(options);
+        String batchOpt = addBatchOption(options);
+        String fileListOpt = addFileListOption(options);
+        String threadsOpt = addThreadsOption(options);
+        String reportFormatOpt = addReportFormatOption(options);
+        String mergeOpt = addMergeOption(options);
+        String mergeOrderOpt = addMergeOrderOption(options);
+        String exportOpt = addExportOption(options);
 
         CommandLine line = parser.parse(options, args);
         if (line.getOptions().length == 0 || line.hasOption(helpOpt)) {
@@ -112,6 +125,92 @@ public class CmdLineParser {
             formatter.printHelp("jmzqc", options);
         } else if (line.hasOption(versionOpt)) {
             System.out.println(getAppInfo());
+        } else if (line.hasOption(mergeOpt)) {
+            if (!line.hasOption(outputToFileOpt)) {
+                System.err.println("Merging requires an output file, please provide one with --" + outputToFileOpt + "!");
+                System.exit(1);
+            }
+            MzQCMerger.Order order = switch (line.getOptionValue(mergeOrderOpt, "input")) {
+                case "input" ->
+                    MzQCMerger.Order.INPUT;
+                case "creationDate" ->
+                    MzQCMerger.Order.CREATION_DATE;
+                case "label" ->
+                    MzQCMerger.Order.LABEL;
+                default -> {
+                    System.err.println("Unsupported merge order '" + line.getOptionValue(mergeOrderOpt) + "', use input, creationDate or label!");
+                    System.exit(1);
+                    yield null;
+                }
+            };
+            List<Path> inputs = BatchValidator.resolve(Arrays.asList(line.getOptionValues(mergeOpt)));
+            String outputFile = line.getOptionValue(outputToFileOpt);
+            // a previous merge result in an input directory is not merged again
+            Path output = Path.of(outputFile).toAbsolutePath().normalize();
+            inputs.removeIf((p) -> p.toAbsolutePath().normalize().equals(output));
+            if (inputs.isEmpty()) {
+                System.err.println("No input files to merge!");
+                System.exit(1);
+            }
+            int runs = new MzQCMerger(inputs, order).merge(Path.of(outputFile));
+            System.out.println("Merged " + runs + " run qualities from " + inputs.size() + " files into '" + outputFile + "'.");
+            System.exit(0);
+        } else if (line.hasOption(exportOpt)) {
+            Path input = Path.of(line.getOptionValue(exportOpt));
+            try {
+                if (line.hasOption(outputToFileOpt)) {
+                    String outputFile = line.getOptionValue(outputToFileOpt);
+                    long rows = new MetricExporter(MetricExporter.Format.forFileName(outputFile)).export(input, Path.of(outputFile));
+                    System.out.println("Exported " + rows + " metric values to '" + outputFile + "'.");
+                } else {
+                    PrintWriter pw = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+                    new MetricExporter(MetricExporter.Format.TSV).export(input, pw);
+                    pw.flush();
+                }
+            } catch (NoSuchFileException ex) {
+                System.err.println("File " + input + " does not exist!");
+                System.exit(1);
+            }
+            System.exit(0);
+        } else if (line.hasOption(batchOpt) || line.hasOption(fileListOpt)) {
+            List<String> inputs = new ArrayList<>();
+            if (line.hasOption(batchOpt)) {
+                inputs.addAll(Arrays.asList(line.getOptionValues(batchOpt)));
+            }
+            if (line.hasOption(fileListOpt)) {
+                inputs.addAll(BatchValidator.readFileList(Path.of(line.getOptionValue(fileListOpt))));
+            }
+            int threads = Runtime.getRuntime().availableProcessors();
+            if (line.hasOption(threadsOpt)) {
+                try {
+                    threads = Integer.parseInt(line.getOptionValue(threadsOpt));
+                } catch (NumberFormatException ex) {
+                    threads = 0;
+                }
+                if (threads < 1) {
+                    System.err.println("Unsupported number of threads '" + line.getOptionValue(threadsOpt) + "', use a positive integer!");
+                    System.exit(1);
+                }
+            }
+            String reportFormat = line.getOptionValue(reportFormatOpt, "tsv");
+            if (!"tsv".equals(reportFormat) && !"json".equals(reportFormat)) {
+                System.err.println("Unsupported report format '" + reportFormat + "', use tsv or json!");
+                System.exit(1);
+            }
+            List<BatchValidator.Result> results = new BatchValidator(threads).validate(BatchValidator.resolve(inputs));
+            if (line.hasOption(outputToFileOpt)) {
+                String outputFile = line.getOptionValue(outputToFileOpt);
+                System.out.println("Saving output to '" + outputFile + "'.");
+                try ( BufferedWriter bw = newBufferedWriter(Path.of(outputFile))) {
+                    writeReport(bw, reportFormat, results);
+                }
+            } else {
+                PrintWriter pw = new PrintWriter(System.out);
+                writeReport(pw, reportFormat, results);
+                pw.flush();
+            }
+            boolean allValid = results.stream().allMatch((r) -> r.status() == BatchValidator.Status.VALID);
+            System.exit(allValid ? 0 : 1);
         } else {
             boolean toFile = false;
             String outputFile = "jmzqc-out.tsv";
@@ -167,7 +266,7 @@ public class CmdLineParser {
 
     private static boolean writeToFile(File f, List<ValidationMessage> results) {
 
-        try ( BufferedWriter bw = Files.newBufferedWriter(f.toPath())) {
+        try ( BufferedWriter bw = newBufferedWriter(f.toPath())) {
             writeToWriter(bw, results);
             return true;
         } catch (IOException ex) {
@@ -212,13 +311,25 @@ public class CmdLineParser {
         }
     }
 
+    private static BufferedWriter newBufferedWriter(Path path) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(Converter.openOutputStream(path), StandardCharsets.UTF_8));
+    }
+
+    private static void writeReport(Writer writer, String reportFormat, List<BatchValidator.Result> results) throws IOException {
+        if ("json".equals(reportFormat)) {
+            BatchValidator.writeJson(writer, results);
+        } else {
+            BatchValidator.writeTsv(writer, results);
+        }
+    }
+
     private static List<ValidationMessage> validate(File inputFile) throws IOException {
         return new LinkedList<>(Converter.validate(inputFile));
     }
 
     protected static String addFileInputOption(Options options) {
         String fileOpt = "file";
-        options.addOption("f", fileOpt, true, "Input a file name to read from for lipid name for parsing. Each lipid name must be on a separate line.");
+        options.addOption("f", fileOpt, true, "Input an mzQC file to validate. JSON, Smile and gzip compressed files are detected automatically.");
         return fileOpt;
     }
 
@@ -236,8 +347,52 @@ public class CmdLineParser {
 
     protected static String addOutputToFileOption(Options options) {
         String outputToFileOpt = "outputFile";
-        options.addOption("o", outputToFileOpt, true, "Write output to provided file in tsv format instead of to std out.");
+        options.addOption("o", outputToFileOpt, true, "Write output to provided file in tsv format instead of to std out. The file is gzip compressed if its name ends in '.gz'.");
         return outputToFileOpt;
     }
 
+    protected static String addBatchOption(Options options) {
+        String batchOpt = "batch";
+        options.addOption(Option.builder("b").longOpt(batchOpt).hasArgs().argName("inputs")
+                .desc("Validate many files concurrently. Inputs may be files, directories (searched recursively for *.mzQC files) or glob patterns like 'data/**/*.mzQC'. Writes one report with per-file status and timings.").build());
+        return batchOpt;
+    }
+
+    protected static String addMergeOption(Options options) {
+        String mergeOpt = "merge";
+        options.addOption(Option.builder("m").longOpt(mergeOpt).hasArgs().argName("inputs")
+                .desc("Merge the run and set qualities of many mzQC files into the file provided with --outputFile. Inputs may be files, directories or glob patterns, like for --batch.").build());
+        return mergeOpt;
+    }
+
+    protected static String addMergeOrderOption(Options options) {
+        String mergeOrderOpt = "mergeOrder";
+        options.addOption("s", mergeOrderOpt, true, "Order of the merged run qualities, either 'input' (default), 'creationDate' or 'label'.");
+        return mergeOrderOpt;
+    }
+
+    protected static String addExportOption(Options options) {
+        String exportOpt = "export";
+        options.addOption("e", exportOpt, true, "Export all quality metrics of the provided mzQC file as a long-format table with one row per value, to the file provided with --outputFile or to std out. The table is written as csv if the output file name ends in '.csv' or '.csv.gz', as tsv otherwise.");
+        return exportOpt;
+    }
+
+    protected static String addFileListOption(Options options) {
+        String fileListOpt = "fileList";
+        options.addOption("l", fileListOpt, true, "Validate the files, directories or glob patterns listed in the provided file, one per line, like for --batch.");
+        return fileListOpt;
+    }
+
+    protected static String addThreadsOption(Options options) {
+        String threadsOpt = "threads";
+        options.addOption("t", threadsOpt, true, "Number of threads for batch validation. Defaults to the number of available processors.");
+        return threadsOpt;
+    }
+
+    protected static String addReportFormatOption(Options options) {
+        String reportFormatOpt = "reportFormat";
+        options.addOption("r", reportFormatOpt, true, "Format of the batch validation report, either 'tsv' (default) or 'json'.");
+        return reportFormatOpt;
+    }
+
 }
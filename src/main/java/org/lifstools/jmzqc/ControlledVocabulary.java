@@ -15,13 +15,96 @@
  */
 package org.lifstools.jmzqc;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.net.URI;
 
 /**
  * Element describing a controlled vocabulary used to refer to the source of the
  * used CV terms in qualityMetric objects (and others).
  */
+@JsonDeserialize(using = ControlledVocabulary.Deserializer.class)
+@JsonSerialize(using = ControlledVocabulary.Serializer.class)
 public record ControlledVocabulary(
         String name, 
         URI uri, 
-        String version){}
+        String version){
+
+    private static final SerializableString NAME = new SerializedString("name");
+    private static final SerializableString URI_FIELD = new SerializedString("uri");
+    private static final SerializableString VERSION = new SerializedString("version");
+
+    static class Deserializer extends JsonDeserializer<ControlledVocabulary> implements ResolvableDeserializer {
+
+        private static final List<Object> PROPERTIES = List.of("name", "uri", "version");
+
+        private JsonDeserializer<Object> uriDeserializer;
+
+        @Override
+        public void resolve(DeserializationContext deserializationContext) throws JsonMappingException {
+            uriDeserializer = JsonCodecs.find(deserializationContext, URI.class);
+        }
+
+        @Override
+        public Collection<Object> getKnownPropertyNames() {
+            return PROPERTIES;
+        }
+
+        @Override
+        public ControlledVocabulary deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JsonProcessingException {
+            JsonToken token = JsonCodecs.firstProperty(jsonParser);
+            if (token == null) {
+                return (ControlledVocabulary) deserializationContext.handleUnexpectedToken(ControlledVocabulary.class, jsonParser);
+            }
+            String name = null;
+            URI uri = null;
+            String version = null;
+            for (; token == JsonToken.FIELD_NAME; token = jsonParser.nextToken()) {
+                String field = jsonParser.currentName();
+                jsonParser.nextToken();
+                try {
+                    switch (field) {
+                        case "name" ->
+                            name = JsonCodecs.readString(jsonParser, deserializationContext);
+                        case "uri" ->
+                            uri = JsonCodecs.readValue(jsonParser, deserializationContext, uriDeserializer);
+                        case "version" ->
+                            version = JsonCodecs.readString(jsonParser, deserializationContext);
+                        default ->
+                            deserializationContext.handleUnknownProperty(jsonParser, this, ControlledVocabulary.class, field);
+                    }
+                } catch (Exception ex) {
+                    throw JsonCodecs.wrap(ex, deserializationContext, ControlledVocabulary.class, field);
+                }
+            }
+            return Interner.intern(deserializationContext, new ControlledVocabulary(name, uri, version));
+        }
+    }
+
+    static class Serializer extends JsonSerializer<ControlledVocabulary> {
+
+        @Override
+        public void serialize(ControlledVocabulary cv, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+            jsonGenerator.writeStartObject(cv);
+            JsonCodecs.writeString(jsonGenerator, NAME, cv.name);
+            JsonCodecs.writeUri(jsonGenerator, URI_FIELD, cv.uri);
+            JsonCodecs.writeString(jsonGenerator, VERSION, cv.version);
+            jsonGenerator.writeEndObject();
+        }
+    }
+}
@@ -15,28 +15,30 @@
  */
 package org.lifstools.jmzqc;
 
-import com.fasterxml.jackson.annotation.JsonInclude.Include;
-import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.core.JsonGenerator;
 import java.io.IOException;
 import com.fasterxml.jackson.databind.*;
-import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdScalarSerializer;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.json.JsonReadFeature;
-import com.networknt.schema.JsonSchema;
-import com.networknt.schema.JsonSchemaFactory;
-import com.networknt.schema.SchemaValidatorsConfig;
-import com.networknt.schema.SpecVersion;
+import com.fasterxml.jackson.core.JsonToken;
 import com.networknt.schema.ValidationMessage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.Month;
 import java.time.OffsetDateTime;
 import java.time.OffsetTime;
+import java.time.Year;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
@@ -44,15 +46,18 @@ import java.time.format.DateTimeFormatterBuilder;
 import java.time.temporal.ChronoField;
 import java.util.List;
 import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Provides convenience functions to parse date and time strings and to
- * serialize and deserialize mzQC from and to a variety of sources.
+ * serialize and deserialize mzQC from and to a variety of sources. Reading
+ * and writing is delegated to the {@link MzQCCodec#getDefault() default
+ * codec}; build an {@link MzQCCodec} to use other settings.
  */
 public class Converter {
     // Date-time helpers
 
-    private static final DateTimeFormatter DATE_TIME_FORMATTER = new DateTimeFormatterBuilder()
+    static final DateTimeFormatter DATE_TIME_FORMATTER = new DateTimeFormatterBuilder()
             .appendOptional(DateTimeFormatter.ISO_DATE_TIME)
             .appendOptional(DateTimeFormatter.ISO_OFFSET_DATE_TIME)
             .appendOptional(DateTimeFormatter.ISO_INSTANT)
@@ -64,14 +69,166 @@ public class Converter {
 
     /**
      * Parse a date and time string using the default date and time formatter.
+     * Date and times are returned in UTC. The common ISO-8601 form
+     * {@code yyyy-MM-ddTHH:mm:ss.SSSXXX} is parsed without the formatter.
      *
      * @param str the date time string
      * @return an {@link OffsetDateTime} object.
      */
     public static OffsetDateTime parseDateTimeString(String str) {
+        OffsetDateTime dateTime = parseIsoDateTime(str.toCharArray(), 0, str.length());
+        if (dateTime != null) {
+            return dateTime;
+        }
         return ZonedDateTime.from(Converter.DATE_TIME_FORMATTER.parse(str)).toOffsetDateTime();
     }
 
+    private static final int[] FRACTION_SCALE = {1_000_000_000, 100_000_000, 10_000_000, 1_000_000, 100_000, 10_000, 1_000, 100, 10, 1};
+
+    /**
+     * Parses {@code yyyy-MM-ddTHH:mm[:ss[.S...]][Z|+HH:MM|-HH:MM]}, with up to
+     * nine fraction digits, directly from the given characters. Returns null
+     * for other forms and for fields out of range, which are left to the
+     * formatter, so that the result is always the one of
+     * {@link #parseDateTimeString(String)}.
+     *
+     * @param chars the characters.
+     * @param offset the offset of the first character.
+     * @param length the number of characters.
+     * @return the date and time in UTC, or null.
+     */
+    static OffsetDateTime parseIsoDateTime(char[] chars, int offset, int length) {
+        int end = offset + length;
+        if (length < 16 || chars[offset + 4] != '-' || chars[offset + 7] != '-' || chars[offset + 10] != 'T' || chars[offset + 13] != ':') {
+            return null;
+        }
+        int year = digits(chars, offset, 4);
+        int month = digits(chars, offset + 5, 2);
+        int day = digits(chars, offset + 8, 2);
+        int hour = digits(chars, offset + 11, 2);
+        int minute = digits(chars, offset + 14, 2);
+        int second = 0;
+        int nano = 0;
+        int pos = offset + 16;
+        if (pos < end && chars[pos] == ':') {
+            second = pos + 3 <= end ? digits(chars, pos + 1, 2) : -1;
+            pos += 3;
+            if (pos < end && chars[pos] == '.') {
+                int start = ++pos;
+                while (pos < end && pos - start < 9 && isDigit(chars[pos])) {
+                    nano = nano * 10 + chars[pos++] - '0';
+                }
+                if (pos == start || (pos < end && isDigit(chars[pos]))) {
+                    return null;
+                }
+                nano *= FRACTION_SCALE[pos - start];
+            }
+        }
+        int offsetSeconds = 0;
+        if (pos < end) {
+            char sign = chars[pos];
+            if (sign == 'Z' && pos + 1 == end) {
+                offsetSeconds = 0;
+            } else if ((sign == '+' || sign == '-') && pos + 6 == end && chars[pos + 3] == ':') {
+                int offsetHours = digits(chars, pos + 1, 2);
+                int offsetMinutes = digits(chars, pos + 4, 2);
+                if (offsetHours < 0 || offsetMinutes < 0 || offsetMinutes > 59 || offsetHours * 60 + offsetMinutes > 18 * 60) {
+                    return null;
+                }
+                offsetSeconds = (offsetHours * 3600 + offsetMinutes * 60) * (sign == '-' ? -1 : 1);
+            } else {
+                return null;
+            }
+        }
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > Month.of(month).length(Year.isLeap(year))
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return null;
+        }
+        if (offsetSeconds == 0) {
+            return OffsetDateTime.of(year, month, day, hour, minute, second, nano, ZoneOffset.UTC);
+        }
+        return OffsetDateTime.of(year, month, day, hour, minute, second, nano, ZoneOffset.ofTotalSeconds(offsetSeconds))
+                .withOffsetSameInstant(ZoneOffset.UTC);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int digits(char[] chars, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            if (!isDigit(chars[i])) {
+                return -1;
+            }
+            value = value * 10 + chars[i] - '0';
+        }
+        return value;
+    }
+
+    /**
+     * Length of the longest date and time written by
+     * {@link #formatIsoDateTime(OffsetDateTime, char[])}.
+     */
+    static final int ISO_DATE_TIME_LENGTH = 35;
+
+    /**
+     * Writes the date and time into the buffer exactly like
+     * {@link DateTimeFormatter#ISO_OFFSET_DATE_TIME}, for years from 0 to
+     * 9999 and offsets in whole minutes.
+     *
+     * @param dateTime the date and time.
+     * @param buffer the buffer of at least {@link #ISO_DATE_TIME_LENGTH}
+     * characters.
+     * @return the number of characters written, or -1 if the date and time
+     * must be formatted by the formatter.
+     */
+    static int formatIsoDateTime(OffsetDateTime dateTime, char[] buffer) {
+        int year = dateTime.getYear();
+        int offsetSeconds = dateTime.getOffset().getTotalSeconds();
+        if (year < 0 || year > 9999 || offsetSeconds % 60 != 0) {
+            return -1;
+        }
+        writeDigits(buffer, 0, year, 4);
+        buffer[4] = '-';
+        writeDigits(buffer, 5, dateTime.getMonthValue(), 2);
+        buffer[7] = '-';
+        writeDigits(buffer, 8, dateTime.getDayOfMonth(), 2);
+        buffer[10] = 'T';
+        writeDigits(buffer, 11, dateTime.getHour(), 2);
+        buffer[13] = ':';
+        writeDigits(buffer, 14, dateTime.getMinute(), 2);
+        buffer[16] = ':';
+        writeDigits(buffer, 17, dateTime.getSecond(), 2);
+        int pos = 19;
+        int nano = dateTime.getNano();
+        if (nano != 0) {
+            buffer[pos++] = '.';
+            writeDigits(buffer, pos, nano, 9);
+            pos += 9;
+            while (buffer[pos - 1] == '0') {
+                pos--;
+            }
+        }
+        if (offsetSeconds == 0) {
+            buffer[pos++] = 'Z';
+            return pos;
+        }
+        int offsetMinutes = Math.abs(offsetSeconds / 60);
+        buffer[pos++] = offsetSeconds < 0 ? '-' : '+';
+        writeDigits(buffer, pos, offsetMinutes / 60, 2);
+        buffer[pos + 2] = ':';
+        writeDigits(buffer, pos + 3, offsetMinutes % 60, 2);
+        return pos + 5;
+    }
+
+    private static void writeDigits(char[] buffer, int offset, int value, int count) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
     private static final DateTimeFormatter TIME_FORMATTER = new DateTimeFormatterBuilder()
             .appendOptional(DateTimeFormatter.ISO_TIME)
             .appendOptional(DateTimeFormatter.ISO_OFFSET_TIME)
@@ -93,14 +250,18 @@ public class Converter {
     // Serialize/deserialize helpers
 
     /**
-     * Return a Coordinate holding an MzQC object from a file.
+     * Return a Coordinate holding an MzQC object from a file. The file may
+     * contain JSON or Smile data, the format is detected from the first
+     * bytes.
      *
-     * @param file the file containing the mzQC json data.
+     * @param file the file containing the mzQC json or smile data.
      * @return {@link Coordinate} holding the MzQC object.
      * @throws IOException
      */
     public static MzQC of(File file) throws IOException {
-        return of(Files.readString(file.toPath(), StandardCharsets.UTF_8));
+        try ( InputStream in = Files.newInputStream(file.toPath())) {
+            return of(in);
+        }
     }
 
     /**
@@ -112,11 +273,26 @@ public class Converter {
      */
     public static MzQC of(URL url) throws IOException {
         try ( InputStream in = url.openStream()) {
-            byte[] bytes = in.readAllBytes();
-            return of(new String(bytes, StandardCharsets.UTF_8));
+            return of(in);
         }
     }
 
+    /**
+     * Return an MzQC object from the JSON or Smile encoded bytes of an mzQC
+     * document. The format is detected from the first bytes.
+     *
+     * @param data the mzQC data.
+     * @return the MzQC object.
+     * @throws IOException
+     */
+    public static MzQC of(byte[] data) throws IOException {
+        return of(new ByteArrayInputStream(data));
+    }
+
+    private static MzQC of(InputStream in) throws IOException {
+        return MzQCCodec.getDefault().readValue(in);
+    }
+
     /**
      * Return a Coordinate holding an MzQC object from a string holding the JSON
      * representation of an mzQC data.
@@ -126,18 +302,74 @@ public class Converter {
      * @throws IOException
      */
     public static MzQC of(String json) throws IOException {
-        return ((Coordinate) getObjectReader().readValue(json)).mzQC();
+        return MzQCCodec.getDefault().readValue(json);
+    }
+
+    /**
+     * Read, validate and bind an mzQC file in a single pass, using the
+     * {@link ReadOptions#defaults() default options}.
+     *
+     * @param path the path of the mzQC file.
+     * @return the {@link ReadResult} holding the MzQC object and the
+     * validation messages.
+     * @throws IOException if the file can not be read or the JSON is
+     * malformed.
+     */
+    public static ReadResult read(Path path) throws IOException {
+        return read(path, ReadOptions.defaults());
+    }
+
+    /**
+     * Read, validate and bind an mzQC file in a single pass. The file is read
+     * and parsed into a JSON tree once. The tree is validated against the
+     * mzQC JSON schema and then bound to the {@link MzQC} object. If enabled in
+     * the options, the bound object is also checked with the
+     * {@link SemanticValidator}.
+     *
+     * @param path the path of the mzQC file.
+     * @param options the read options.
+     * @return the {@link ReadResult} holding the MzQC object and the
+     * validation messages.
+     * @throws IOException if the file can not be read or the JSON is
+     * malformed.
+     */
+    public static ReadResult read(Path path, ReadOptions options) throws IOException {
+        try ( InputStream is = Files.newInputStream(path)) {
+            return read(is, options);
+        }
+    }
+
+    /**
+     * Read, validate and bind an mzQC document from a URL in a single pass.
+     * The URL is only fetched once.
+     *
+     * @param url the url to read the mzQC data from.
+     * @param options the read options.
+     * @return the {@link ReadResult} holding the MzQC object and the
+     * validation messages.
+     * @throws IOException if the url can not be read or the JSON is
+     * malformed.
+     */
+    public static ReadResult read(URL url, ReadOptions options) throws IOException {
+        try ( InputStream is = url.openStream()) {
+            return read(is, options);
+        }
+    }
+
+    private static ReadResult read(InputStream is, ReadOptions options) throws IOException {
+        return MzQCCodec.getDefault().read(is, options);
     }
 
     /**
-     * Validate a mzQC JSON string.
+     * Validate a mzQC JSON string. Uses the shared
+     * {@link MzQCValidator#getDefault() default validator}.
      *
      * @param json the mzQC data in JSON format.
      * @return a set of validation messages.
      * @throws JsonProcessingException if the JSON is malformed.
      */
     public static Set<ValidationMessage> validate(String json) throws JsonProcessingException {
-        return defaultSchema().validate(getObjectReader().readTree(json));
+        return MzQCValidator.getDefault().validate(json);
     }
 
     /**
@@ -148,7 +380,7 @@ public class Converter {
      * @throws JsonProcessingException if the JSON is malformed.
      */
     public static Set<ValidationMessage> validate(MzQC mzQc) throws JsonProcessingException {
-        return defaultSchema().validate(getObjectReader().readTree(Converter.toJsonString(mzQc)));
+        return MzQCValidator.getDefault().validate(mzQc);
     }
 
     /**
@@ -159,7 +391,7 @@ public class Converter {
      * @throws JsonProcessingException if the JSON is malformed.
      */
     public static Set<ValidationMessage> validate(File file) throws JsonProcessingException, IOException {
-        return defaultSchema().validate(getObjectReader().readTree(Files.readString(file.toPath(), StandardCharsets.UTF_8)));
+        return MzQCValidator.getDefault().validate(file);
     }
 
     /**
@@ -170,9 +402,7 @@ public class Converter {
      * @throws JsonProcessingException if the JSON is malformed.
      */
     public static Set<ValidationMessage> validate(URL url) throws JsonProcessingException, IOException {
-        try ( InputStream is = url.openStream()) {
-            return defaultSchema().validate(getObjectReader().readTree(is));
-        }
+        return MzQCValidator.getDefault().validate(url);
     }
 
     /**
@@ -183,11 +413,13 @@ public class Converter {
      * @throws JsonProcessingException
      */
     public static String toJsonString(MzQC obj) throws JsonProcessingException {
-        return getObjectWriter().writeValueAsString(new Coordinate(obj));
+        return MzQCCodec.getDefault().writeValueAsString(obj);
     }
 
     /**
      * Serialize the MzQC object to a file containing the data as a JSON string.
+     * The JSON is streamed to the file without building the string in memory.
+     * Use {@link MzQCWriter} to write run and set qualities incrementally.
      *
      * @param obj the MzQC object
      * @param file the file to write to
@@ -195,53 +427,149 @@ public class Converter {
      * @throws JsonProcessingException
      */
     public static File toJsonFile(MzQC obj, File file) throws JsonProcessingException, IOException {
-        return Files.writeString(file.toPath(), toJsonString(obj), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING).toFile();
-    }
-
-    private static ObjectReader reader;
-    private static ObjectWriter writer;
-
-    private static void instantiateMapper() {
-        JsonFactoryBuilder jfb = new JsonFactoryBuilder().
-                enable(JsonReadFeature.ALLOW_TRAILING_COMMA);
-        ObjectMapper mapper = new ObjectMapper(jfb.build());
-        mapper.findAndRegisterModules();
-        mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
-        mapper.configure(SerializationFeature.INDENT_OUTPUT, true);
-        mapper.configure(JsonParser.Feature.ALLOW_COMMENTS, true);
-        mapper.setSerializationInclusion(Include.NON_EMPTY);
-        SimpleModule module = new SimpleModule();
-        module.addDeserializer(OffsetDateTime.class, new JsonDeserializer<OffsetDateTime>() {
-            @Override
-            public OffsetDateTime deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JsonProcessingException {
-                String value = jsonParser.getText();
-                return Converter.parseDateTimeString(value);
-            }
-        });
-        mapper.registerModule(module);
-        reader = mapper.readerFor(Coordinate.class);
-        writer = mapper.writerFor(Coordinate.class);
+        try ( OutputStream out = openOutputStream(file.toPath())) {
+            MzQCCodec.getDefault().writeValue(out, obj, MzQCFormat.JSON);
+        }
+        return file;
+    }
+
+    /**
+     * Serialize the MzQC object to a file in the binary Smile format. The
+     * file can be read with {@link #of(File)}, {@link #read(Path)} and the
+     * {@link MzQCReader}, which detect the format automatically.
+     *
+     * @param obj the MzQC object
+     * @param file the file to write to
+     * @return the file.
+     * @throws IOException
+     */
+    public static File toSmileFile(MzQC obj, File file) throws IOException {
+        try ( OutputStream out = openOutputStream(file.toPath())) {
+            MzQCCodec.getDefault().writeValue(out, obj, MzQCFormat.SMILE);
+        }
+        return file;
+    }
+
+    /**
+     * Serialize the MzQC object to bytes in the binary Smile format.
+     *
+     * @param obj the MzQC object
+     * @return the Smile encoded mzQC data.
+     * @throws JsonProcessingException
+     */
+    public static byte[] toSmileBytes(MzQC obj) throws JsonProcessingException {
+        return MzQCCodec.getDefault().writeValueAsSmile(obj);
+    }
+
+    /**
+     * Serialize the MzQC object to a file, in the format chosen by
+     * {@link MzQCFormat#forFileName(String)} from the file name.
+     *
+     * @param obj the MzQC object
+     * @param file the file to write to
+     * @return the file.
+     * @throws IOException
+     */
+    public static File toFile(MzQC obj, File file) throws IOException {
+        return switch (MzQCFormat.forFileName(file.getName())) {
+            case SMILE ->
+                toSmileFile(obj, file);
+            case JSON ->
+                toJsonFile(obj, file);
+        };
+    }
+
+    /**
+     * Creates a parser for the given JSON or Smile encoded stream with the
+     * default codec.
+     *
+     * @see MzQCCodec#createParser(InputStream)
+     */
+    static JsonParser createParser(InputStream in) throws IOException {
+        return MzQCCodec.getDefault().createParser(in);
     }
 
-    private static ObjectReader getObjectReader() {
-        if (reader == null) {
-            instantiateMapper();
+    /**
+     * Opens a buffered output stream to the given file, truncating it if it
+     * exists. The stream gzip compresses the data if the file name ends in
+     * {@code .gz}.
+     */
+    static OutputStream openOutputStream(Path path) throws IOException {
+        OutputStream out = Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        if (MzQCFormat.isGzipFileName(path.getFileName().toString())) {
+            return new BufferedOutputStream(new GZIPOutputStream(out, BUFFER_SIZE), BUFFER_SIZE);
         }
-        return reader;
+        return new BufferedOutputStream(out, BUFFER_SIZE);
+    }
+
+    /**
+     * Reads the JSON or Smile encoded stream into a JSON tree.
+     */
+    static JsonNode readTree(InputStream in) throws IOException {
+        return MzQCCodec.getDefault().readTree(in);
     }
 
-    private static ObjectWriter getObjectWriter() {
-        if (writer == null) {
-            instantiateMapper();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Reads date and times with {@link #parseDateTimeString(String)}, taking
+     * the characters of ISO-8601 strings directly from the parser.
+     */
+    static class DateTimeDeserializer extends StdScalarDeserializer<OffsetDateTime> {
+
+        private static final long serialVersionUID = 1L;
+
+        DateTimeDeserializer() {
+            super(OffsetDateTime.class);
         }
-        return writer;
+
+        @Override
+        public OffsetDateTime deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JsonProcessingException {
+            if (jsonParser.hasToken(JsonToken.VALUE_STRING)) {
+                OffsetDateTime dateTime = parseIsoDateTime(jsonParser.getTextCharacters(), jsonParser.getTextOffset(), jsonParser.getTextLength());
+                if (dateTime != null) {
+                    return dateTime;
+                }
+            }
+            String text = jsonParser.getText();
+            try {
+                return Converter.parseDateTimeString(text);
+            } catch (DateTimeException ex) {
+                return (OffsetDateTime) deserializationContext.handleWeirdStringValue(OffsetDateTime.class, text, ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes date and times in the {@link DateTimeFormatter#ISO_OFFSET_DATE_TIME}
+     * format.
+     */
+    static class DateTimeSerializer extends StdScalarSerializer<OffsetDateTime> {
+
+        private static final long serialVersionUID = 1L;
+
+        DateTimeSerializer() {
+            super(OffsetDateTime.class);
+        }
+
+        @Override
+        public void serialize(OffsetDateTime dateTime, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+            char[] buffer = new char[ISO_DATE_TIME_LENGTH];
+            int length = formatIsoDateTime(dateTime, buffer);
+            if (length < 0) {
+                jsonGenerator.writeString(DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(dateTime));
+            } else {
+                jsonGenerator.writeString(buffer, 0, length);
+            }
+        }
+    }
+
+    static ObjectMapper getObjectMapper() {
+        return MzQCCodec.getDefault().getObjectMapper();
     }
 
-    private static JsonSchema defaultSchema() {
-        JsonSchemaFactory factory = JsonSchemaFactory.getInstance(SpecVersion.VersionFlag.V7);
-        SchemaValidatorsConfig config = new SchemaValidatorsConfig();
-        config.setHandleNullableField(false);
-        return factory.getSchema(Converter.class.getResourceAsStream("/schema/mzqc_schema.json"), config);
+    static ObjectMapper getSmileMapper() {
+        return MzQCCodec.getDefault().getSmileMapper();
     }
 
 }
@@ -15,10 +15,81 @@
  */
 package org.lifstools.jmzqc;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
 /**
  * JSON schema specifying the mzQC format v1.0.0 developed by the HUPO-PSI
  * Quality Control working group (http://psidev.info/groups/quality-control).
  */
+@JsonDeserialize(using = Coordinate.Deserializer.class)
+@JsonSerialize(using = Coordinate.Serializer.class)
 public record Coordinate(MzQC mzQC) {
 
+    private static final SerializableString MZQC = new SerializedString("mzQC");
+
+    static class Deserializer extends JsonDeserializer<Coordinate> implements ResolvableDeserializer {
+
+        private static final List<Object> PROPERTIES = List.of("mzQC");
+
+        private JsonDeserializer<Object> mzQCDeserializer;
+
+        @Override
+        public void resolve(DeserializationContext deserializationContext) throws JsonMappingException {
+            mzQCDeserializer = JsonCodecs.find(deserializationContext, MzQC.class);
+        }
+
+        @Override
+        public Collection<Object> getKnownPropertyNames() {
+            return PROPERTIES;
+        }
+
+        @Override
+        public Coordinate deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JsonProcessingException {
+            JsonToken token = JsonCodecs.firstProperty(jsonParser);
+            if (token == null) {
+                return (Coordinate) deserializationContext.handleUnexpectedToken(Coordinate.class, jsonParser);
+            }
+            MzQC mzQC = null;
+            for (; token == JsonToken.FIELD_NAME; token = jsonParser.nextToken()) {
+                String field = jsonParser.currentName();
+                jsonParser.nextToken();
+                try {
+                    if (MZQC.getValue().equals(field)) {
+                        mzQC = JsonCodecs.readValue(jsonParser, deserializationContext, mzQCDeserializer);
+                    } else {
+                        deserializationContext.handleUnknownProperty(jsonParser, this, Coordinate.class, field);
+                    }
+                } catch (Exception ex) {
+                    throw JsonCodecs.wrap(ex, deserializationContext, Coordinate.class, field);
+                }
+            }
+            return new Coordinate(mzQC);
+        }
+    }
+
+    static class Serializer extends JsonSerializer<Coordinate> {
+
+        @Override
+        public void serialize(Coordinate coordinate, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+            jsonGenerator.writeStartObject(coordinate);
+            JsonCodecs.writeValue(jsonGenerator, serializerProvider, MZQC, coordinate.mzQC);
+            jsonGenerator.writeEndObject();
+        }
+    }
 }
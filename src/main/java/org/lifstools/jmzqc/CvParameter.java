@@ -15,16 +15,103 @@
  */
 package org.lifstools.jmzqc;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Base element for a term that is defined in a controlled vocabulary, with
  * OPTIONAL value.
  *
  * Type of input file.
  */
+@JsonDeserialize(using = CvParameter.Deserializer.class)
+@JsonSerialize(using = CvParameter.Serializer.class)
 public record CvParameter(
         String accession,
         String description,
         String name,
         Object value) {
 
+    private static final SerializableString ACCESSION = new SerializedString("accession");
+    private static final SerializableString DESCRIPTION = new SerializedString("description");
+    private static final SerializableString NAME = new SerializedString("name");
+    private static final SerializableString VALUE = new SerializedString("value");
+
+    static class Deserializer extends JsonDeserializer<CvParameter> implements ResolvableDeserializer {
+
+        private static final List<Object> PROPERTIES = List.of("accession", "description", "name", "value");
+
+        private JsonDeserializer<Object> untyped;
+
+        @Override
+        public void resolve(DeserializationContext deserializationContext) throws JsonMappingException {
+            untyped = JsonCodecs.find(deserializationContext, Object.class);
+        }
+
+        @Override
+        public Collection<Object> getKnownPropertyNames() {
+            return PROPERTIES;
+        }
+
+        @Override
+        public CvParameter deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JsonProcessingException {
+            JsonToken token = JsonCodecs.firstProperty(jsonParser);
+            if (token == null) {
+                return (CvParameter) deserializationContext.handleUnexpectedToken(CvParameter.class, jsonParser);
+            }
+            String accession = null;
+            String description = null;
+            String name = null;
+            Object value = null;
+            for (; token == JsonToken.FIELD_NAME; token = jsonParser.nextToken()) {
+                String field = jsonParser.currentName();
+                jsonParser.nextToken();
+                try {
+                    switch (field) {
+                        case "accession" ->
+                            accession = JsonCodecs.readString(jsonParser, deserializationContext);
+                        case "description" ->
+                            description = JsonCodecs.readString(jsonParser, deserializationContext);
+                        case "name" ->
+                            name = JsonCodecs.readString(jsonParser, deserializationContext);
+                        case "value" ->
+                            value = JsonCodecs.readValue(jsonParser, deserializationContext, untyped);
+                        default ->
+                            deserializationContext.handleUnknownProperty(jsonParser, this, CvParameter.class, field);
+                    }
+                } catch (Exception ex) {
+                    throw JsonCodecs.wrap(ex, deserializationContext, CvParameter.class, field);
+                }
+            }
+            return Interner.intern(deserializationContext, new CvParameter(accession, description, name, value));
+        }
+    }
+
+    static class Serializer extends JsonSerializer<CvParameter> {
+
+        @Override
+        public void serialize(CvParameter cvParameter, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+            jsonGenerator.writeStartObject(cvParameter);
+            JsonCodecs.writeString(jsonGenerator, ACCESSION, cvParameter.accession);
+            JsonCodecs.writeString(jsonGenerator, DESCRIPTION, cvParameter.description);
+            JsonCodecs.writeString(jsonGenerator, NAME, cvParameter.name);
+            JsonCodecs.writeValue(jsonGenerator, serializerProvider, VALUE, cvParameter.value);
+            jsonGenerator.writeEndObject();
+        }
+    }
 }
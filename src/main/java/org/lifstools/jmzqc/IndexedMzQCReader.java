@@ -0,0 +1,222 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Random access reader for run and set qualities of an uncompressed mzQC JSON
+ * file. The reader uses a {@link MzQCIndex} to map only the bytes of the
+ * requested quality into memory and deserializes that {@link BaseQuality}
+ * alone, so the cost of reading run 8000 does not depend on the runs before
+ * it.
+ *
+ * <pre>
+ * try (IndexedMzQCReader reader = new IndexedMzQCReader(path)) {
+ *     BaseQuality run = reader.getRunQuality(8000);
+ * }
+ * </pre>
+ *
+ * Instances are thread-safe.
+ */
+public class IndexedMzQCReader implements Closeable {
+
+    private final Path path;
+    private final MzQCIndex index;
+    private final FileChannel channel;
+    private final ObjectReader qualityReader;
+    private final LazyQualityList runQualities;
+    private final LazyQualityList setQualities;
+
+    /**
+     * Create a new reader for the given file, loading or building its
+     * {@link MzQCIndex#of(Path) sidecar index}.
+     *
+     * @param file the mzQC file.
+     * @throws IOException if the file can not be read or indexed.
+     */
+    public IndexedMzQCReader(File file) throws IOException {
+        this(file.toPath());
+    }
+
+    /**
+     * Create a new reader for the given file, loading or building its
+     * {@link MzQCIndex#of(Path) sidecar index}.
+     *
+     * @param path the path of the mzQC file.
+     * @throws IOException if the file can not be read or indexed.
+     */
+    public IndexedMzQCReader(Path path) throws IOException {
+        this(path, MzQCCodec.getDefault());
+    }
+
+    /**
+     * Create a new reader for the given file that reads with the given codec,
+     * loading or building its {@link MzQCIndex#of(Path, MzQCCodec) sidecar
+     * index}.
+     *
+     * @param path the path of the mzQC file.
+     * @param codec the codec to read with.
+     * @throws IOException if the file can not be read or indexed.
+     */
+    public IndexedMzQCReader(Path path, MzQCCodec codec) throws IOException {
+        this(path, MzQCIndex.of(path, codec), codec);
+    }
+
+    /**
+     * Create a new reader for the given file and index.
+     *
+     * @param path the path of the mzQC file.
+     * @param index the index of the file.
+     * @throws IOException if the file can not be opened.
+     * @throws IllegalArgumentException if the index is not valid for the
+     * file.
+     */
+    public IndexedMzQCReader(Path path, MzQCIndex index) throws IOException {
+        this(path, index, MzQCCodec.getDefault());
+    }
+
+    /**
+     * Create a new reader for the given file and index that reads with the
+     * given codec.
+     *
+     * @param path the path of the mzQC file.
+     * @param index the index of the file.
+     * @param codec the codec to read with.
+     * @throws IOException if the file can not be opened.
+     * @throws IllegalArgumentException if the index is not valid for the
+     * file.
+     */
+    public IndexedMzQCReader(Path path, MzQCIndex index, MzQCCodec codec) throws IOException {
+        if (!index.isValidFor(path)) {
+            throw new IllegalArgumentException("Index is outdated for file " + path);
+        }
+        this.path = path;
+        this.index = index;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.qualityReader = codec.getObjectMapper().readerFor(BaseQuality.class);
+        this.runQualities = new LazyQualityList(this, true);
+        this.setQualities = new LazyQualityList(this, false);
+    }
+
+    /**
+     * Returns the index used by this reader.
+     *
+     * @return the index.
+     */
+    public MzQCIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the header of the mzQC document, an {@link MzQC} object with
+     * empty run and set qualities.
+     *
+     * @return the header.
+     */
+    public MzQC getHeader() {
+        return index.getHeader();
+    }
+
+    /**
+     * Returns a lazy view of the complete mzQC document. The header is taken
+     * from the index, while the run and set quality lists are unmodifiable
+     * views that read each {@link BaseQuality} on first access and keep it
+     * softly referenced afterwards. Opening the view does not read any
+     * quality, so memory use only grows with the qualities actually touched.
+     *
+     * The view is only usable while this reader is open; accessing an
+     * uncached quality afterwards throws an {@link UncheckedIOException}.
+     * Operations that visit every element, such as {@code equals} or
+     * serialization, read the complete file.
+     *
+     * @return the lazy view of the document.
+     */
+    public MzQC asMzQC() {
+        MzQC header = index.getHeader();
+        return new MzQC(header.contactAddress(), header.contactName(),
+                header.controlledVocabularies(), header.creationDate(),
+                header.description(), runQualities, setQualities,
+                header.version());
+    }
+
+    public int getRunCount() {
+        return index.getRunCount();
+    }
+
+    public int getSetCount() {
+        return index.getSetCount();
+    }
+
+    /**
+     * Read the run quality with the given index.
+     *
+     * @param i the zero-based index of the run quality.
+     * @return the run quality.
+     * @throws IOException if the run quality can not be read.
+     * @throws IllegalArgumentException if the index is invalid.
+     */
+    public BaseQuality getRunQuality(int i) throws IOException {
+        return read(index.getRunOffset(i), index.getRunLength(i));
+    }
+
+    /**
+     * Read the first run quality with the given metadata label.
+     *
+     * @param label the label of the run quality.
+     * @return the run quality.
+     * @throws IOException if the run quality can not be read.
+     * @throws IllegalArgumentException if no run has that label.
+     */
+    public BaseQuality getRunQuality(String label) throws IOException {
+        int i = index.indexOfRunLabel(label);
+        if (i < 0) {
+            throw new IllegalArgumentException("No run quality with label '" + label + "' in " + path);
+        }
+        return getRunQuality(i);
+    }
+
+    /**
+     * Read the set quality with the given index.
+     *
+     * @param i the zero-based index of the set quality.
+     * @return the set quality.
+     * @throws IOException if the set quality can not be read.
+     * @throws IllegalArgumentException if the index is invalid.
+     */
+    public BaseQuality getSetQuality(int i) throws IOException {
+        return read(index.getSetOffset(i), index.getSetLength(i));
+    }
+
+    private BaseQuality read(long offset, int length) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        return qualityReader.readValue(new ByteBufferBackedInputStream(buffer));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
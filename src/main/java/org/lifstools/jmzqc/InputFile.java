@@ -15,6 +15,22 @@
  */
 package org.lifstools.jmzqc;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
+import java.io.IOException;
+import java.util.Collection;
 import java.net.URI;
 import java.util.Collections;
 import java.util.List;
@@ -22,15 +38,87 @@ import java.util.List;
 /**
  * Input file used to generate the QC metrics.
  */
+@JsonDeserialize(using = InputFile.Deserializer.class)
+@JsonSerialize(using = InputFile.Serializer.class)
 public record InputFile(
         CvParameter fileFormat,
         List<CvParameter> fileProperties,
         URI location,
         String name) {
 
+    private static final SerializableString FILE_FORMAT = new SerializedString("fileFormat");
+    private static final SerializableString FILE_PROPERTIES = new SerializedString("fileProperties");
+    private static final SerializableString LOCATION = new SerializedString("location");
+    private static final SerializableString NAME = new SerializedString("name");
+
     public InputFile    {
         if (fileProperties == null) {
             fileProperties = Collections.emptyList();
         }
     }
+
+    static class Deserializer extends JsonDeserializer<InputFile> implements ResolvableDeserializer {
+
+        private static final List<Object> PROPERTIES = List.of("fileFormat", "fileProperties", "location", "name");
+
+        private JsonDeserializer<Object> cvParameterDeserializer;
+        private JsonDeserializer<Object> uriDeserializer;
+
+        @Override
+        public void resolve(DeserializationContext deserializationContext) throws JsonMappingException {
+            cvParameterDeserializer = JsonCodecs.find(deserializationContext, CvParameter.class);
+            uriDeserializer = JsonCodecs.find(deserializationContext, URI.class);
+        }
+
+        @Override
+        public Collection<Object> getKnownPropertyNames() {
+            return PROPERTIES;
+        }
+
+        @Override
+        public InputFile deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JsonProcessingException {
+            JsonToken token = JsonCodecs.firstProperty(jsonParser);
+            if (token == null) {
+                return (InputFile) deserializationContext.handleUnexpectedToken(InputFile.class, jsonParser);
+            }
+            CvParameter fileFormat = null;
+            List<CvParameter> fileProperties = null;
+            URI location = null;
+            String name = null;
+            for (; token == JsonToken.FIELD_NAME; token = jsonParser.nextToken()) {
+                String field = jsonParser.currentName();
+                jsonParser.nextToken();
+                try {
+                    switch (field) {
+                        case "fileFormat" ->
+                            fileFormat = JsonCodecs.readValue(jsonParser, deserializationContext, cvParameterDeserializer);
+                        case "fileProperties" ->
+                            fileProperties = JsonCodecs.readList(jsonParser, deserializationContext, cvParameterDeserializer);
+                        case "location" ->
+                            location = JsonCodecs.readValue(jsonParser, deserializationContext, uriDeserializer);
+                        case "name" ->
+                            name = JsonCodecs.readString(jsonParser, deserializationContext);
+                        default ->
+                            deserializationContext.handleUnknownProperty(jsonParser, this, InputFile.class, field);
+                    }
+                } catch (Exception ex) {
+                    throw JsonCodecs.wrap(ex, deserializationContext, InputFile.class, field);
+                }
+            }
+            return new InputFile(fileFormat, fileProperties, location, name);
+        }
+    }
+
+    static class Serializer extends JsonSerializer<InputFile> {
+
+        @Override
+        public void serialize(InputFile inputFile, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+            jsonGenerator.writeStartObject(inputFile);
+            JsonCodecs.writeValue(jsonGenerator, serializerProvider, FILE_FORMAT, inputFile.fileFormat);
+            JsonCodecs.writeList(jsonGenerator, serializerProvider, FILE_PROPERTIES, inputFile.fileProperties, CvParameter.class);
+            JsonCodecs.writeUri(jsonGenerator, LOCATION, inputFile.location);
+            JsonCodecs.writeString(jsonGenerator, NAME, inputFile.name);
+            jsonGenerator.writeEndObject();
+        }
+    }
 }
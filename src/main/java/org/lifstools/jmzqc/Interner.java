@@ -0,0 +1,154 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.cfg.ContextAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded, thread-safe cache of canonical instances for values that repeat
+ * in every run of an mzQC document, such as accessions, names, descriptions,
+ * units and controlled vocabulary terms. The {@link Converter} uses one shared
+ * interner for all reads, so documents that are held in memory at the same
+ * time share these instances.
+ *
+ * Interning happens in the custom deserializers of the model: strings read
+ * through {@link JsonCodecs#readString}, and the {@link ControlledVocabulary},
+ * {@link Unit}, {@link CvParameter} and {@link AnalysisSoftware} records,
+ * which pass the values they read to {@link #intern(DeserializationContext,
+ * Object)}. That method finds the interner as a shared attribute of the
+ * context, which {@link #registerWith(ObjectMapper)} sets on the mapper.
+ * Strings in untyped values, such as table columns, are not interned.
+ *
+ * Only immutable values are interned: strings, and records whose value is
+ * absent or a string, number or boolean. When the cache reaches its capacity,
+ * it is cleared and refilled from subsequent reads.
+ */
+final class Interner {
+
+    /**
+     * Default capacity of the shared interner.
+     */
+    static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * Strings longer than this are not interned.
+     */
+    static final int MAX_STRING_LENGTH = 1024;
+
+    private static class DefaultHolder {
+
+        static final Interner INSTANCE = new Interner(DEFAULT_CAPACITY);
+    }
+
+    private final int capacity;
+    private final ConcurrentHashMap<Object, Object> cache;
+
+    Interner(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive, was " + capacity);
+        }
+        this.capacity = capacity;
+        this.cache = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the interner shared by all readers of the {@link Converter}.
+     *
+     * @return the shared interner.
+     */
+    static Interner shared() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Returns the canonical instance equal to the given value, if the value
+     * can be interned, otherwise the value itself.
+     *
+     * @param <T> the type of the value.
+     * @param value the value, may be null.
+     * @return the canonical instance, or the value itself.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T intern(T value) {
+        if (value == null || !isInternable(value)) {
+            return value;
+        }
+        Object canonical = cache.get(value);
+        if (canonical != null) {
+            return (T) canonical;
+        }
+        if (cache.size() >= capacity) {
+            cache.clear();
+        }
+        canonical = cache.putIfAbsent(value, value);
+        return canonical == null ? value : (T) canonical;
+    }
+
+    int size() {
+        return cache.size();
+    }
+
+    void clear() {
+        cache.clear();
+    }
+
+    private static boolean isInternable(Object value) {
+        if (value instanceof String s) {
+            return s.length() <= MAX_STRING_LENGTH;
+        } else if (value instanceof CvParameter cv) {
+            return isScalar(cv.value());
+        } else if (value instanceof AnalysisSoftware software) {
+            return isScalar(software.value());
+        } else if (value instanceof Unit unit) {
+            return (unit.cvParameterValue() == null || isScalar(unit.cvParameterValue().value()))
+                    && unit.cvParameterArrayValue().stream().allMatch((cv) -> cv != null && isScalar(cv.value()));
+        }
+        return value instanceof ControlledVocabulary;
+    }
+
+    private static boolean isScalar(Object value) {
+        return value == null || value instanceof String || value instanceof Number || value instanceof Boolean;
+    }
+
+    /**
+     * Interns the given value with the interner registered with the mapper of
+     * the given context, if any.
+     *
+     * @param <T> the type of the value.
+     * @param context the deserialization context.
+     * @param value the value, may be null.
+     * @return the canonical instance, or the value itself.
+     */
+    static <T> T intern(DeserializationContext context, T value) {
+        return context.getAttribute(Interner.class) instanceof Interner interner ? interner.intern(value) : value;
+    }
+
+    /**
+     * Register this interner with the given mapper as a shared context
+     * attribute, so that the deserializers of the mzQC model can find it
+     * through {@link #intern(DeserializationContext, Object)}.
+     *
+     * @param mapper the mapper.
+     * @return the mapper.
+     */
+    ObjectMapper registerWith(ObjectMapper mapper) {
+        mapper.setDefaultAttributes(ContextAttributes.getEmpty().withSharedAttribute(Interner.class, this));
+        return mapper;
+    }
+}
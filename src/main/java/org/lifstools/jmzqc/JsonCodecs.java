@@ -0,0 +1,227 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.fasterxml.jackson.core.JacksonException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StringDeserializer;
+import com.fasterxml.jackson.databind.util.ClassUtil;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Shared helpers of the hand-written serializers and deserializers of the
+ * mzQC records. The deserializers read the properties of a record directly
+ * from the token stream and intern its strings and, where supported, the
+ * record itself with the {@link Interner} of the context. Lists are read as
+ * mutable {@link ArrayList}s, like Jackson's collection deserializer does.
+ *
+ * The serializers write the properties in the order of the record
+ * components and omit null and empty values, like the
+ * {@link com.fasterxml.jackson.annotation.JsonInclude.Include#NON_EMPTY}
+ * inclusion of the {@link Converter}. Nested records, dates and untyped
+ * values are written with the serializers configured for their type.
+ */
+final class JsonCodecs {
+
+    private JsonCodecs() {
+    }
+
+    /**
+     * Advances from the start of an object to its first property.
+     *
+     * @param jsonParser the parser at the start of an object or at its
+     * first property.
+     * @return the token of the first property, END_OBJECT if there is none,
+     * or null if the parser is not at an object.
+     */
+    static JsonToken firstProperty(JsonParser jsonParser) throws IOException {
+        JsonToken token = jsonParser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            return jsonParser.nextToken();
+        }
+        return token == JsonToken.FIELD_NAME || token == JsonToken.END_OBJECT ? token : null;
+    }
+
+    /**
+     * Returns the deserializer configured for the given type.
+     */
+    static JsonDeserializer<Object> find(DeserializationContext deserializationContext, Class<?> type) throws JsonMappingException {
+        return deserializationContext.findRootValueDeserializer(deserializationContext.constructType(type));
+    }
+
+    /**
+     * Reads an interned string, or null.
+     */
+    static String readString(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException {
+        if (jsonParser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        return Interner.intern(deserializationContext, StringDeserializer.instance.deserialize(jsonParser, deserializationContext));
+    }
+
+    /**
+     * Reads a value with the given deserializer, or null.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T readValue(JsonParser jsonParser, DeserializationContext deserializationContext, JsonDeserializer<?> deserializer) throws IOException {
+        if (jsonParser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        return (T) deserializer.deserialize(jsonParser, deserializationContext);
+    }
+
+    /**
+     * Reads an array into a mutable list, or null.
+     *
+     * @param elements the deserializer of the elements.
+     */
+    static <T> List<T> readList(JsonParser jsonParser, DeserializationContext deserializationContext, JsonDeserializer<?> elements) throws IOException {
+        JsonToken token = jsonParser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token != JsonToken.START_ARRAY) {
+            @SuppressWarnings("unchecked")
+            List<T> list = (List<T>) deserializationContext.handleUnexpectedToken(List.class, jsonParser);
+            return list;
+        }
+        List<T> list = new ArrayList<>();
+        while (jsonParser.nextToken() != JsonToken.END_ARRAY) {
+            try {
+                list.add(readValue(jsonParser, deserializationContext, elements));
+            } catch (Exception ex) {
+                if (!deserializationContext.isEnabled(DeserializationFeature.WRAP_EXCEPTIONS)) {
+                    ClassUtil.throwIfRTE(ex);
+                }
+                throw JsonMappingException.wrapWithPath(ex, list, list.size());
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns the exception to throw for a failure to read the given
+     * property, with the property added to its reference path, like
+     * Jackson's bean deserializer does.
+     *
+     * @param ex the failure.
+     * @param type the type of the record.
+     * @param property the name of the property.
+     * @return the exception to throw.
+     */
+    static IOException wrap(Exception ex, DeserializationContext deserializationContext, Class<?> type, String property) throws IOException {
+        boolean wrap = deserializationContext.isEnabled(DeserializationFeature.WRAP_EXCEPTIONS);
+        if (ex instanceof IOException io) {
+            if (!wrap || !(io instanceof JacksonException)) {
+                return io;
+            }
+        } else if (!wrap) {
+            ClassUtil.throwIfRTE(ex);
+        }
+        return JsonMappingException.wrapWithPath(ex, type, property);
+    }
+
+    static void writeString(JsonGenerator jsonGenerator, SerializableString name, String value) throws IOException {
+        if (value != null && !value.isEmpty()) {
+            jsonGenerator.writeFieldName(name);
+            jsonGenerator.writeString(value);
+        }
+    }
+
+    static void writeUri(JsonGenerator jsonGenerator, SerializableString name, URI value) throws IOException {
+        if (value != null) {
+            writeString(jsonGenerator, name, value.toString());
+        }
+    }
+
+    /**
+     * Writes a nested record, a date or an untyped value with the serializer
+     * configured for its type, unless it is null or empty.
+     */
+    static void writeValue(JsonGenerator jsonGenerator, SerializerProvider serializerProvider, SerializableString name, Object value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof String s) {
+            writeString(jsonGenerator, name, s);
+            return;
+        }
+        if (value instanceof Integer i) {
+            jsonGenerator.writeFieldName(name);
+            jsonGenerator.writeNumber(i);
+            return;
+        }
+        if (value instanceof Long l) {
+            jsonGenerator.writeFieldName(name);
+            jsonGenerator.writeNumber(l);
+            return;
+        }
+        if (value instanceof Double d) {
+            jsonGenerator.writeFieldName(name);
+            jsonGenerator.writeNumber(d);
+            return;
+        }
+        JsonSerializer<Object> serializer = serializerProvider.findTypedValueSerializer(value.getClass(), true, null);
+        if (!serializer.isEmpty(serializerProvider, value)) {
+            jsonGenerator.writeFieldName(name);
+            serializer.serialize(value, jsonGenerator, serializerProvider);
+        }
+    }
+
+    /**
+     * Writes a list of records of the given type, unless it is null or
+     * empty. The serializer of the type is looked up once for the list.
+     */
+    static void writeList(JsonGenerator jsonGenerator, SerializerProvider serializerProvider, SerializableString name, List<?> list, Class<?> type) throws IOException {
+        if (list == null || list.isEmpty()) {
+            return;
+        }
+        JsonSerializer<Object> serializer = serializerProvider.findTypedValueSerializer(type, true, null);
+        jsonGenerator.writeFieldName(name);
+        jsonGenerator.writeStartArray(list, list.size());
+        if (list instanceof RandomAccess) {
+            for (int i = 0; i < list.size(); i++) {
+                writeElement(jsonGenerator, serializerProvider, list.get(i), serializer);
+            }
+        } else {
+            for (Object element : list) {
+                writeElement(jsonGenerator, serializerProvider, element, serializer);
+            }
+        }
+        jsonGenerator.writeEndArray();
+    }
+
+    private static void writeElement(JsonGenerator jsonGenerator, SerializerProvider serializerProvider, Object element, JsonSerializer<Object> serializer) throws IOException {
+        if (element == null) {
+            jsonGenerator.writeNull();
+        } else {
+            serializer.serialize(element, jsonGenerator, serializerProvider);
+        }
+    }
+}
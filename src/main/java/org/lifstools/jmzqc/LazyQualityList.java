@@ -0,0 +1,80 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.util.AbstractList;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Unmodifiable list of the run or set qualities of an
+ * {@link IndexedMzQCReader}. Each quality is read on first access and kept
+ * behind a {@link SoftReference}, so the garbage collector may reclaim it
+ * under memory pressure, after which it is read again on the next access.
+ */
+final class LazyQualityList extends AbstractList<BaseQuality> implements RandomAccess {
+
+    private final IndexedMzQCReader reader;
+    private final boolean runs;
+    private final AtomicReferenceArray<SoftReference<BaseQuality>> cache;
+
+    LazyQualityList(IndexedMzQCReader reader, boolean runs) {
+        this.reader = reader;
+        this.runs = runs;
+        this.cache = new AtomicReferenceArray<>(runs ? reader.getRunCount() : reader.getSetCount());
+    }
+
+    @Override
+    public BaseQuality get(int index) {
+        Objects.checkIndex(index, cache.length());
+        SoftReference<BaseQuality> reference = cache.get(index);
+        BaseQuality quality = reference == null ? null : reference.get();
+        if (quality == null) {
+            try {
+                quality = runs ? reader.getRunQuality(index) : reader.getSetQuality(index);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            cache.set(index, new SoftReference<>(quality));
+        }
+        return quality;
+    }
+
+    @Override
+    public int size() {
+        return cache.length();
+    }
+
+    /**
+     * Returns the number of qualities that are currently held in memory.
+     *
+     * @return the number of cached qualities.
+     */
+    int cachedCount() {
+        int count = 0;
+        for (int i = 0; i < cache.length(); i++) {
+            SoftReference<BaseQuality> reference = cache.get(i);
+            if (reference != null && reference.get() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
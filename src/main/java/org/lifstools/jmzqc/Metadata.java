@@ -15,18 +15,41 @@
  */
 package org.lifstools.jmzqc;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
+import java.io.IOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
 /**
  * Metadata describing the QC analysis.
  */
+@JsonDeserialize(using = Metadata.Deserializer.class)
+@JsonSerialize(using = Metadata.Serializer.class)
 public record Metadata(
         List<AnalysisSoftware> analysisSoftware,
         List<CvParameter> cvParameters,
         List<InputFile> inputFiles,
         String label) {
 
+    private static final SerializableString ANALYSIS_SOFTWARE = new SerializedString("analysisSoftware");
+    private static final SerializableString CV_PARAMETERS = new SerializedString("cvParameters");
+    private static final SerializableString INPUT_FILES = new SerializedString("inputFiles");
+    private static final SerializableString LABEL = new SerializedString("label");
+
     public Metadata    {
         if (analysisSoftware == null) {
             analysisSoftware = Collections.emptyList();
@@ -38,4 +61,71 @@ public record Metadata(
             inputFiles = Collections.emptyList();
         }
     }
+
+    static class Deserializer extends JsonDeserializer<Metadata> implements ResolvableDeserializer {
+
+        private static final List<Object> PROPERTIES = List.of("analysisSoftware", "cvParameters", "inputFiles", "label");
+
+        private JsonDeserializer<Object> softwareDeserializer;
+        private JsonDeserializer<Object> cvParameterDeserializer;
+        private JsonDeserializer<Object> inputFileDeserializer;
+
+        @Override
+        public void resolve(DeserializationContext deserializationContext) throws JsonMappingException {
+            softwareDeserializer = JsonCodecs.find(deserializationContext, AnalysisSoftware.class);
+            cvParameterDeserializer = JsonCodecs.find(deserializationContext, CvParameter.class);
+            inputFileDeserializer = JsonCodecs.find(deserializationContext, InputFile.class);
+        }
+
+        @Override
+        public Collection<Object> getKnownPropertyNames() {
+            return PROPERTIES;
+        }
+
+        @Override
+        public Metadata deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JsonProcessingException {
+            JsonToken token = JsonCodecs.firstProperty(jsonParser);
+            if (token == null) {
+                return (Metadata) deserializationContext.handleUnexpectedToken(Metadata.class, jsonParser);
+            }
+            List<AnalysisSoftware> analysisSoftware = null;
+            List<CvParameter> cvParameters = null;
+            List<InputFile> inputFiles = null;
+            String label = null;
+            for (; token == JsonToken.FIELD_NAME; token = jsonParser.nextToken()) {
+                String field = jsonParser.currentName();
+                jsonParser.nextToken();
+                try {
+                    switch (field) {
+                        case "analysisSoftware" ->
+                            analysisSoftware = JsonCodecs.readList(jsonParser, deserializationContext, softwareDeserializer);
+                        case "cvParameters" ->
+                            cvParameters = JsonCodecs.readList(jsonParser, deserializationContext, cvParameterDeserializer);
+                        case "inputFiles" ->
+                            inputFiles = JsonCodecs.readList(jsonParser, deserializationContext, inputFileDeserializer);
+                        case "label" ->
+                            label = JsonCodecs.readString(jsonParser, deserializationContext);
+                        default ->
+                            deserializationContext.handleUnknownProperty(jsonParser, this, Metadata.class, field);
+                    }
+                } catch (Exception ex) {
+                    throw JsonCodecs.wrap(ex, deserializationContext, Metadata.class, field);
+                }
+            }
+            return new Metadata(analysisSoftware, cvParameters, inputFiles, label);
+        }
+    }
+
+    static class Serializer extends JsonSerializer<Metadata> {
+
+        @Override
+        public void serialize(Metadata metadata, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+            jsonGenerator.writeStartObject(metadata);
+            JsonCodecs.writeList(jsonGenerator, serializerProvider, ANALYSIS_SOFTWARE, metadata.analysisSoftware, AnalysisSoftware.class);
+            JsonCodecs.writeList(jsonGenerator, serializerProvider, CV_PARAMETERS, metadata.cvParameters, CvParameter.class);
+            JsonCodecs.writeList(jsonGenerator, serializerProvider, INPUT_FILES, metadata.inputFiles, InputFile.class);
+            JsonCodecs.writeString(jsonGenerator, LABEL, metadata.label);
+            jsonGenerator.writeEndObject();
+        }
+    }
 }
@@ -0,0 +1,389 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Dense, columnar accession-by-run view of the single numeric values of run
+ * quality metrics, for statistics across the runs of a batch. Each accession
+ * is stored as one {@code double[]} column with one entry per run, and a
+ * bitmap of the runs where the value is missing.
+ *
+ * A value is taken from the first metric with the accession in a run, if its
+ * value is a {@link Number}. Runs without such a metric, with a non-numeric
+ * value such as a table, or with a NaN value are missing. Accessions without
+ * any numeric value are not part of the cube.
+ *
+ * <pre>
+ * MetricCube cube = MetricCube.of(mzQC);
+ * Map&lt;String, MetricCube.Statistics&gt; statistics = cube.statistics(5, 95);
+ * double[] z = cube.robustZScores("MS:4000059");
+ * </pre>
+ *
+ * Statistics for all accessions are computed in parallel, one column per
+ * task. Instances are immutable and thread-safe.
+ */
+public final class MetricCube {
+
+    /**
+     * Scale factor of the median absolute deviation for a consistent
+     * estimate of the standard deviation of normally distributed data.
+     */
+    public static final double MAD_SCALE = 1.4826d;
+
+    /**
+     * Summary statistics of one accession across all runs with a value.
+     *
+     * @param accession the cv accession.
+     * @param count the number of runs with a value.
+     * @param missing the number of runs without a value.
+     * @param mean the arithmetic mean.
+     * @param standardDeviation the sample standard deviation.
+     * @param min the minimum.
+     * @param max the maximum.
+     * @param median the median.
+     * @param mad the unscaled median absolute deviation from the median.
+     * @param percentiles the requested percentiles, in request order.
+     */
+    public record Statistics(
+            String accession,
+            int count,
+            int missing,
+            double mean,
+            double standardDeviation,
+            double min,
+            double max,
+            double median,
+            double mad,
+            List<Double> percentiles) {
+
+        public Statistics {
+            percentiles = List.copyOf(percentiles);
+        }
+    }
+
+    /**
+     * Growable column used while the cube is built.
+     */
+    private static final class Column {
+
+        private double[] values;
+        private final BitSet present = new BitSet();
+
+        Column(int capacity) {
+            values = new double[capacity];
+        }
+
+        void set(int run, double value) {
+            if (run >= values.length) {
+                values = Arrays.copyOf(values, Math.max(run + 1, values.length * 2));
+            }
+            values[run] = value;
+            present.set(run);
+        }
+    }
+
+    private final int runCount;
+    private final String[] runLabels;
+    private final Map<String, double[]> values;
+    private final Map<String, BitSet> missing;
+
+    private MetricCube(int runCount, String[] runLabels, Map<String, double[]> values, Map<String, BitSet> missing) {
+        this.runCount = runCount;
+        this.runLabels = runLabels;
+        this.values = values;
+        this.missing = missing;
+    }
+
+    /**
+     * Build the cube from the run qualities of the given object.
+     *
+     * @param mzQC the mzQC object.
+     * @return the cube.
+     */
+    public static MetricCube of(MzQC mzQC) {
+        return of(mzQC.runQualities().stream());
+    }
+
+    /**
+     * Build the cube from the given run qualities, for example from
+     * {@link MzQCReader#runQualities()}. The stream is consumed in encounter
+     * order, each quality is one run of the cube.
+     *
+     * @param runQualities the run qualities.
+     * @return the cube.
+     */
+    public static MetricCube of(Stream<BaseQuality> runQualities) {
+        Map<String, Column> columns = new LinkedHashMap<>();
+        List<String> labels = new ArrayList<>();
+        runQualities.sequential().forEachOrdered((quality) -> {
+            int run = labels.size();
+            labels.add(quality.metadata() == null ? null : quality.metadata().label());
+            for (QualityMetric metric : quality.qualityMetrics()) {
+                if (metric.value() instanceof Number number && metric.accession() != null) {
+                    double value = number.doubleValue();
+                    if (!Double.isNaN(value)) {
+                        Column column = columns.computeIfAbsent(metric.accession(), (key) -> new Column(Math.max(16, run + 1)));
+                        if (!column.present.get(run)) {
+                            column.set(run, value);
+                        }
+                    }
+                }
+            }
+        });
+        int n = labels.size();
+        Map<String, double[]> values = new LinkedHashMap<>(columns.size() * 2);
+        Map<String, BitSet> missing = new LinkedHashMap<>(columns.size() * 2);
+        for (Map.Entry<String, Column> entry : columns.entrySet()) {
+            Column column = entry.getValue();
+            double[] data = Arrays.copyOf(column.values, n);
+            BitSet absent = (BitSet) column.present.clone();
+            absent.flip(0, n);
+            for (int i = absent.nextSetBit(0); i >= 0; i = absent.nextSetBit(i + 1)) {
+                data[i] = Double.NaN;
+            }
+            values.put(entry.getKey(), data);
+            missing.put(entry.getKey(), absent);
+        }
+        return new MetricCube(n, labels.toArray(String[]::new), values, missing);
+    }
+
+    public int getRunCount() {
+        return runCount;
+    }
+
+    /**
+     * Returns the metadata label of the given run.
+     *
+     * @param run the zero-based index of the run.
+     * @return the label, may be null.
+     * @throws IllegalArgumentException if the index is invalid.
+     */
+    public String getRunLabel(int run) {
+        return runLabels[checkRun(run)];
+    }
+
+    /**
+     * Returns the accessions of the cube, in order of their first occurrence.
+     *
+     * @return the accessions.
+     */
+    public Set<String> getAccessions() {
+        return Collections.unmodifiableSet(values.keySet());
+    }
+
+    /**
+     * Returns the value of the given accession in the given run.
+     *
+     * @param accession the cv accession.
+     * @param run the zero-based index of the run.
+     * @return the value, or NaN if it is missing.
+     * @throws IllegalArgumentException if the accession is not part of the
+     * cube or the index is invalid.
+     */
+    public double getValue(String accession, int run) {
+        return column(accession)[checkRun(run)];
+    }
+
+    /**
+     * Returns true, if the given accession has no value in the given run.
+     *
+     * @param accession the cv accession.
+     * @param run the zero-based index of the run.
+     * @return true if the value is missing.
+     * @throws IllegalArgumentException if the accession is not part of the
+     * cube or the index is invalid.
+     */
+    public boolean isMissing(String accession, int run) {
+        column(accession);
+        return missing.get(accession).get(checkRun(run));
+    }
+
+    /**
+     * Returns a copy of the column of the given accession, with one value per
+     * run and NaN for missing values.
+     *
+     * @param accession the cv accession.
+     * @return the values.
+     * @throws IllegalArgumentException if the accession is not part of the
+     * cube.
+     */
+    public double[] getValues(String accession) {
+        return column(accession).clone();
+    }
+
+    /**
+     * Returns a copy of the missing value bitmap of the given accession. Bit
+     * {@code i} is set if run {@code i} has no value.
+     *
+     * @param accession the cv accession.
+     * @return the missing value bitmap.
+     * @throws IllegalArgumentException if the accession is not part of the
+     * cube.
+     */
+    public BitSet getMissing(String accession) {
+        column(accession);
+        return (BitSet) missing.get(accession).clone();
+    }
+
+    /**
+     * Compute the statistics of all accessions in parallel.
+     *
+     * @param percentiles the percentiles to compute, between 0 and 100.
+     * @return the statistics by accession, in the order of
+     * {@link #getAccessions()}.
+     * @throws IllegalArgumentException if a percentile is out of range.
+     */
+    public Map<String, Statistics> statistics(double... percentiles) {
+        checkPercentiles(percentiles);
+        Map<String, Statistics> statistics = values.keySet().parallelStream()
+                .collect(Collectors.toConcurrentMap((accession) -> accession, (accession) -> compute(accession, percentiles)));
+        Map<String, Statistics> ordered = new LinkedHashMap<>(statistics.size() * 2);
+        for (String accession : values.keySet()) {
+            ordered.put(accession, statistics.get(accession));
+        }
+        return Collections.unmodifiableMap(ordered);
+    }
+
+    /**
+     * Compute the statistics of the given accession.
+     *
+     * @param accession the cv accession.
+     * @param percentiles the percentiles to compute, between 0 and 100.
+     * @return the statistics.
+     * @throws IllegalArgumentException if the accession is not part of the
+     * cube or a percentile is out of range.
+     */
+    public Statistics statistics(String accession, double... percentiles) {
+        column(accession);
+        checkPercentiles(percentiles);
+        return compute(accession, percentiles);
+    }
+
+    /**
+     * Returns the z-scores of the given accession, {@code (x - mean) / sd},
+     * with NaN for missing values.
+     *
+     * @param accession the cv accession.
+     * @return the z-scores, one per run.
+     * @throws IllegalArgumentException if the accession is not part of the
+     * cube.
+     */
+    public double[] zScores(String accession) {
+        Statistics statistics = statistics(accession);
+        return scores(column(accession), statistics.mean(), statistics.standardDeviation());
+    }
+
+    /**
+     * Returns the robust z-scores of the given accession,
+     * {@code (x - median) / (MAD_SCALE * mad)}, with NaN for missing values.
+     *
+     * @param accession the cv accession.
+     * @return the robust z-scores, one per run.
+     * @throws IllegalArgumentException if the accession is not part of the
+     * cube.
+     */
+    public double[] robustZScores(String accession) {
+        Statistics statistics = statistics(accession);
+        return scores(column(accession), statistics.median(), MAD_SCALE * statistics.mad());
+    }
+
+    private static double[] scores(double[] column, double center, double scale) {
+        double[] scores = new double[column.length];
+        for (int i = 0; i < column.length; i++) {
+            scores[i] = (column[i] - center) / scale;
+        }
+        return scores;
+    }
+
+    private Statistics compute(String accession, double[] percentiles) {
+        double[] column = values.get(accession);
+        BitSet absent = missing.get(accession);
+        double[] sorted = new double[runCount - absent.cardinality()];
+        double sum = 0;
+        int k = 0;
+        for (int i = 0; i < column.length; i++) {
+            if (!absent.get(i)) {
+                sorted[k++] = column[i];
+                sum += column[i];
+            }
+        }
+        int n = sorted.length;
+        double mean = sum / n;
+        double squares = 0;
+        for (double value : sorted) {
+            squares += (value - mean) * (value - mean);
+        }
+        Arrays.sort(sorted);
+        double median = quantile(sorted, 0.5d);
+        double[] deviations = new double[n];
+        for (int i = 0; i < n; i++) {
+            deviations[i] = Math.abs(sorted[i] - median);
+        }
+        Arrays.sort(deviations);
+        List<Double> quantiles = new ArrayList<>(percentiles.length);
+        for (double percentile : percentiles) {
+            quantiles.add(quantile(sorted, percentile / 100.0d));
+        }
+        return new Statistics(accession, n, runCount - n, mean,
+                n > 1 ? Math.sqrt(squares / (n - 1)) : Double.NaN,
+                sorted[0], sorted[n - 1], median, quantile(deviations, 0.5d), quantiles);
+    }
+
+    /**
+     * Linear interpolation between the closest ranks of sorted values, the
+     * default (type 7) definition of R and NumPy.
+     */
+    private static double quantile(double[] sorted, double p) {
+        double h = (sorted.length - 1) * p;
+        int lower = (int) Math.floor(h);
+        int upper = Math.min(lower + 1, sorted.length - 1);
+        return sorted[lower] + (h - lower) * (sorted[upper] - sorted[lower]);
+    }
+
+    private static void checkPercentiles(double[] percentiles) {
+        for (double percentile : percentiles) {
+            if (!(percentile >= 0 && percentile <= 100)) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 100, was " + percentile);
+            }
+        }
+    }
+
+    private double[] column(String accession) {
+        double[] column = values.get(accession);
+        if (column == null) {
+            throw new IllegalArgumentException("No numeric values for accession " + accession);
+        }
+        return column;
+    }
+
+    private int checkRun(int run) {
+        if (run < 0 || run >= runCount) {
+            throw new IllegalArgumentException("Can not access run " + run);
+        }
+        return run;
+    }
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Exports all quality metrics of an mzQC file as a long-format table with
+ * one row per value, for analysis with R, Python or spreadsheets. The
+ * columns are:
+ * <ul>
+ * <li>{@code quality}: {@code run} or {@code set},</li>
+ * <li>{@code label}: the metadata label of the quality,</li>
+ * <li>{@code accession} and {@code name} of the metric,</li>
+ * <li>{@code unit_accession} and {@code unit_name}, comma-separated if the
+ * unit has several terms,</li>
+ * <li>{@code column}: the column accession of a table value or the column
+ * index of a matrix value, empty otherwise,</li>
+ * <li>{@code row}: the zero-based row index of a table, matrix or list value,
+ * empty for single values,</li>
+ * <li>{@code value}: the value of the cell.</li>
+ * </ul>
+ *
+ * The file is read as a token stream and rows are written while parsing.
+ * Neither the {@link MzQC} object nor objects for qualities, metrics or rows
+ * are created; only the tokens of the value of the current metric are
+ * buffered until its unit has been read. JSON, Smile and gzip compressed
+ * input is supported.
+ *
+ * <pre>
+ * long rows = new MetricExporter(MetricExporter.Format.CSV).export(input, Path.of("metrics.csv"));
+ * </pre>
+ *
+ * Instances are immutable and thread-safe.
+ */
+public final class MetricExporter {
+
+    /**
+     * Header of the exported table.
+     */
+    static final String[] COLUMNS = {"quality", "label", "accession", "name", "unit_accession", "unit_name", "column", "row", "value"};
+
+    private static final String UNIT = "unit";
+    private static final String NAME = "name";
+
+    /**
+     * Delimited text formats of the exported table.
+     */
+    public enum Format {
+        /**
+         * Tab separated values. Tabs and line breaks within values are
+         * replaced by spaces.
+         */
+        TSV('\t'),
+        /**
+         * Comma separated values, quoted according to RFC 4180 where needed.
+         */
+        CSV(',');
+
+        private final char delimiter;
+
+        Format(char delimiter) {
+            this.delimiter = delimiter;
+        }
+
+        public char getDelimiter() {
+            return delimiter;
+        }
+
+        /**
+         * Returns the format for the given file name: CSV for names ending in
+         * {@code .csv} or {@code .csv.gz}, TSV otherwise.
+         *
+         * @param fileName the file name.
+         * @return the format.
+         */
+        public static Format forFileName(String fileName) {
+            String name = fileName.toLowerCase(Locale.ROOT);
+            if (name.endsWith(MzQCFormat.GZIP_EXTENSION)) {
+                name = name.substring(0, name.length() - MzQCFormat.GZIP_EXTENSION.length());
+            }
+            return name.endsWith(".csv") ? CSV : TSV;
+        }
+
+        String escape(String value) {
+            if (value == null || value.isEmpty()) {
+                return "";
+            }
+            if (this == TSV) {
+                if (value.indexOf('\t') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                    return value;
+                }
+                return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+
+    private final Format format;
+
+    /**
+     * Create a new exporter for the given format.
+     *
+     * @param format the format of the exported table.
+     */
+    public MetricExporter(Format format) {
+        this.format = format;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Export the metrics of the given mzQC file into the given file. The
+     * output is gzip compressed if its name ends in {@code .gz}.
+     *
+     * @param input the mzQC file.
+     * @param output the table file.
+     * @return the number of rows written, excluding the header.
+     * @throws IOException if the input can not be read or the output can not
+     * be written.
+     */
+    public long export(Path input, Path output) throws IOException {
+        try ( Writer writer = new BufferedWriter(new OutputStreamWriter(Converter.openOutputStream(output), StandardCharsets.UTF_8), 64 * 1024)) {
+            return export(input, writer);
+        }
+    }
+
+    /**
+     * Export the metrics of the given mzQC file to the given writer. The
+     * writer is not closed.
+     *
+     * @param input the mzQC file.
+     * @param writer the writer, should be buffered.
+     * @return the number of rows written, excluding the header.
+     * @throws IOException if the input can not be read or the output can not
+     * be written.
+     */
+    public long export(Path input, Writer writer) throws IOException {
+        try ( InputStream in = Files.newInputStream(input);  JsonParser parser = Converter.createParser(in)) {
+            return export(parser, writer);
+        }
+    }
+
+    private long export(JsonParser parser, Writer writer) throws IOException {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) {
+                writer.write(format.delimiter);
+            }
+            writer.write(COLUMNS[i]);
+        }
+        writer.write('\n');
+        long rows = 0;
+        MzQCReader.enterMzQC(parser);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY && MzQCReader.RUN_QUALITIES.equals(name)) {
+                rows += exportQualities(parser, "run", writer);
+            } else if (token == JsonToken.START_ARRAY && MzQCReader.SET_QUALITIES.equals(name)) {
+                rows += exportQualities(parser, "set", writer);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        writer.flush();
+        return rows;
+    }
+
+    private long exportQualities(JsonParser parser, String quality, Writer writer) throws IOException {
+        long rows = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token != JsonToken.START_OBJECT) {
+                throw new IOException("Expected quality object at " + parser.currentTokenLocation());
+            }
+            String label = null;
+            boolean hasMetadata = false;
+            TokenBuffer pending = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                token = parser.nextToken();
+                if (token == JsonToken.START_OBJECT && MzQCReader.METADATA.equals(name)) {
+                    label = MzQCIndex.readLabel(parser);
+                    hasMetadata = true;
+                } else if (token == JsonToken.START_ARRAY && MzQCReader.QUALITY_METRICS.equals(name) && hasMetadata) {
+                    rows += exportMetrics(parser, quality, label, writer);
+                } else if (token == JsonToken.START_ARRAY && MzQCReader.QUALITY_METRICS.equals(name)) {
+                    // the label follows the metrics, keep their tokens until it is known
+                    pending = new TokenBuffer(parser);
+                    pending.copyCurrentStructure(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (pending != null) {
+                try ( JsonParser metrics = pending.asParser(parser.getCodec())) {
+                    metrics.nextToken();
+                    rows += exportMetrics(metrics, quality, label, writer);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private long exportMetrics(JsonParser parser, String quality, String label, Writer writer) throws IOException {
+        long rows = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token != JsonToken.START_OBJECT) {
+                throw new IOException("Expected quality metric object at " + parser.currentTokenLocation());
+            }
+            String accession = null;
+            String name = null;
+            String[] unit = {null, null};
+            String scalar = null;
+            TokenBuffer value = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                token = parser.nextToken();
+                switch (field) {
+                    case MzQCReader.ACCESSION ->
+                        accession = token == JsonToken.VALUE_NULL ? null : parser.getText();
+                    case NAME ->
+                        name = token == JsonToken.VALUE_NULL ? null : parser.getText();
+                    case UNIT ->
+                        unit = readUnit(parser);
+                    case MzQCReader.VALUE -> {
+                        if (token.isScalarValue()) {
+                            scalar = token == JsonToken.VALUE_NULL ? null : parser.getText();
+                        } else {
+                            value = new TokenBuffer(parser);
+                            value.copyCurrentStructure(parser);
+                        }
+                    }
+                    default ->
+                        parser.skipChildren();
+                }
+            }
+            String prefix = quality + format.delimiter + format.escape(label) + format.delimiter
+                    + format.escape(accession) + format.delimiter + format.escape(name) + format.delimiter
+                    + format.escape(unit[0]) + format.delimiter + format.escape(unit[1]) + format.delimiter;
+            if (value == null) {
+                writeRow(writer, prefix, null, null, scalar);
+                rows++;
+            } else {
+                try ( JsonParser values = value.asParser(parser.getCodec())) {
+                    values.nextToken();
+                    rows += writeValue(values, prefix, writer);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private long writeValue(JsonParser parser, String prefix, Writer writer) throws IOException {
+        long rows = 0;
+        if (parser.currentToken() == JsonToken.START_OBJECT) {
+            // table: one array of cells per column accession
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String column = parser.currentName();
+                if (parser.nextToken() == JsonToken.START_ARRAY) {
+                    int row = 0;
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        writeRow(writer, prefix, column, Integer.toString(row++), cell(parser));
+                        rows++;
+                    }
+                } else {
+                    writeRow(writer, prefix, column, null, cell(parser));
+                    rows++;
+                }
+            }
+        } else {
+            // list or matrix
+            int row = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                String rowIndex = Integer.toString(row++);
+                if (parser.currentToken() == JsonToken.START_ARRAY) {
+                    int column = 0;
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        writeRow(writer, prefix, Integer.toString(column++), rowIndex, cell(parser));
+                        rows++;
+                    }
+                } else {
+                    writeRow(writer, prefix, null, rowIndex, cell(parser));
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Returns the text of the current scalar token, or compact JSON for a
+     * nested structure.
+     */
+    private static String cell(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token.isScalarValue()) {
+            return parser.getText();
+        }
+        StringWriter json = new StringWriter();
+        try ( JsonGenerator generator = Converter.getObjectMapper().getFactory().createGenerator(json)) {
+            generator.copyCurrentStructure(parser);
+        }
+        return json.toString();
+    }
+
+    private void writeRow(Writer writer, String prefix, String column, String row, String value) throws IOException {
+        writer.write(prefix);
+        writer.write(format.escape(column));
+        writer.write(format.delimiter);
+        if (row != null) {
+            writer.write(row);
+        }
+        writer.write(format.delimiter);
+        writer.write(format.escape(value));
+        writer.write('\n');
+    }
+
+    /**
+     * Read the accessions and names of a unit, which is a single term or an
+     * array of terms.
+     */
+    private static String[] readUnit(JsonParser parser) throws IOException {
+        StringBuilder accessions = new StringBuilder();
+        StringBuilder names = new StringBuilder();
+        if (parser.currentToken() == JsonToken.START_OBJECT) {
+            readTerm(parser, accessions, names);
+        } else if (parser.currentToken() == JsonToken.START_ARRAY) {
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                if (!accessions.isEmpty() || !names.isEmpty()) {
+                    accessions.append(',');
+                    names.append(',');
+                }
+                readTerm(parser, accessions, names);
+            }
+        } else {
+            parser.skipChildren();
+        }
+        return new String[]{accessions.toString(), names.toString()};
+    }
+
+    private static void readTerm(JsonParser parser, StringBuilder accessions, StringBuilder names) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_STRING && MzQCReader.ACCESSION.equals(field)) {
+                accessions.append(parser.getText());
+            } else if (token == JsonToken.VALUE_STRING && NAME.equals(field)) {
+                names.append(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+}
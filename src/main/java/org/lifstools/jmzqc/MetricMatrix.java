@@ -0,0 +1,388 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Dense, row-major representation of a numeric matrix metric value. In JSON,
+ * a matrix is an array of rows, each row being an array of numbers of the same
+ * length. Matrices of integral numbers are stored as {@code long[]}, all
+ * others as {@code double[]}, so that integral values are written as integers
+ * again. Missing values ({@code null}) are represented as {@link Double#NaN}
+ * in floating point matrices and by a bitmap in integral matrices, and written
+ * as {@code null} again on serialization.
+ */
+@JsonDeserialize(using = MetricMatrix.Deserializer.class)
+@JsonSerialize(using = MetricMatrix.Serializer.class)
+public final class MetricMatrix {
+
+    private final int rows;
+    private final int columns;
+    private final double[] values;
+    private final long[] longs;
+    private final BitSet nulls;
+
+    /**
+     * Create a new floating point matrix from row-major values.
+     *
+     * @param rows the number of rows.
+     * @param columns the number of columns.
+     * @param values the row-major values, must have length rows * columns.
+     * @throws IllegalArgumentException if the dimensions do not match the
+     * number of values.
+     */
+    public MetricMatrix(int rows, int columns, double[] values) {
+        this(rows, columns, values.length, values, null, new BitSet());
+    }
+
+    /**
+     * Create a new integral matrix from row-major values.
+     *
+     * @param rows the number of rows.
+     * @param columns the number of columns.
+     * @param values the row-major values, must have length rows * columns.
+     * @throws IllegalArgumentException if the dimensions do not match the
+     * number of values.
+     */
+    public MetricMatrix(int rows, int columns, long[] values) {
+        this(rows, columns, values, new BitSet());
+    }
+
+    /**
+     * Create a new integral matrix with missing values.
+     *
+     * @param nulls the indices of the missing row-major values.
+     */
+    MetricMatrix(int rows, int columns, long[] values, BitSet nulls) {
+        this(rows, columns, values.length, null, values, nulls);
+    }
+
+    private MetricMatrix(int rows, int columns, int length, double[] values, long[] longs, BitSet nulls) {
+        if (rows < 0 || columns < 0 || (long) rows * columns != length) {
+            throw new IllegalArgumentException("Matrix dimensions " + rows + "x" + columns + " do not match number of values " + length);
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.values = values;
+        this.longs = longs;
+        this.nulls = nulls;
+    }
+
+    /**
+     * Create a matrix from the generic list representation, as produced by
+     * Jackson for untyped JSON arrays. The matrix is integral if all numbers
+     * are {@link Long}, {@link Integer}, {@link Short} or {@link Byte}; other
+     * numbers, such as a {@link java.math.BigInteger} beyond the long range,
+     * are stored as doubles.
+     *
+     * @param list the list of rows, each a list of numbers.
+     * @return the matrix.
+     * @throws ClassCastException if the list does not contain numeric rows.
+     * @throws IllegalArgumentException if rows have different lengths.
+     */
+    public static MetricMatrix of(List<?> list) {
+        int cols = -1;
+        boolean integral = true;
+        for (int i = 0; i < list.size(); i++) {
+            if (!(list.get(i) instanceof List<?> row)) {
+                throw new ClassCastException("Row " + i + " is not a list of values!");
+            }
+            if (cols < 0) {
+                cols = row.size();
+            } else if (row.size() != cols) {
+                throw new IllegalArgumentException("Row " + i + " has " + row.size() + " columns, expected " + cols);
+            }
+            for (Object value : row) {
+                if (value != null && !(value instanceof Number)) {
+                    throw new ClassCastException(value.getClass().getName() + " cannot be cast to " + Number.class.getName());
+                }
+                integral &= value == null || value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+            }
+        }
+        if (cols < 0) {
+            return new MetricMatrix(0, 0, new double[0]);
+        }
+        double[] data = integral ? null : new double[list.size() * cols];
+        long[] longData = integral ? new long[list.size() * cols] : null;
+        BitSet nullCells = new BitSet();
+        for (int i = 0; i < list.size(); i++) {
+            List<?> row = (List<?>) list.get(i);
+            for (int j = 0; j < cols; j++) {
+                Number value = (Number) row.get(j);
+                int index = i * cols + j;
+                if (integral) {
+                    if (value == null) {
+                        nullCells.set(index);
+                    } else {
+                        longData[index] = value.longValue();
+                    }
+                } else {
+                    data[index] = value == null ? Double.NaN : value.doubleValue();
+                }
+            }
+        }
+        return integral ? new MetricMatrix(list.size(), cols, longData, nullCells) : new MetricMatrix(list.size(), cols, data);
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int columns() {
+        return columns;
+    }
+
+    /**
+     * Returns true, if this matrix holds integral values.
+     *
+     * @return true for {@code long} storage.
+     */
+    public boolean isIntegral() {
+        return longs != null;
+    }
+
+    public boolean isNull(int row, int column) {
+        int index = index(row, column);
+        return longs == null ? Double.isNaN(values[index]) : nulls.get(index);
+    }
+
+    /**
+     * Returns the value at the given cell. Missing values are returned as
+     * {@link Double#NaN}.
+     */
+    public double get(int row, int column) {
+        return get(index(row, column));
+    }
+
+    private double get(int index) {
+        if (longs == null) {
+            return values[index];
+        }
+        return nulls.get(index) ? Double.NaN : longs[index];
+    }
+
+    /**
+     * Returns the integral value at the given cell. Missing values are
+     * returned as 0.
+     *
+     * @throws ClassCastException if the matrix is not integral.
+     */
+    public long getLong(int row, int column) {
+        int index = index(row, column);
+        if (longs == null) {
+            throw new ClassCastException("Floating point matrix values cannot be cast to " + Long.class.getName());
+        }
+        return longs[index];
+    }
+
+    private int index(int row, int column) {
+        if (row < 0 || row >= rows || column < 0 || column >= columns) {
+            throw new IndexOutOfBoundsException("Cell " + row + "," + column + " out of bounds for " + rows + "x" + columns + " matrix");
+        }
+        return row * columns + column;
+    }
+
+    /**
+     * Returns a copy of the given row.
+     */
+    public double[] row(int row) {
+        double[] copy = new double[columns];
+        for (int j = 0; j < columns; j++) {
+            copy[j] = get(row, j);
+        }
+        return copy;
+    }
+
+    /**
+     * Returns a copy of the row-major values.
+     */
+    public double[] toArray() {
+        if (longs == null) {
+            return values.clone();
+        }
+        double[] copy = new double[longs.length];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = get(i);
+        }
+        return copy;
+    }
+
+    /**
+     * Returns a copy of the row-major integral values. Missing values are
+     * returned as 0.
+     *
+     * @throws ClassCastException if the matrix is not integral.
+     */
+    public long[] toLongArray() {
+        if (longs == null) {
+            throw new ClassCastException("Floating point matrix values cannot be cast to " + Long.class.getName());
+        }
+        return longs.clone();
+    }
+
+    /**
+     * Converts this matrix back into the generic list representation.
+     * Integral values are boxed like Jackson does for untyped values.
+     *
+     * @return a list of rows with boxed values.
+     */
+    public List<List<Number>> toList() {
+        List<List<Number>> list = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            List<Number> row = new ArrayList<>(columns);
+            for (int j = 0; j < columns; j++) {
+                int index = i * columns + j;
+                if (isNull(i, j)) {
+                    row.add(null);
+                } else if (longs == null) {
+                    row.add(values[index]);
+                } else {
+                    long value = longs[index];
+                    row.add(value == (int) value ? (Number) (int) value : (Number) value);
+                }
+            }
+            list.add(row);
+        }
+        return list;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof MetricMatrix other && rows == other.rows && columns == other.columns
+                && Arrays.equals(values, other.values) && Arrays.equals(longs, other.longs) && nulls.equals(other.nulls);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 * rows + columns) + Arrays.hashCode(values)) + Arrays.hashCode(longs);
+    }
+
+    @Override
+    public String toString() {
+        return "MetricMatrix{" + rows + "x" + columns + "}";
+    }
+
+    /**
+     * Reads a matrix directly from the token stream into a primitive array.
+     * The matrix is integral if all numbers are integral, otherwise all
+     * numbers are read as doubles.
+     */
+    static class Deserializer extends JsonDeserializer<MetricMatrix> {
+
+        @Override
+        public MetricMatrix deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JsonProcessingException {
+            if (jsonParser.currentToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Cannot deserialize MetricMatrix, expected JSON array at " + jsonParser.currentLocation());
+            }
+            long[] longs = new long[64];
+            double[] data = null;
+            BitSet nulls = new BitSet();
+            int size = 0;
+            int rows = 0;
+            int cols = -1;
+            while (jsonParser.nextToken() == JsonToken.START_ARRAY) {
+                int rowStart = size;
+                JsonToken token;
+                while ((token = jsonParser.nextToken()) != JsonToken.END_ARRAY) {
+                    if (size == longs.length) {
+                        longs = Arrays.copyOf(longs, longs.length + (longs.length >> 1));
+                        if (data != null) {
+                            data = Arrays.copyOf(data, longs.length);
+                        }
+                    }
+                    switch (token) {
+                        case VALUE_NULL -> {
+                            nulls.set(size);
+                            if (data != null) {
+                                data[size] = Double.NaN;
+                            }
+                        }
+                        case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> {
+                            boolean integral = token == JsonToken.VALUE_NUMBER_INT
+                                    && jsonParser.getNumberType() != JsonParser.NumberType.BIG_INTEGER;
+                            if (integral) {
+                                longs[size] = jsonParser.getLongValue();
+                            } else if (data == null) {
+                                // integers beyond the long range are stored as doubles, like floats
+                                data = new double[longs.length];
+                                for (int i = 0; i < size; i++) {
+                                    data[i] = nulls.get(i) ? Double.NaN : longs[i];
+                                }
+                            }
+                            if (data != null) {
+                                data[size] = jsonParser.getDoubleValue();
+                            }
+                        }
+                        default ->
+                            throw new IOException("Cannot deserialize MetricMatrix, unexpected token " + token + " at " + jsonParser.currentLocation());
+                    }
+                    size++;
+                }
+                if (cols < 0) {
+                    cols = size - rowStart;
+                } else if (size - rowStart != cols) {
+                    throw new IOException("Cannot deserialize MetricMatrix, row " + rows + " has " + (size - rowStart) + " columns, expected " + cols);
+                }
+                rows++;
+            }
+            if (jsonParser.currentToken() != JsonToken.END_ARRAY) {
+                throw new IOException("Cannot deserialize MetricMatrix, expected row array at " + jsonParser.currentLocation());
+            }
+            if (data != null) {
+                return new MetricMatrix(rows, Math.max(cols, 0), Arrays.copyOf(data, size));
+            }
+            return new MetricMatrix(rows, Math.max(cols, 0), Arrays.copyOf(longs, size), nulls);
+        }
+    }
+
+    static class Serializer extends JsonSerializer<MetricMatrix> {
+
+        @Override
+        public void serialize(MetricMatrix matrix, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+            jsonGenerator.writeStartArray();
+            for (int i = 0; i < matrix.rows; i++) {
+                jsonGenerator.writeStartArray();
+                for (int j = 0; j < matrix.columns; j++) {
+                    int index = i * matrix.columns + j;
+                    if (matrix.isNull(i, j)) {
+                        jsonGenerator.writeNull();
+                    } else if (matrix.longs != null) {
+                        jsonGenerator.writeNumber(matrix.longs[index]);
+                    } else {
+                        jsonGenerator.writeNumber(matrix.values[index]);
+                    }
+                }
+                jsonGenerator.writeEndArray();
+            }
+            jsonGenerator.writeEndArray();
+        }
+    }
+}
@@ -0,0 +1,715 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Columnar representation of a table metric value. In JSON, a table is an
+ * object with one array per column. Each column is stored in a primitive
+ * array: integral columns as {@code long[]}, floating point columns as
+ * {@code double[]} and string columns as dictionary encoded {@code int[]}.
+ * Columns with mixed or nested content are kept as {@code Object[]}.
+ *
+ * Missing values ({@code null}) in double columns are represented as
+ * {@link Double#NaN}, in long columns by a bitmap, and written as
+ * {@code null} again on serialization.
+ */
+@JsonDeserialize(using = MetricTable.Deserializer.class)
+@JsonSerialize(using = MetricTable.Serializer.class)
+public final class MetricTable {
+
+    /**
+     * The storage type of a column.
+     */
+    public enum ColumnType {
+        LONG, DOUBLE, STRING, OBJECT
+    }
+
+    /**
+     * A single, typed column of a {@link MetricTable}.
+     */
+    public sealed interface Column permits LongColumn, DoubleColumn, StringColumn, ObjectColumn {
+
+        ColumnType type();
+
+        int size();
+
+        boolean isNull(int row);
+
+        /**
+         * Returns the (boxed) value at the given row, or null.
+         */
+        Object get(int row);
+
+        /**
+         * Returns the numeric value at the given row. Missing values are
+         * returned as {@link Double#NaN}.
+         *
+         * @throws ClassCastException if the column is not numeric.
+         */
+        default double getDouble(int row) {
+            throw new ClassCastException(type() + " column cannot be cast to " + Number.class.getName());
+        }
+    }
+
+    /**
+     * Column of integral values.
+     */
+    public static final class LongColumn implements Column {
+
+        private final long[] values;
+        private final BitSet nulls;
+
+        LongColumn(long[] values, BitSet nulls) {
+            this.values = values;
+            this.nulls = nulls;
+        }
+
+        @Override
+        public ColumnType type() {
+            return ColumnType.LONG;
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public boolean isNull(int row) {
+            return nulls.get(row);
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        public long getLong(int row) {
+            return values[row];
+        }
+
+        @Override
+        public double getDouble(int row) {
+            return isNull(row) ? Double.NaN : values[row];
+        }
+
+        /**
+         * Returns a copy of the values. Missing values are returned as 0.
+         */
+        public long[] toArray() {
+            return values.clone();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof LongColumn other && Arrays.equals(values, other.values) && nulls.equals(other.nulls);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(values) + nulls.hashCode();
+        }
+    }
+
+    /**
+     * Column of floating point values.
+     */
+    public static final class DoubleColumn implements Column {
+
+        private final double[] values;
+
+        DoubleColumn(double[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public ColumnType type() {
+            return ColumnType.DOUBLE;
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public boolean isNull(int row) {
+            return Double.isNaN(values[row]);
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        public double getDouble(int row) {
+            return values[row];
+        }
+
+        /**
+         * Returns a copy of the values. Missing values are returned as
+         * {@link Double#NaN}.
+         */
+        public double[] toArray() {
+            return values.clone();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof DoubleColumn other && Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+    }
+
+    /**
+     * Dictionary encoded column of strings.
+     */
+    public static final class StringColumn implements Column {
+
+        private final int[] codes;
+        private final String[] dictionary;
+
+        StringColumn(int[] codes, String[] dictionary) {
+            this.codes = codes;
+            this.dictionary = dictionary;
+        }
+
+        @Override
+        public ColumnType type() {
+            return ColumnType.STRING;
+        }
+
+        @Override
+        public int size() {
+            return codes.length;
+        }
+
+        @Override
+        public boolean isNull(int row) {
+            return codes[row] < 0;
+        }
+
+        @Override
+        public String get(int row) {
+            return isNull(row) ? null : dictionary[codes[row]];
+        }
+
+        /**
+         * Returns the distinct values of this column.
+         */
+        public List<String> dictionary() {
+            return Collections.unmodifiableList(Arrays.asList(dictionary));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof StringColumn other) || other.size() != size()) {
+                return false;
+            }
+            for (int i = 0; i < codes.length; i++) {
+                if (!Objects.equals(get(i), other.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 1;
+            for (int i = 0; i < codes.length; i++) {
+                hash = 31 * hash + Objects.hashCode(get(i));
+            }
+            return hash;
+        }
+    }
+
+    /**
+     * Column of mixed or nested values.
+     */
+    public static final class ObjectColumn implements Column {
+
+        private final Object[] values;
+
+        ObjectColumn(Object[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public ColumnType type() {
+            return ColumnType.OBJECT;
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public boolean isNull(int row) {
+            return values[row] == null;
+        }
+
+        @Override
+        public Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        public double getDouble(int row) {
+            if (values[row] == null) {
+                return Double.NaN;
+            }
+            if (values[row] instanceof Number number) {
+                return number.doubleValue();
+            }
+            throw new ClassCastException(values[row].getClass().getName() + " cannot be cast to " + Number.class.getName());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ObjectColumn other && Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+    }
+
+    private final String[] columnNames;
+    private final Column[] columns;
+
+    MetricTable(String[] columnNames, Column[] columns) {
+        this.columnNames = columnNames;
+        this.columns = columns;
+    }
+
+    /**
+     * Create a table from the generic map representation, as produced by
+     * Jackson for untyped JSON objects, mapping column names to lists of
+     * values.
+     *
+     * @param map the map of column names to column values.
+     * @return the table.
+     * @throws ClassCastException if a column is not a list.
+     */
+    public static MetricTable of(Map<?, ?> map) {
+        String[] names = new String[map.size()];
+        Column[] cols = new Column[map.size()];
+        int i = 0;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            names[i] = String.valueOf(entry.getKey());
+            ColumnBuilder builder = new ColumnBuilder();
+            if (entry.getValue() instanceof List<?> list) {
+                for (Object o : list) {
+                    builder.add(o);
+                }
+            } else {
+                throw new ClassCastException("Column '" + names[i] + "' is not a list of values!");
+            }
+            cols[i++] = builder.build();
+        }
+        return new MetricTable(names, cols);
+    }
+
+    /**
+     * Returns the column names in document order.
+     *
+     * @return the column names.
+     */
+    public List<String> columnNames() {
+        return Collections.unmodifiableList(Arrays.asList(columnNames));
+    }
+
+    public int columnCount() {
+        return columns.length;
+    }
+
+    /**
+     * Returns the number of rows, the size of the longest column.
+     *
+     * @return the number of rows.
+     */
+    public int rowCount() {
+        int rows = 0;
+        for (Column column : columns) {
+            rows = Math.max(rows, column.size());
+        }
+        return rows;
+    }
+
+    public Column column(int index) {
+        return columns[index];
+    }
+
+    /**
+     * Returns the column with the given name.
+     *
+     * @param name the column name, e.g. a CV accession.
+     * @return the column, or null if no such column exists.
+     */
+    public Column column(String name) {
+        for (int i = 0; i < columnNames.length; i++) {
+            if (columnNames[i].equals(name)) {
+                return columns[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Converts this table back into the generic map representation.
+     *
+     * @return a map of column names to lists of boxed values.
+     */
+    public Map<String, List<Object>> toMap() {
+        Map<String, List<Object>> map = new LinkedHashMap<>();
+        for (int i = 0; i < columns.length; i++) {
+            List<Object> values = new ArrayList<>(columns[i].size());
+            for (int j = 0; j < columns[i].size(); j++) {
+                values.add(columns[i].get(j));
+            }
+            map.put(columnNames[i], values);
+        }
+        return map;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof MetricTable other && Arrays.equals(columnNames, other.columnNames) && Arrays.equals(columns, other.columns);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(columnNames) + Arrays.hashCode(columns);
+    }
+
+    @Override
+    public String toString() {
+        return "MetricTable{columns=" + Arrays.toString(columnNames) + ", rows=" + rowCount() + "}";
+    }
+
+    /**
+     * Accumulates the values of one column into the most compact primitive
+     * storage. Starts out as a long column and is promoted to double or object
+     * storage when required. Columns with both integral and floating point
+     * numbers use object storage, so that integral numbers are not written
+     * back as floating point numbers.
+     */
+    static final class ColumnBuilder {
+
+        private ColumnType type = null;
+        private int size = 0;
+        private long[] longs = new long[16];
+        private double[] doubles;
+        private int[] codes;
+        private Map<String, Integer> dictionary;
+        private List<String> dictionaryValues;
+        private Object[] objects;
+        private final BitSet nulls = new BitSet();
+
+        void add(Object value) {
+            if (value == null) {
+                addNull();
+            } else if ((value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)) {
+                addLong(((Number) value).longValue());
+            } else if (value instanceof Double || value instanceof Float) {
+                addDouble(((Number) value).doubleValue());
+            } else if (value instanceof String s) {
+                addString(s);
+            } else {
+                addObject(value);
+            }
+        }
+
+        void addNull() {
+            ensureCapacity();
+            nulls.set(size);
+            switch (type == null ? ColumnType.LONG : type) {
+                case LONG ->
+                    longs[size] = 0;
+                case DOUBLE ->
+                    doubles[size] = Double.NaN;
+                case STRING ->
+                    codes[size] = -1;
+                case OBJECT ->
+                    objects[size] = null;
+            }
+            size++;
+        }
+
+        void addLong(long value) {
+            if (type == null) {
+                type = ColumnType.LONG;
+            }
+            ensureCapacity();
+            switch (type) {
+                case LONG ->
+                    longs[size] = value;
+                default -> {
+                    toObjects();
+                    objects[size] = value;
+                }
+            }
+            size++;
+        }
+
+        void addDouble(double value) {
+            if (type == null || (type == ColumnType.LONG && nulls.cardinality() == size)) {
+                toDoubles();
+            }
+            ensureCapacity();
+            if (type == ColumnType.DOUBLE) {
+                doubles[size] = value;
+            } else {
+                toObjects();
+                objects[size] = value;
+            }
+            size++;
+        }
+
+        void addString(String value) {
+            if (type == null || (type == ColumnType.LONG && nulls.cardinality() == size)) {
+                toStrings();
+            }
+            ensureCapacity();
+            if (type == ColumnType.STRING) {
+                Integer code = dictionary.get(value);
+                if (code == null) {
+                    code = dictionaryValues.size();
+                    dictionary.put(value, code);
+                    dictionaryValues.add(value);
+                }
+                codes[size] = code;
+            } else {
+                toObjects();
+                objects[size] = value;
+            }
+            size++;
+        }
+
+        void addObject(Object value) {
+            toObjects();
+            ensureCapacity();
+            objects[size++] = value;
+        }
+
+        private void ensureCapacity() {
+            int capacity = switch (type == null ? ColumnType.LONG : type) {
+                case LONG ->
+                    longs.length;
+                case DOUBLE ->
+                    doubles.length;
+                case STRING ->
+                    codes.length;
+                case OBJECT ->
+                    objects.length;
+            };
+            if (size < capacity) {
+                return;
+            }
+            int newCapacity = Math.max(16, capacity + (capacity >> 1));
+            switch (type == null ? ColumnType.LONG : type) {
+                case LONG ->
+                    longs = Arrays.copyOf(longs, newCapacity);
+                case DOUBLE ->
+                    doubles = Arrays.copyOf(doubles, newCapacity);
+                case STRING ->
+                    codes = Arrays.copyOf(codes, newCapacity);
+                case OBJECT ->
+                    objects = Arrays.copyOf(objects, newCapacity);
+            }
+        }
+
+        private void toDoubles() {
+            doubles = new double[Math.max(16, longs.length)];
+            for (int i = 0; i < size; i++) {
+                doubles[i] = nulls.get(i) ? Double.NaN : longs[i];
+            }
+            longs = null;
+            type = ColumnType.DOUBLE;
+        }
+
+        private void toStrings() {
+            codes = new int[Math.max(16, longs.length)];
+            // only reached while all previous values are null
+            Arrays.fill(codes, 0, size, -1);
+            dictionary = new HashMap<>();
+            dictionaryValues = new ArrayList<>();
+            longs = null;
+            type = ColumnType.STRING;
+        }
+
+        private void toObjects() {
+            if (type == ColumnType.OBJECT) {
+                return;
+            }
+            Object[] values = new Object[Math.max(16, size * 2)];
+            for (int i = 0; i < size; i++) {
+                values[i] = current(i);
+            }
+            objects = values;
+            if (type == ColumnType.STRING) {
+                codes = null;
+                dictionary = null;
+                dictionaryValues = null;
+            }
+            longs = null;
+            doubles = null;
+            type = ColumnType.OBJECT;
+        }
+
+        private Object current(int i) {
+            if (nulls.get(i)) {
+                return null;
+            }
+            return switch (type == null ? ColumnType.LONG : type) {
+                case LONG ->
+                    longs[i];
+                case DOUBLE ->
+                    doubles[i];
+                case STRING ->
+                    dictionaryValues.get(codes[i]);
+                case OBJECT ->
+                    objects[i];
+            };
+        }
+
+        Column build() {
+            return switch (type == null ? ColumnType.LONG : type) {
+                case LONG ->
+                    new LongColumn(Arrays.copyOf(longs, size), (BitSet) nulls.clone());
+                case DOUBLE ->
+                    new DoubleColumn(Arrays.copyOf(doubles, size));
+                case STRING ->
+                    new StringColumn(Arrays.copyOf(codes, size), dictionaryValues.toArray(String[]::new));
+                case OBJECT ->
+                    new ObjectColumn(Arrays.copyOf(objects, size));
+            };
+        }
+    }
+
+    /**
+     * Reads a table directly from the token stream into primitive columns,
+     * without creating intermediate boxed values for numbers.
+     */
+    static class Deserializer extends JsonDeserializer<MetricTable> {
+
+        @Override
+        public MetricTable deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JsonProcessingException {
+            if (jsonParser.currentToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Cannot deserialize MetricTable, expected JSON object at " + jsonParser.currentLocation());
+            }
+            List<String> names = new ArrayList<>();
+            List<Column> cols = new ArrayList<>();
+            while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+                names.add(jsonParser.currentName());
+                if (jsonParser.nextToken() != JsonToken.START_ARRAY) {
+                    throw new IOException("Cannot deserialize MetricTable, column '" + jsonParser.currentName() + "' is not an array at " + jsonParser.currentLocation());
+                }
+                cols.add(readColumn(jsonParser));
+            }
+            return new MetricTable(names.toArray(String[]::new), cols.toArray(Column[]::new));
+        }
+
+        static Column readColumn(JsonParser jsonParser) throws IOException {
+            ColumnBuilder builder = new ColumnBuilder();
+            JsonToken token;
+            while ((token = jsonParser.nextToken()) != JsonToken.END_ARRAY) {
+                switch (token) {
+                    case VALUE_NULL ->
+                        builder.addNull();
+                    case VALUE_NUMBER_INT -> {
+                        if (jsonParser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                            builder.addObject(jsonParser.getBigIntegerValue());
+                        } else {
+                            builder.addLong(jsonParser.getLongValue());
+                        }
+                    }
+                    case VALUE_NUMBER_FLOAT ->
+                        builder.addDouble(jsonParser.getDoubleValue());
+                    case VALUE_STRING ->
+                        builder.addString(jsonParser.getText());
+                    case START_ARRAY, START_OBJECT, VALUE_TRUE, VALUE_FALSE ->
+                        builder.addObject(jsonParser.readValueAs(Object.class));
+                    default ->
+                        throw new IOException("Cannot deserialize MetricTable column, unexpected token " + token + " at " + jsonParser.currentLocation());
+                }
+            }
+            return builder.build();
+        }
+    }
+
+    static class Serializer extends JsonSerializer<MetricTable> {
+
+        @Override
+        public void serialize(MetricTable table, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+            jsonGenerator.writeStartObject();
+            for (int i = 0; i < table.columns.length; i++) {
+                jsonGenerator.writeFieldName(table.columnNames[i]);
+                writeColumn(table.columns[i], jsonGenerator);
+            }
+            jsonGenerator.writeEndObject();
+        }
+
+        static void writeColumn(Column column, JsonGenerator jsonGenerator) throws IOException {
+            jsonGenerator.writeStartArray();
+            for (int row = 0; row < column.size(); row++) {
+                if (column.isNull(row)) {
+                    jsonGenerator.writeNull();
+                    continue;
+                }
+                if (column instanceof LongColumn c) {
+                    jsonGenerator.writeNumber(c.values[row]);
+                } else if (column instanceof DoubleColumn c) {
+                    jsonGenerator.writeNumber(c.values[row]);
+                } else if (column instanceof StringColumn c) {
+                    jsonGenerator.writeString(c.get(row));
+                } else {
+                    jsonGenerator.writeObject(column.get(row));
+                }
+            }
+            jsonGenerator.writeEndArray();
+        }
+    }
+}
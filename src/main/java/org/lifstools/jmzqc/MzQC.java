@@ -16,6 +16,22 @@
 package org.lifstools.jmzqc;
 
 import com.fasterxml.jackson.annotation.*;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
+import java.io.IOException;
+import java.util.Collection;
 import java.time.OffsetDateTime;
 import java.util.Collections;
 import java.util.List;
@@ -24,6 +40,8 @@ import java.util.stream.Collectors;
 /**
  * Root element of an mzQC file.
  */
+@JsonDeserialize(using = MzQC.Deserializer.class)
+@JsonSerialize(using = MzQC.Serializer.class)
 public record MzQC(
         String contactAddress,
         String contactName,
@@ -34,6 +52,15 @@ public record MzQC(
         List<BaseQuality> setQualities,
         String version) {
 
+    private static final SerializableString CONTACT_ADDRESS = new SerializedString("contactAddress");
+    private static final SerializableString CONTACT_NAME = new SerializedString("contactName");
+    private static final SerializableString CONTROLLED_VOCABULARIES = new SerializedString("controlledVocabularies");
+    private static final SerializableString CREATION_DATE = new SerializedString("creationDate");
+    private static final SerializableString DESCRIPTION = new SerializedString("description");
+    private static final SerializableString RUN_QUALITIES = new SerializedString("runQualities");
+    private static final SerializableString SET_QUALITIES = new SerializedString("setQualities");
+    private static final SerializableString VERSION = new SerializedString("version");
+
     public MzQC        {
         if (controlledVocabularies == null) {
             controlledVocabularies = Collections.emptyList();
@@ -70,6 +97,7 @@ public record MzQC(
      * @param accession the cv accession for qc metrics to return
      * @return the underlying list of qc metrics, filtered for accession
      * @throws IllegalArgumentException if arguments are invalid
+     * @see AccessionIndex for repeated lookups across many runs
      */
     @JsonIgnore
     public List<QualityMetric> getRunQualityMetricsByAccession(int index, String accession) {
@@ -80,4 +108,88 @@ public record MzQC(
         }
         throw new IllegalArgumentException("Can not access run " + index);
     }
+
+    static class Deserializer extends JsonDeserializer<MzQC> implements ResolvableDeserializer {
+
+        private static final List<Object> PROPERTIES = List.of(
+                "contactAddress", "contactName", "controlledVocabularies", "creationDate", "description", "runQualities", "setQualities", "version");
+
+        private JsonDeserializer<Object> vocabularyDeserializer;
+        private JsonDeserializer<Object> dateDeserializer;
+        private JsonDeserializer<Object> qualityDeserializer;
+
+        @Override
+        public void resolve(DeserializationContext deserializationContext) throws JsonMappingException {
+            vocabularyDeserializer = JsonCodecs.find(deserializationContext, ControlledVocabulary.class);
+            dateDeserializer = JsonCodecs.find(deserializationContext, OffsetDateTime.class);
+            qualityDeserializer = JsonCodecs.find(deserializationContext, BaseQuality.class);
+        }
+
+        @Override
+        public Collection<Object> getKnownPropertyNames() {
+            return PROPERTIES;
+        }
+
+        @Override
+        public MzQC deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JsonProcessingException {
+            JsonToken token = JsonCodecs.firstProperty(jsonParser);
+            if (token == null) {
+                return (MzQC) deserializationContext.handleUnexpectedToken(MzQC.class, jsonParser);
+            }
+            String contactAddress = null;
+            String contactName = null;
+            List<ControlledVocabulary> controlledVocabularies = null;
+            OffsetDateTime creationDate = null;
+            String description = null;
+            List<BaseQuality> runQualities = null;
+            List<BaseQuality> setQualities = null;
+            String version = null;
+            for (; token == JsonToken.FIELD_NAME; token = jsonParser.nextToken()) {
+                String field = jsonParser.currentName();
+                jsonParser.nextToken();
+                try {
+                    switch (field) {
+                        case "contactAddress" ->
+                            contactAddress = JsonCodecs.readString(jsonParser, deserializationContext);
+                        case "contactName" ->
+                            contactName = JsonCodecs.readString(jsonParser, deserializationContext);
+                        case "controlledVocabularies" ->
+                            controlledVocabularies = JsonCodecs.readList(jsonParser, deserializationContext, vocabularyDeserializer);
+                        case "creationDate" ->
+                            creationDate = JsonCodecs.readValue(jsonParser, deserializationContext, dateDeserializer);
+                        case "description" ->
+                            description = JsonCodecs.readString(jsonParser, deserializationContext);
+                        case "runQualities" ->
+                            runQualities = JsonCodecs.readList(jsonParser, deserializationContext, qualityDeserializer);
+                        case "setQualities" ->
+                            setQualities = JsonCodecs.readList(jsonParser, deserializationContext, qualityDeserializer);
+                        case "version" ->
+                            version = JsonCodecs.readString(jsonParser, deserializationContext);
+                        default ->
+                            deserializationContext.handleUnknownProperty(jsonParser, this, MzQC.class, field);
+                    }
+                } catch (Exception ex) {
+                    throw JsonCodecs.wrap(ex, deserializationContext, MzQC.class, field);
+                }
+            }
+            return new MzQC(contactAddress, contactName, controlledVocabularies, creationDate, description, runQualities, setQualities, version);
+        }
+    }
+
+    static class Serializer extends JsonSerializer<MzQC> {
+
+        @Override
+        public void serialize(MzQC mzQC, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+            jsonGenerator.writeStartObject(mzQC);
+            JsonCodecs.writeString(jsonGenerator, CONTACT_ADDRESS, mzQC.contactAddress);
+            JsonCodecs.writeString(jsonGenerator, CONTACT_NAME, mzQC.contactName);
+            JsonCodecs.writeList(jsonGenerator, serializerProvider, CONTROLLED_VOCABULARIES, mzQC.controlledVocabularies, ControlledVocabulary.class);
+            JsonCodecs.writeValue(jsonGenerator, serializerProvider, CREATION_DATE, mzQC.creationDate);
+            JsonCodecs.writeString(jsonGenerator, DESCRIPTION, mzQC.description);
+            JsonCodecs.writeList(jsonGenerator, serializerProvider, RUN_QUALITIES, mzQC.runQualities, BaseQuality.class);
+            JsonCodecs.writeList(jsonGenerator, serializerProvider, SET_QUALITIES, mzQC.setQualities, BaseQuality.class);
+            JsonCodecs.writeString(jsonGenerator, VERSION, mzQC.version);
+            jsonGenerator.writeEndObject();
+        }
+    }
 }
@@ -0,0 +1,478 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.core.util.BufferRecycler;
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
+import com.fasterxml.jackson.core.util.RecyclerPool;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.networknt.schema.ValidationMessage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads and writes mzQC documents in JSON and Smile. A codec is configured
+ * once through its {@link Builder} and is immutable afterwards: its object
+ * mappers, readers and writers are created eagerly in the constructor, so a
+ * codec can be shared between any number of threads without synchronization.
+ *
+ * The {@link Converter} delegates to the {@link #getDefault() default codec},
+ * which writes indented JSON, parses leniently and only registers the
+ * {@link JavaTimeModule}. Modules are never discovered from the classpath.
+ *
+ * <pre>
+ * MzQCCodec codec = MzQCCodec.builder()
+ *         .pretty(false)
+ *         .lenient(false)
+ *         .recyclerPool(JsonRecyclerPools.newBoundedPool(64))
+ *         .build();
+ * MzQC mzQC = codec.readValue(request.getInputStream());
+ * </pre>
+ */
+public final class MzQCCodec {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static class DefaultHolder {
+
+        static final MzQCCodec INSTANCE = builder().build();
+    }
+
+    /**
+     * Builder for {@link MzQCCodec} instances. A builder is not thread-safe,
+     * but the codecs it builds are.
+     */
+    public static final class Builder {
+
+        private boolean pretty = true;
+        private boolean lenient = true;
+        private final List<Module> modules = new ArrayList<>(List.of(new JavaTimeModule()));
+        private RecyclerPool<BufferRecycler> recyclerPool = JsonRecyclerPools.defaultPool();
+        private MzQCValidator validator;
+        private SemanticValidator semanticValidator;
+
+        private Builder() {
+        }
+
+        /**
+         * Write indented JSON, or compact JSON without whitespace. Defaults
+         * to true.
+         *
+         * @param pretty if true, indent the JSON output.
+         * @return this builder.
+         */
+        public Builder pretty(boolean pretty) {
+            this.pretty = pretty;
+            return this;
+        }
+
+        /**
+         * Accept comments and trailing commas in JSON input. A strict codec
+         * rejects them, as well as duplicate properties and content after
+         * the document. Defaults to true.
+         *
+         * @param lenient if true, parse leniently.
+         * @return this builder.
+         */
+        public Builder lenient(boolean lenient) {
+            this.lenient = lenient;
+            return this;
+        }
+
+        /**
+         * Replace the Jackson modules to register. Defaults to the
+         * {@link JavaTimeModule}. The serializers of the mzQC model are
+         * registered after these modules and take precedence over them.
+         *
+         * @param modules the modules.
+         * @return this builder.
+         */
+        public Builder modules(Module... modules) {
+            this.modules.clear();
+            return addModules(modules);
+        }
+
+        /**
+         * Register additional Jackson modules.
+         *
+         * @param modules the modules.
+         * @return this builder.
+         */
+        public Builder addModules(Module... modules) {
+            for (Module module : modules) {
+                if (module == null) {
+                    throw new IllegalArgumentException("Module must not be null!");
+                }
+                this.modules.add(module);
+            }
+            return this;
+        }
+
+        /**
+         * The pool that the parsers and generators of the codec take their
+         * buffers from. Defaults to Jackson's default pool, which keeps one
+         * set of buffers per thread. Services that run on many or virtual
+         * threads can share a bounded pool instead, e.g.
+         * {@link JsonRecyclerPools#newBoundedPool(int)}.
+         *
+         * @param recyclerPool the buffer recycler pool.
+         * @return this builder.
+         */
+        public Builder recyclerPool(RecyclerPool<BufferRecycler> recyclerPool) {
+            if (recyclerPool == null) {
+                throw new IllegalArgumentException("Recycler pool must not be null!");
+            }
+            this.recyclerPool = recyclerPool;
+            return this;
+        }
+
+        /**
+         * The validator that {@link MzQCCodec#read(InputStream, ReadOptions)}
+         * checks documents against the JSON schema with. Defaults to the
+         * {@link MzQCValidator#getDefault() default validator}.
+         *
+         * @param validator the schema validator.
+         * @return this builder.
+         */
+        public Builder validator(MzQCValidator validator) {
+            if (validator == null) {
+                throw new IllegalArgumentException("Validator must not be null!");
+            }
+            this.validator = validator;
+            return this;
+        }
+
+        /**
+         * The validator that {@link MzQCCodec#read(InputStream, ReadOptions)}
+         * checks the semantics of documents with. Defaults to the
+         * {@link SemanticValidator#getDefault() default semantic validator}.
+         *
+         * @param semanticValidator the semantic validator.
+         * @return this builder.
+         */
+        public Builder semanticValidator(SemanticValidator semanticValidator) {
+            if (semanticValidator == null) {
+                throw new IllegalArgumentException("Semantic validator must not be null!");
+            }
+            this.semanticValidator = semanticValidator;
+            return this;
+        }
+
+        public MzQCCodec build() {
+            return new MzQCCodec(this);
+        }
+    }
+
+    private final boolean pretty;
+    private final boolean lenient;
+    private final ObjectMapper mapper;
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+    private final ObjectMapper smileMapper;
+    private final ObjectWriter smileWriter;
+    private final MzQCValidator validator;
+    private final SemanticValidator semanticValidator;
+
+    private MzQCCodec(Builder builder) {
+        this.pretty = builder.pretty;
+        this.lenient = builder.lenient;
+        // null selects the default validators, which are only created when needed
+        this.validator = builder.validator;
+        this.semanticValidator = builder.semanticValidator;
+        List<Module> modules = List.copyOf(builder.modules);
+        JsonFactoryBuilder jfb = new JsonFactoryBuilder()
+                .recyclerPool(builder.recyclerPool)
+                .configure(JsonReadFeature.ALLOW_JAVA_COMMENTS, lenient)
+                .configure(JsonReadFeature.ALLOW_TRAILING_COMMA, lenient)
+                .configure(StreamReadFeature.STRICT_DUPLICATE_DETECTION, !lenient);
+        this.mapper = configure(new ObjectMapper(jfb.build()), modules);
+        this.reader = mapper.readerFor(Coordinate.class);
+        this.writer = mapper.writerFor(Coordinate.class);
+        SmileFactory smileFactory = SmileFactory.builder()
+                .recyclerPool(builder.recyclerPool)
+                .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                .configure(StreamReadFeature.STRICT_DUPLICATE_DETECTION, !lenient)
+                .build();
+        this.smileMapper = configure(new ObjectMapper(smileFactory), modules);
+        this.smileWriter = smileMapper.writerFor(Coordinate.class);
+    }
+
+    private ObjectMapper configure(ObjectMapper mapper, List<Module> modules) {
+        mapper.registerModules(modules);
+        mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        mapper.configure(SerializationFeature.INDENT_OUTPUT, pretty);
+        mapper.configure(DeserializationFeature.FAIL_ON_TRAILING_TOKENS, !lenient);
+        mapper.setSerializationInclusion(Include.NON_EMPTY);
+        SimpleModule module = new SimpleModule();
+        module.addDeserializer(OffsetDateTime.class, new Converter.DateTimeDeserializer());
+        module.addSerializer(OffsetDateTime.class, new Converter.DateTimeSerializer());
+        mapper.registerModule(module);
+        return Interner.shared().registerWith(mapper);
+    }
+
+    /**
+     * Returns the codec used by the {@link Converter}. It is created on the
+     * first call.
+     *
+     * @return the default codec.
+     */
+    public static MzQCCodec getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Returns a new builder with the settings of the default codec.
+     *
+     * @return the builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public boolean isPretty() {
+        return pretty;
+    }
+
+    public boolean isLenient() {
+        return lenient;
+    }
+
+    /**
+     * Read an mzQC document from a JSON or Smile encoded stream, which may
+     * be gzip compressed. The format is detected from the first bytes. The
+     * stream is closed afterwards.
+     *
+     * @param in the stream to read from.
+     * @return the MzQC object.
+     * @throws IOException if the stream can not be read or the data is
+     * malformed.
+     */
+    public MzQC readValue(InputStream in) throws IOException {
+        try ( JsonParser parser = createParser(in)) {
+            return ((Coordinate) reader.readValue(parser)).mzQC();
+        }
+    }
+
+    /**
+     * Read an mzQC document from a JSON or Smile encoded file.
+     *
+     * @param path the path of the file.
+     * @return the MzQC object.
+     * @throws IOException if the file can not be read or the data is
+     * malformed.
+     */
+    public MzQC readValue(Path path) throws IOException {
+        try ( InputStream in = Files.newInputStream(path)) {
+            return readValue(in);
+        }
+    }
+
+    /**
+     * Read an mzQC document from JSON or Smile encoded bytes.
+     *
+     * @param data the mzQC data.
+     * @return the MzQC object.
+     * @throws IOException if the data is malformed.
+     */
+    public MzQC readValue(byte[] data) throws IOException {
+        return readValue(new ByteArrayInputStream(data));
+    }
+
+    /**
+     * Read an mzQC document from a JSON string.
+     *
+     * @param json the mzQC data in JSON format.
+     * @return the MzQC object.
+     * @throws IOException if the JSON is malformed.
+     */
+    public MzQC readValue(String json) throws IOException {
+        return ((Coordinate) reader.readValue(json)).mzQC();
+    }
+
+    /**
+     * Read, validate and bind an mzQC document in a single pass, as
+     * described for {@link Converter#read(Path, ReadOptions)}, with the
+     * validators configured in the {@link Builder}. The stream is closed
+     * afterwards.
+     *
+     * @param in the stream to read from.
+     * @param options the read options.
+     * @return the {@link ReadResult} holding the MzQC object and the
+     * validation messages.
+     * @throws IOException if the stream can not be read or the data is
+     * malformed.
+     */
+    public ReadResult read(InputStream in, ReadOptions options) throws IOException {
+        JsonNode tree = readTree(in);
+        Set<ValidationMessage> messages = Collections.emptySet();
+        if (options.validate()) {
+            messages = (validator == null ? MzQCValidator.getDefault() : validator).validate(tree);
+        }
+        if (!messages.isEmpty() && !options.bindInvalid()) {
+            return new ReadResult(null, messages);
+        }
+        try {
+            MzQC mzQC = mapper.treeToValue(tree, Coordinate.class).mzQC();
+            if (options.validateSemantics()) {
+                Set<ValidationMessage> semanticMessages = (semanticValidator == null ? SemanticValidator.getDefault() : semanticValidator).validate(mzQC);
+                if (!semanticMessages.isEmpty()) {
+                    messages = new LinkedHashSet<>(messages);
+                    messages.addAll(semanticMessages);
+                }
+            }
+            return new ReadResult(mzQC, messages);
+        } catch (JsonProcessingException ex) {
+            if (messages.isEmpty()) {
+                throw ex;
+            }
+            // binding failures are expected for documents that are invalid
+            return new ReadResult(null, messages);
+        }
+    }
+
+    /**
+     * Serialize the MzQC object to a JSON string.
+     *
+     * @param mzQC the MzQC object.
+     * @return the JSON representation.
+     * @throws JsonProcessingException if the object can not be serialized.
+     */
+    public String writeValueAsString(MzQC mzQC) throws JsonProcessingException {
+        return writer.writeValueAsString(new Coordinate(mzQC));
+    }
+
+    /**
+     * Serialize the MzQC object to bytes in the binary Smile format.
+     *
+     * @param mzQC the MzQC object.
+     * @return the Smile encoded mzQC data.
+     * @throws JsonProcessingException if the object can not be serialized.
+     */
+    public byte[] writeValueAsSmile(MzQC mzQC) throws JsonProcessingException {
+        return smileWriter.writeValueAsBytes(new Coordinate(mzQC));
+    }
+
+    /**
+     * Serialize the MzQC object as JSON or Smile to the given stream. The
+     * stream is closed afterwards.
+     *
+     * @param out the stream to write to.
+     * @param mzQC the MzQC object.
+     * @param format the format to write.
+     * @throws IOException if the stream can not be written.
+     */
+    public void writeValue(OutputStream out, MzQC mzQC, MzQCFormat format) throws IOException {
+        switch (format) {
+            case SMILE ->
+                smileWriter.writeValue(out, new Coordinate(mzQC));
+            case JSON ->
+                writer.writeValue(out, new Coordinate(mzQC));
+        }
+    }
+
+    /**
+     * Serialize the MzQC object to a file, in the format chosen by
+     * {@link MzQCFormat#forFileName(String)} from the file name. Files ending
+     * in {@code .gz} are gzip compressed.
+     *
+     * @param path the file to write to.
+     * @param mzQC the MzQC object.
+     * @throws IOException if the file can not be written.
+     */
+    public void writeValue(Path path, MzQC mzQC) throws IOException {
+        try ( OutputStream out = Converter.openOutputStream(path)) {
+            writeValue(out, mzQC, MzQCFormat.forFileName(path.getFileName().toString()));
+        }
+    }
+
+    /**
+     * Creates a parser for the given JSON or Smile encoded stream, detecting
+     * the format from the first bytes. The parser is bound to the matching
+     * object mapper and closes the stream when it is closed.
+     */
+    JsonParser createParser(InputStream in) throws IOException {
+        BufferedInputStream bis = in instanceof BufferedInputStream b ? b : new BufferedInputStream(in, BUFFER_SIZE);
+        byte[] prefix = new byte[MzQCFormat.SMILE_HEADER.length];
+        int length = peek(bis, prefix);
+        if (MzQCFormat.isGzip(prefix, length)) {
+            // decompress while parsing, the uncompressed data is never held in memory
+            bis = new BufferedInputStream(new GZIPInputStream(bis, BUFFER_SIZE), BUFFER_SIZE);
+            length = peek(bis, prefix);
+        }
+        return switch (MzQCFormat.detect(prefix, length)) {
+            case SMILE ->
+                smileMapper.getFactory().createParser(bis);
+            case JSON ->
+                mapper.getFactory().createParser(bis);
+        };
+    }
+
+    private static int peek(BufferedInputStream bis, byte[] prefix) throws IOException {
+        bis.mark(prefix.length);
+        int length = bis.readNBytes(prefix, 0, prefix.length);
+        bis.reset();
+        return length;
+    }
+
+    /**
+     * Reads the JSON or Smile encoded stream into a JSON tree.
+     */
+    JsonNode readTree(InputStream in) throws IOException {
+        try ( JsonParser parser = createParser(in)) {
+            JsonNode tree = mapper.readTree(parser);
+            if (tree == null) {
+                throw new IOException("No content found in mzQC data!");
+            }
+            return tree;
+        }
+    }
+
+    ObjectMapper getObjectMapper() {
+        return mapper;
+    }
+
+    ObjectMapper getSmileMapper() {
+        return smileMapper;
+    }
+}
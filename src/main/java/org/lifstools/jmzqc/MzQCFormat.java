@@ -0,0 +1,149 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.util.Locale;
+
+/**
+ * Encodings of mzQC documents supported by the {@link Converter}. Both
+ * formats bind to the same {@link Coordinate} and {@link MzQC} records and
+ * can be converted into each other without loss.
+ *
+ * When reading, the format is detected from the first bytes of the data. When
+ * writing to a file, it is chosen from the file name extension. Both formats
+ * may additionally be gzip compressed, which is likewise detected from the
+ * first bytes when reading, and selected by the {@code .gz} extension when
+ * writing.
+ */
+public enum MzQCFormat {
+    /**
+     * Indented JSON text, as defined by the mzQC specification.
+     */
+    JSON(".mzQC"),
+    /**
+     * Binary <a href="https://github.com/FasterXML/smile-format-specification">Smile</a>
+     * encoding of the JSON data model. Smile keeps numbers in binary form
+     * and references repeated property names and short string values, which
+     * makes it smaller and faster to parse than JSON text.
+     */
+    SMILE(".mzQC.smile");
+
+    /**
+     * The first three bytes of every Smile document, {@code ":)\n"}.
+     */
+    static final byte[] SMILE_HEADER = {':', ')', '\n'};
+
+    /**
+     * The first two bytes of every gzip stream.
+     */
+    static final byte[] GZIP_HEADER = {(byte) 0x1f, (byte) 0x8b};
+
+    /**
+     * File name extension of gzip compressed files.
+     */
+    public static final String GZIP_EXTENSION = ".gz";
+
+    private final String extension;
+
+    MzQCFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Returns the preferred file name extension of this format.
+     *
+     * @return the file name extension, including the leading dot.
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Detect the format from the first bytes of a document.
+     *
+     * @param prefix the first bytes of the document, may be shorter than the
+     * header of a format.
+     * @param length the number of valid bytes in prefix.
+     * @return the detected format, {@link #JSON} if no binary header was
+     * found.
+     */
+    public static MzQCFormat detect(byte[] prefix, int length) {
+        if (length >= SMILE_HEADER.length
+                && prefix[0] == SMILE_HEADER[0]
+                && prefix[1] == SMILE_HEADER[1]
+                && prefix[2] == SMILE_HEADER[2]) {
+            return SMILE;
+        }
+        return JSON;
+    }
+
+    /**
+     * Check whether the first bytes of a stream are a gzip header.
+     *
+     * @param prefix the first bytes of the stream.
+     * @param length the number of valid bytes in prefix.
+     * @return true if the stream is gzip compressed.
+     */
+    public static boolean isGzip(byte[] prefix, int length) {
+        return length >= GZIP_HEADER.length
+                && prefix[0] == GZIP_HEADER[0]
+                && prefix[1] == GZIP_HEADER[1];
+    }
+
+    /**
+     * Check whether a file name has the gzip extension {@code .gz} (ignoring
+     * case).
+     *
+     * @param fileName the file name.
+     * @return true if files with that name should be gzip compressed.
+     */
+    public static boolean isGzipFileName(String fileName) {
+        return fileName.toLowerCase(Locale.ROOT).endsWith(GZIP_EXTENSION);
+    }
+
+    /**
+     * Check whether a file name looks like an mzQC file in any of the
+     * supported formats, e.g. {@code run.mzQC}, {@code run.mzQC.gz} or
+     * {@code run.mzQC.smile}.
+     *
+     * @param fileName the file name.
+     * @return true for mzQC file names.
+     */
+    public static boolean isMzQCFileName(String fileName) {
+        String name = stripGzip(fileName.toLowerCase(Locale.ROOT));
+        return name.endsWith(".mzqc") || name.endsWith(".mzqc.smile") || name.endsWith(".mzqc.sml");
+    }
+
+    /**
+     * Choose the format from a file name extension. Names ending in
+     * {@code .smile} or {@code .sml} (ignoring case), optionally followed by
+     * {@code .gz}, select {@link #SMILE}, all other names {@link #JSON}.
+     *
+     * @param fileName the file name.
+     * @return the format for the file name.
+     */
+    public static MzQCFormat forFileName(String fileName) {
+        String name = stripGzip(fileName.toLowerCase(Locale.ROOT));
+        if (name.endsWith(".smile") || name.endsWith(".sml")) {
+            return SMILE;
+        }
+        return JSON;
+    }
+
+    private static String stripGzip(String name) {
+        return name.endsWith(GZIP_EXTENSION) ? name.substring(0, name.length() - GZIP_EXTENSION.length()) : name;
+    }
+}
@@ -0,0 +1,538 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Byte offset index of the run and set qualities of an uncompressed mzQC JSON
+ * file. For every quality, the index records the byte offset and length of
+ * its JSON object and its metadata label. The index also holds the header of
+ * the document, so that an {@link IndexedMzQCReader} can open a file without
+ * parsing it.
+ *
+ * The index is stored in a small JSON sidecar file next to the mzQC file,
+ * named like the file with the suffix {@value #SIDECAR_SUFFIX}. It records
+ * the size and last modification time of the indexed file and is rebuilt by
+ * {@link #of(Path)} when either changes.
+ *
+ * Gzip compressed and Smile files are not supported, since their qualities
+ * can not be decoded independently of the data before them.
+ */
+public final class MzQCIndex {
+
+    /**
+     * File name suffix of index sidecar files.
+     */
+    public static final String SIDECAR_SUFFIX = ".idx";
+
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * Offsets, lengths and labels of the qualities in one array of the
+     * document.
+     */
+    static final class Entries {
+
+        private long[] offsets;
+        private int[] lengths;
+        private String[] labels;
+        private int size;
+
+        Entries() {
+            offsets = new long[16];
+            lengths = new int[16];
+            labels = new String[16];
+        }
+
+        void add(long offset, int length, String label) {
+            if (size == offsets.length) {
+                int capacity = size * 2;
+                offsets = Arrays.copyOf(offsets, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+                labels = Arrays.copyOf(labels, capacity);
+            }
+            offsets[size] = offset;
+            lengths[size] = length;
+            labels[size] = label;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long offset(int index) {
+            return offsets[checkIndex(index)];
+        }
+
+        int length(int index) {
+            return lengths[checkIndex(index)];
+        }
+
+        String label(int index) {
+            return labels[checkIndex(index)];
+        }
+
+        int indexOf(String label) {
+            for (int i = 0; i < size; i++) {
+                if (label.equals(labels[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private int checkIndex(int index) {
+            if (index < 0 || index >= size) {
+                throw new IllegalArgumentException("Can not access quality " + index + ", index contains " + size);
+            }
+            return index;
+        }
+    }
+
+    private final long size;
+    private final long lastModified;
+    private final MzQC header;
+    private final Entries runs;
+    private final Entries sets;
+
+    private MzQCIndex(long size, long lastModified, MzQC header, Entries runs, Entries sets) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.header = header;
+        this.runs = runs;
+        this.sets = sets;
+    }
+
+    /**
+     * Returns the index of the given file. A valid sidecar index is loaded,
+     * otherwise the index is built and written to the sidecar file. If the
+     * sidecar can not be written, e.g. in a read-only directory, the built
+     * index is returned nevertheless.
+     *
+     * @param file the mzQC file.
+     * @return the index.
+     * @throws IOException if the file can not be read or is not an
+     * uncompressed JSON file.
+     */
+    public static MzQCIndex of(Path file) throws IOException {
+        return of(file, MzQCCodec.getDefault());
+    }
+
+    /**
+     * Returns the index of the given file, as {@link #of(Path)} does, reading
+     * and writing the header with the given codec.
+     *
+     * @param file the mzQC file.
+     * @param codec the codec to read and write the header with.
+     * @return the index.
+     * @throws IOException if the file can not be read or is not an
+     * uncompressed JSON file.
+     */
+    public static MzQCIndex of(Path file, MzQCCodec codec) throws IOException {
+        Optional<MzQCIndex> index = load(file, codec);
+        if (index.isPresent()) {
+            return index.get();
+        }
+        MzQCIndex built = build(file, codec);
+        try {
+            built.write(sidecarPath(file), codec);
+        } catch (IOException ex) {
+            // the sidecar only saves the next build
+        }
+        return built;
+    }
+
+    /**
+     * Returns the path of the sidecar index of the given file.
+     *
+     * @param file the mzQC file.
+     * @return the path of the sidecar file.
+     */
+    public static Path sidecarPath(Path file) {
+        return file.resolveSibling(file.getFileName().toString() + SIDECAR_SUFFIX);
+    }
+
+    /**
+     * Load the sidecar index of the given file, if it exists and is valid for
+     * the current state of the file. A sidecar that can not be parsed, e.g.
+     * because it was only partially written, is treated as stale.
+     *
+     * @param file the mzQC file.
+     * @return the index, or an empty optional if there is no valid index.
+     * @throws IOException if the file or its sidecar can not be read.
+     */
+    public static Optional<MzQCIndex> load(Path file) throws IOException {
+        return load(file, MzQCCodec.getDefault());
+    }
+
+    /**
+     * Load the sidecar index of the given file, as {@link #load(Path)} does,
+     * reading the header with the given codec.
+     *
+     * @param file the mzQC file.
+     * @param codec the codec to read the header with.
+     * @return the index, or an empty optional if there is no valid index.
+     * @throws IOException if the file or its sidecar can not be read.
+     */
+    public static Optional<MzQCIndex> load(Path file, MzQCCodec codec) throws IOException {
+        Path sidecar = sidecarPath(file);
+        if (!Files.isRegularFile(sidecar)) {
+            return Optional.empty();
+        }
+        ObjectMapper mapper = codec.getObjectMapper();
+        int version = -1;
+        long size = -1;
+        long lastModified = -1;
+        MzQC header = null;
+        Entries runs = new Entries();
+        Entries sets = new Entries();
+        try ( JsonParser parser = mapper.getFactory().createParser(sidecar.toFile())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return Optional.empty();
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                switch (name) {
+                    case "version" ->
+                        version = parser.getValueAsInt(-1);
+                    case "size" ->
+                        size = parser.getValueAsLong(-1);
+                    case "lastModified" ->
+                        lastModified = parser.getValueAsLong(-1);
+                    case "header" ->
+                        header = mapper.readValue(parser, MzQC.class);
+                    case MzQCReader.RUN_QUALITIES ->
+                        readEntries(parser, runs);
+                    case MzQCReader.SET_QUALITIES ->
+                        readEntries(parser, sets);
+                    default ->
+                        parser.skipChildren();
+                }
+            }
+            if (parser.currentToken() != JsonToken.END_OBJECT) {
+                return Optional.empty();
+            }
+        } catch (JsonProcessingException ex) {
+            return Optional.empty();
+        }
+        if (version != FORMAT_VERSION || header == null) {
+            return Optional.empty();
+        }
+        MzQCIndex index = new MzQCIndex(size, lastModified, header, runs, sets);
+        return index.isValidFor(file) ? Optional.of(index) : Optional.empty();
+    }
+
+    private static void readEntries(JsonParser parser, Entries entries) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Expected index entries");
+        }
+        while (parser.nextToken() == JsonToken.START_ARRAY) {
+            parser.nextToken();
+            long offset = parser.getValueAsLong();
+            parser.nextToken();
+            int length = parser.getValueAsInt();
+            parser.nextToken();
+            String label = parser.currentToken() == JsonToken.VALUE_STRING ? parser.getText() : null;
+            if (parser.nextToken() != JsonToken.END_ARRAY) {
+                throw new JsonParseException(parser, "Invalid index entry");
+            }
+            entries.add(offset, length, label);
+        }
+    }
+
+    /**
+     * Build the index of the given file in one streaming pass.
+     *
+     * @param file the mzQC file.
+     * @return the index.
+     * @throws IOException if the file can not be read or is not an
+     * uncompressed JSON file.
+     */
+    public static MzQCIndex build(Path file) throws IOException {
+        return build(file, MzQCCodec.getDefault());
+    }
+
+    /**
+     * Build the index of the given file in one streaming pass, reading the
+     * header with the given codec.
+     *
+     * @param file the mzQC file.
+     * @param codec the codec to read the header with.
+     * @return the index.
+     * @throws IOException if the file can not be read or is not an
+     * uncompressed JSON file.
+     */
+    public static MzQCIndex build(Path file, MzQCCodec codec) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        ObjectMapper mapper = codec.getObjectMapper();
+        Entries runs = new Entries();
+        Entries sets = new Entries();
+        try ( InputStream in = new BufferedInputStream(Files.newInputStream(file));  JsonParser parser = createJsonParser(in, file, mapper)) {
+            MzQCReader.enterMzQC(parser);
+            ObjectNode node = mapper.createObjectNode();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.START_ARRAY && MzQCReader.RUN_QUALITIES.equals(name)) {
+                    index(parser, runs);
+                } else if (token == JsonToken.START_ARRAY && MzQCReader.SET_QUALITIES.equals(name)) {
+                    index(parser, sets);
+                } else if (!MzQCReader.RUN_QUALITIES.equals(name) && !MzQCReader.SET_QUALITIES.equals(name)) {
+                    node.set(name, mapper.readTree(parser));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return new MzQCIndex(attributes.size(), attributes.lastModifiedTime().toMillis(), mapper.treeToValue(node, MzQC.class), runs, sets);
+        }
+    }
+
+    private static JsonParser createJsonParser(InputStream in, Path file, ObjectMapper mapper) throws IOException {
+        in.mark(MzQCFormat.SMILE_HEADER.length);
+        byte[] prefix = new byte[MzQCFormat.SMILE_HEADER.length];
+        int length = in.readNBytes(prefix, 0, prefix.length);
+        in.reset();
+        if (MzQCFormat.isGzip(prefix, length) || MzQCFormat.detect(prefix, length) != MzQCFormat.JSON) {
+            throw new IOException("Only uncompressed JSON files can be indexed: " + file);
+        }
+        return mapper.getFactory().createParser(in);
+    }
+
+    private static void index(JsonParser parser, Entries entries) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token != JsonToken.START_OBJECT) {
+                throw new IOException("Expected quality object at " + parser.currentTokenLocation());
+            }
+            long start = parser.currentTokenLocation().getByteOffset();
+            String label = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                if (parser.nextToken() == JsonToken.START_OBJECT && MzQCReader.METADATA.equals(name)) {
+                    label = readLabel(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            long end = parser.currentLocation().getByteOffset();
+            long length = end - start;
+            if (start < 0 || length > Integer.MAX_VALUE) {
+                throw new IOException("Can not index quality at " + parser.currentTokenLocation());
+            }
+            entries.add(start, (int) length, label);
+        }
+    }
+
+    /**
+     * Read the label of a metadata object, skipping all other fields. The
+     * parser must be positioned at the start of the object and is left at its
+     * end.
+     *
+     * @param parser the parser.
+     * @return the label, or null if the metadata has none.
+     * @throws IOException if the input can not be read.
+     */
+    static String readLabel(JsonParser parser) throws IOException {
+        String label = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            if (parser.nextToken() == JsonToken.VALUE_STRING && "label".equals(name)) {
+                label = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return label;
+    }
+
+    /**
+     * Write this index to the given sidecar file. The index is written to a
+     * temporary file in the same directory, which then replaces the sidecar
+     * file atomically, so that concurrent readers never see a partially
+     * written index.
+     *
+     * @param sidecar the path of the sidecar file.
+     * @throws IOException if the file can not be written.
+     */
+    public void write(Path sidecar) throws IOException {
+        write(sidecar, MzQCCodec.getDefault());
+    }
+
+    /**
+     * Write this index to the given sidecar file, as {@link #write(Path)}
+     * does, writing the header with the given codec.
+     *
+     * @param sidecar the path of the sidecar file.
+     * @param codec the codec to write the header with.
+     * @throws IOException if the file can not be written.
+     */
+    public void write(Path sidecar, MzQCCodec codec) throws IOException {
+        Path directory = sidecar.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, sidecar.getFileName().toString(), ".tmp");
+        try {
+            writeTo(temp, codec.getObjectMapper());
+            try {
+                Files.move(temp, sidecar, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, sidecar, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void writeTo(Path file, ObjectMapper mapper) throws IOException {
+        try ( OutputStream out = new BufferedOutputStream(Files.newOutputStream(file));  JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeNumberField("version", FORMAT_VERSION);
+            generator.writeNumberField("size", size);
+            generator.writeNumberField("lastModified", lastModified);
+            generator.writeFieldName("header");
+            mapper.writeValue(generator, header);
+            writeEntries(generator, MzQCReader.RUN_QUALITIES, runs);
+            writeEntries(generator, MzQCReader.SET_QUALITIES, sets);
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeEntries(JsonGenerator generator, String name, Entries entries) throws IOException {
+        generator.writeArrayFieldStart(name);
+        for (int i = 0; i < entries.size(); i++) {
+            generator.writeStartArray();
+            generator.writeNumber(entries.offset(i));
+            generator.writeNumber(entries.length(i));
+            generator.writeString(entries.label(i));
+            generator.writeEndArray();
+        }
+        generator.writeEndArray();
+    }
+
+    /**
+     * Check whether this index matches the current size and last
+     * modification time of the given file.
+     *
+     * @param file the mzQC file.
+     * @return true if the index is valid for the file.
+     * @throws IOException if the attributes of the file can not be read.
+     */
+    public boolean isValidFor(Path file) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return attributes.size() == size && attributes.lastModifiedTime().toMillis() == lastModified;
+        } catch (NoSuchFileException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the header of the indexed document, an {@link MzQC} object with
+     * empty run and set qualities.
+     *
+     * @return the header.
+     */
+    public MzQC getHeader() {
+        return header;
+    }
+
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    public int getSetCount() {
+        return sets.size();
+    }
+
+    /**
+     * Returns the byte offset of the JSON object of the given run quality.
+     *
+     * @param index the zero-based index of the run quality.
+     * @return the byte offset.
+     * @throws IllegalArgumentException if the index is invalid.
+     */
+    public long getRunOffset(int index) {
+        return runs.offset(index);
+    }
+
+    /**
+     * Returns the length in bytes of the JSON object of the given run quality.
+     *
+     * @param index the zero-based index of the run quality.
+     * @return the length in bytes.
+     * @throws IllegalArgumentException if the index is invalid.
+     */
+    public int getRunLength(int index) {
+        return runs.length(index);
+    }
+
+    /**
+     * Returns the metadata label of the given run quality.
+     *
+     * @param index the zero-based index of the run quality.
+     * @return the label, may be null.
+     * @throws IllegalArgumentException if the index is invalid.
+     */
+    public String getRunLabel(int index) {
+        return runs.label(index);
+    }
+
+    /**
+     * Returns the index of the first run quality with the given label.
+     *
+     * @param label the metadata label.
+     * @return the zero-based index, or -1 if no run has that label.
+     */
+    public int indexOfRunLabel(String label) {
+        return runs.indexOf(label);
+    }
+
+    public long getSetOffset(int index) {
+        return sets.offset(index);
+    }
+
+    public int getSetLength(int index) {
+        return sets.length(index);
+    }
+
+    public String getSetLabel(int index) {
+        return sets.label(index);
+    }
+
+    public int indexOfSetLabel(String label) {
+        return sets.indexOf(label);
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Merges the run and set qualities of many mzQC files into one document,
+ * streaming them from the inputs to an {@link MzQCWriter}. Only the headers of
+ * the inputs and at most one run quality per input are held in memory.
+ *
+ * The controlled vocabularies of all inputs are combined, removing
+ * duplicates. The contact, description and version of the merged document are
+ * taken from the first input, its creation date is the latest creation date
+ * of all inputs.
+ *
+ * Run qualities are written in the chosen {@link Order}. For orders other
+ * than {@link Order#INPUT}, the run qualities are merged with a k-way merge,
+ * which expects the runs within each input to be in that order already, as
+ * is always the case for single-run files. Set qualities are appended in input
+ * order after all run qualities.
+ *
+ * <pre>
+ * new MzQCMerger(inputs, MzQCMerger.Order.CREATION_DATE).merge(Path.of("merged.mzQC"));
+ * </pre>
+ */
+public final class MzQCMerger {
+
+    /**
+     * Cv accession of the completion time of an input file, used as the
+     * creation date of a run.
+     */
+    public static final String COMPLETION_TIME = "MS:1000747";
+
+    /**
+     * Order of the run qualities in the merged document.
+     */
+    public enum Order {
+        /**
+         * Runs of the first input, followed by those of the second input and
+         * so on.
+         */
+        INPUT,
+        /**
+         * Runs ordered by the completion time of their first input file,
+         * falling back to the creation date of the input document.
+         */
+        CREATION_DATE,
+        /**
+         * Runs ordered by their metadata label.
+         */
+        LABEL
+    }
+
+    private final List<Path> inputs;
+    private final Order order;
+
+    /**
+     * Create a new merger for the given inputs that keeps the input order.
+     *
+     * @param inputs the mzQC files to merge.
+     */
+    public MzQCMerger(List<Path> inputs) {
+        this(inputs, Order.INPUT);
+    }
+
+    /**
+     * Create a new merger for the given inputs and run order.
+     *
+     * @param inputs the mzQC files to merge.
+     * @param order the order of the run qualities.
+     * @throws IllegalArgumentException if no inputs are given.
+     */
+    public MzQCMerger(List<Path> inputs, Order order) {
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("At least one input is required for merging!");
+        }
+        this.inputs = List.copyOf(inputs);
+        this.order = order;
+    }
+
+    /**
+     * Merge the inputs into the given file. The merged document is written to
+     * a temporary file next to the output, which replaces the output once all
+     * inputs have been read, so the output may also be one of the inputs.
+     *
+     * @param output the file to write to, in the format chosen by
+     * {@link MzQCFormat#forFileName(String)} and gzip compressed if its name
+     * ends in {@code .gz}.
+     * @return the number of run qualities written.
+     * @throws IOException if an input can not be read or the output can not
+     * be written.
+     */
+    public int merge(Path output) throws IOException {
+        Path target = output.toAbsolutePath();
+        // keep the file name as suffix, it selects the compression
+        Path temp = Files.createTempFile(target.getParent(), ".merge-", "-" + target.getFileName());
+        try {
+            int runs = merge(Converter.openOutputStream(temp), MzQCFormat.forFileName(target.getFileName().toString()));
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return runs;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Merge the inputs into the given output stream as JSON. The stream is
+     * closed when merging has finished.
+     *
+     * @param out the output stream.
+     * @return the number of run qualities written.
+     * @throws IOException if an input can not be read or the output can not
+     * be written.
+     */
+    public int merge(OutputStream out) throws IOException {
+        return merge(out, MzQCFormat.JSON);
+    }
+
+    private int merge(OutputStream out, MzQCFormat format) throws IOException {
+        List<MzQCReader> readers = new ArrayList<>(inputs.size());
+        try (out) {
+            for (Path input : inputs) {
+                readers.add(new MzQCReader(input));
+            }
+            int runs;
+            try (MzQCWriter writer = new MzQCWriter(out, mergeHeaders(readers), MzQCCodec.getDefault(), format)) {
+                runs = order == Order.INPUT ? concatenateRuns(readers, writer) : mergeRuns(readers, writer);
+                for (MzQCReader reader : readers) {
+                    Iterator<BaseQuality> sets = reader.setQualitiesIterator();
+                    while (sets.hasNext()) {
+                        writer.writeSetQuality(sets.next());
+                    }
+                }
+            }
+            return runs;
+        } finally {
+            IOException first = null;
+            for (MzQCReader reader : readers) {
+                try {
+                    reader.close();
+                } catch (IOException ex) {
+                    if (first == null) {
+                        first = ex;
+                    }
+                }
+            }
+            if (first != null) {
+                throw first;
+            }
+        }
+    }
+
+    private static MzQC mergeHeaders(List<MzQCReader> readers) {
+        MzQC first = readers.get(0).getHeader();
+        Set<ControlledVocabulary> controlledVocabularies = new LinkedHashSet<>();
+        OffsetDateTime creationDate = null;
+        for (MzQCReader reader : readers) {
+            MzQC header = reader.getHeader();
+            controlledVocabularies.addAll(header.controlledVocabularies());
+            if (creationDate == null || (header.creationDate() != null && header.creationDate().isAfter(creationDate))) {
+                creationDate = header.creationDate();
+            }
+        }
+        return new MzQC(
+                first.contactAddress(),
+                first.contactName(),
+                new ArrayList<>(controlledVocabularies),
+                creationDate,
+                first.description(),
+                Collections.emptyList(),
+                Collections.emptyList(),
+                first.version());
+    }
+
+    private static int concatenateRuns(List<MzQCReader> readers, MzQCWriter writer) throws IOException {
+        int runs = 0;
+        for (MzQCReader reader : readers) {
+            Iterator<BaseQuality> iterator = reader.runQualitiesIterator();
+            while (iterator.hasNext()) {
+                writer.writeRunQuality(iterator.next());
+                runs++;
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * Head of one input in the k-way merge, with the sort keys of its run.
+     */
+    private record Head(int input, BaseQuality run, String label, Instant creationDate, Iterator<BaseQuality> rest) {
+
+    }
+
+    private int mergeRuns(List<MzQCReader> readers, MzQCWriter writer) throws IOException {
+        Comparator<Head> comparator = order == Order.LABEL
+                ? Comparator.comparing(Head::label, Comparator.nullsLast(Comparator.naturalOrder()))
+                : Comparator.comparing(Head::creationDate, Comparator.nullsLast(Comparator.naturalOrder()));
+        PriorityQueue<Head> queue = new PriorityQueue<>(readers.size(), comparator.thenComparingInt(Head::input));
+        for (int i = 0; i < readers.size(); i++) {
+            Iterator<BaseQuality> iterator = readers.get(i).runQualitiesIterator();
+            if (iterator.hasNext()) {
+                queue.add(head(i, readers.get(i).getHeader(), iterator));
+            }
+        }
+        int runs = 0;
+        while (!queue.isEmpty()) {
+            Head head = queue.poll();
+            writer.writeRunQuality(head.run());
+            runs++;
+            if (head.rest().hasNext()) {
+                queue.add(head(head.input(), readers.get(head.input()).getHeader(), head.rest()));
+            }
+        }
+        return runs;
+    }
+
+    private static Head head(int input, MzQC header, Iterator<BaseQuality> iterator) {
+        BaseQuality run = iterator.next();
+        String label = run.metadata() == null ? null : run.metadata().label();
+        OffsetDateTime creationDate = completionTime(run);
+        if (creationDate == null) {
+            creationDate = header.creationDate();
+        }
+        return new Head(input, run, label, creationDate == null ? null : creationDate.toInstant(), iterator);
+    }
+
+    /**
+     * Returns the completion time ({@value #COMPLETION_TIME}) of the first
+     * input file of the given run.
+     *
+     * @param run the run quality.
+     * @return the completion time, or null if it is absent or invalid.
+     */
+    static OffsetDateTime completionTime(BaseQuality run) {
+        return completionTime(run.metadata());
+    }
+
+    /**
+     * Returns the completion time ({@value #COMPLETION_TIME}) of the first
+     * input file of the given metadata.
+     *
+     * @param metadata the metadata of a run quality, may be null.
+     * @return the completion time, or null if it is absent or invalid.
+     */
+    static OffsetDateTime completionTime(Metadata metadata) {
+        if (metadata == null || metadata.inputFiles().isEmpty()) {
+            return null;
+        }
+        for (CvParameter property : metadata.inputFiles().get(0).fileProperties()) {
+            if (COMPLETION_TIME.equals(property.accession()) && property.value() != null) {
+                try {
+                    return Converter.parseDateTimeString(property.value().toString());
+                } catch (DateTimeException ex) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,650 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserSequence;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streaming reader for mzQC files. The header of the document (everything
+ * except the run and set qualities) is read eagerly, while the run and set
+ * qualities are returned one {@link BaseQuality} at a time. Memory usage is
+ * thus bounded by the largest single run or set, not by the size of the file.
+ *
+ * Since the mzQC format does not mandate the order of the properties, the
+ * header is collected in a first pass that skips over the quality arrays
+ * without binding them. Each call to {@link #runQualities()} or
+ * {@link #setQualities()} then opens a new parser on the file. Files are
+ * parsed and bound with the {@link MzQCCodec#getDefault() default codec},
+ * unless another {@link MzQCCodec} is given.
+ *
+ * A {@link Projection} restricts the reader to selected runs and metrics.
+ * Unselected run qualities, metrics and, optionally, table and matrix values
+ * are skipped at the token level and never bound, so the cost of reading
+ * scales with the selected data rather than with the size of the file. A
+ * {@link RunQuery} additionally filters the run qualities by their metadata and
+ * metric values, skipping the rest of a run as soon as its metadata does not
+ * match.
+ *
+ * <pre>
+ * try (MzQCReader reader = new MzQCReader(path)) {
+ *     MzQC header = reader.getHeader();
+ *     reader.runQualities().forEach((run) -&gt; ...);
+ * }
+ * </pre>
+ */
+public class MzQCReader implements Closeable {
+
+    static final String MZQC = "mzQC";
+    static final String RUN_QUALITIES = "runQualities";
+    static final String SET_QUALITIES = "setQualities";
+    static final String METADATA = "metadata";
+    static final String QUALITY_METRICS = "qualityMetrics";
+    static final String ACCESSION = "accession";
+    static final String VALUE = "value";
+
+    private final Path path;
+    private final MzQCCodec codec;
+    private final ObjectMapper mapper;
+    private final ObjectReader qualityReader;
+    private final ObjectReader metadataReader;
+    private final ObjectReader metricReader;
+    private final Projection projection;
+    private final RunQuery query;
+    private final List<JsonParser> openParsers = new ArrayList<>();
+    private final MzQC header;
+
+    /**
+     * Create a new reader for the given mzQC file and read its header.
+     *
+     * @param file the mzQC file.
+     * @throws IOException if the file can not be read or is malformed.
+     */
+    public MzQCReader(File file) throws IOException {
+        this(file.toPath());
+    }
+
+    /**
+     * Create a new reader for the given mzQC file and projection and read its
+     * header.
+     *
+     * @param file the mzQC file.
+     * @param projection the parts of the run and set qualities to read.
+     * @throws IOException if the file can not be read or is malformed.
+     */
+    public MzQCReader(File file, Projection projection) throws IOException {
+        this(file.toPath(), projection);
+    }
+
+    /**
+     * Create a new reader for the given mzQC file and read its header.
+     *
+     * @param path the path of the mzQC file.
+     * @throws IOException if the file can not be read or is malformed.
+     */
+    public MzQCReader(Path path) throws IOException {
+        this(path, Projection.all());
+    }
+
+    /**
+     * Create a new reader for the given mzQC file and projection and read its
+     * header.
+     *
+     * @param path the path of the mzQC file.
+     * @param projection the parts of the run and set qualities to read.
+     * @throws IOException if the file can not be read or is malformed.
+     */
+    public MzQCReader(Path path, Projection projection) throws IOException {
+        this(path, projection, RunQuery.all());
+    }
+
+    /**
+     * Create a new reader for the given mzQC file, projection and run query
+     * and read its header. Only run qualities that are selected by the
+     * projection and match the query are returned.
+     *
+     * @param path the path of the mzQC file.
+     * @param projection the parts of the run and set qualities to read.
+     * @param query the criteria for the run qualities to read.
+     * @throws IOException if the file can not be read or is malformed.
+     */
+    public MzQCReader(Path path, Projection projection, RunQuery query) throws IOException {
+        this(path, projection, query, MzQCCodec.getDefault());
+    }
+
+    /**
+     * Create a new reader for the given mzQC file, projection and run query
+     * that parses and binds with the given codec, and read its header.
+     *
+     * @param path the path of the mzQC file.
+     * @param projection the parts of the run and set qualities to read.
+     * @param query the criteria for the run qualities to read.
+     * @param codec the codec to read with.
+     * @throws IOException if the file can not be read or is malformed.
+     */
+    public MzQCReader(Path path, Projection projection, RunQuery query, MzQCCodec codec) throws IOException {
+        this(path, projection, query, codec, readHeader(path, codec));
+    }
+
+    private MzQCReader(Path path, Projection projection, RunQuery query, MzQCCodec codec, MzQC header) {
+        this.path = path;
+        this.projection = projection;
+        this.query = query;
+        this.codec = codec;
+        this.mapper = codec.getObjectMapper();
+        this.qualityReader = mapper.readerFor(BaseQuality.class);
+        this.metadataReader = mapper.readerFor(Metadata.class);
+        this.metricReader = mapper.readerFor(QualityMetric.class);
+        this.header = header;
+    }
+
+    /**
+     * Reads the header and the selected run qualities of the given file in a
+     * single pass, instead of the two passes of a reader. The document
+     * creation date must precede the run qualities if the query has a
+     * creation date range, as it does in files written by this library,
+     * otherwise the file is read with a reader.
+     *
+     * @param path the path of the mzQC file.
+     * @param projection the parts of the run qualities to read.
+     * @param query the criteria for the run qualities to read.
+     * @param runs the list that the selected run qualities are added to.
+     * @param codec the codec to read with.
+     * @return the header of the document.
+     * @throws IOException if the file can not be read or is malformed.
+     */
+    static MzQC readRunQualities(Path path, Projection projection, RunQuery query, List<BaseQuality> runs, MzQCCodec codec) throws IOException {
+        ObjectMapper mapper = codec.getObjectMapper();
+        boolean needsCreationDate = query.createdFrom() != null || query.createdTo() != null;
+        try ( JsonParser parser = codec.createParser(Files.newInputStream(path))) {
+            enterMzQC(parser);
+            ObjectNode node = mapper.createObjectNode();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if (RUN_QUALITIES.equals(name) && token == JsonToken.START_ARRAY) {
+                    if (needsCreationDate && !node.has("creationDate")) {
+                        break;
+                    }
+                    MzQC partial = mapper.treeToValue(node, MzQC.class);
+                    new MzQCReader(path, projection, query, codec, partial).readQualities(parser, true, runs);
+                } else if (RUN_QUALITIES.equals(name) || SET_QUALITIES.equals(name)) {
+                    parser.skipChildren();
+                } else {
+                    node.set(name, mapper.readTree(parser));
+                }
+            }
+            if (parser.currentToken() == JsonToken.END_OBJECT) {
+                return mapper.treeToValue(node, MzQC.class);
+            }
+        }
+        try ( MzQCReader reader = new MzQCReader(path, projection, query, codec);  Stream<BaseQuality> stream = reader.runQualities()) {
+            stream.forEach(runs::add);
+            return reader.getHeader();
+        }
+    }
+
+    /**
+     * Returns the projection of this reader.
+     *
+     * @return the projection.
+     */
+    public Projection getProjection() {
+        return projection;
+    }
+
+    /**
+     * Returns the run query of this reader.
+     *
+     * @return the run query.
+     */
+    public RunQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * Reads the selected run and set qualities into one {@link MzQC} object
+     * together with the header, in a single pass over the file.
+     *
+     * @return the projected mzQC object.
+     * @throws IOException if the file can not be read or is malformed.
+     */
+    public MzQC read() throws IOException {
+        List<BaseQuality> runQualities = new ArrayList<>();
+        List<BaseQuality> setQualities = new ArrayList<>();
+        try ( JsonParser parser = codec.createParser(Files.newInputStream(path))) {
+            enterMzQC(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.START_ARRAY && RUN_QUALITIES.equals(name)) {
+                    readQualities(parser, true, runQualities);
+                } else if (token == JsonToken.START_ARRAY && SET_QUALITIES.equals(name)) {
+                    readQualities(parser, false, setQualities);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new MzQC(
+                header.contactAddress(),
+                header.contactName(),
+                header.controlledVocabularies(),
+                header.creationDate(),
+                header.description(),
+                runQualities,
+                setQualities,
+                header.version());
+    }
+
+    /**
+     * Returns the header of the mzQC document, an {@link MzQC} object with
+     * empty run and set qualities.
+     *
+     * @return the header.
+     */
+    public MzQC getHeader() {
+        return header;
+    }
+
+    /**
+     * Returns a lazy stream over the run qualities of the document. The
+     * stream should be closed after use, otherwise the underlying parser is
+     * closed together with this reader.
+     *
+     * @return the stream of run qualities.
+     * @throws IOException if the file can not be read or is malformed.
+     */
+    public Stream<BaseQuality> runQualities() throws IOException {
+        return stream(RUN_QUALITIES);
+    }
+
+    /**
+     * Returns a lazy stream over the set qualities of the document. The
+     * stream should be closed after use, otherwise the underlying parser is
+     * closed together with this reader.
+     *
+     * @return the stream of set qualities.
+     * @throws IOException if the file can not be read or is malformed.
+     */
+    public Stream<BaseQuality> setQualities() throws IOException {
+        return stream(SET_QUALITIES);
+    }
+
+    /**
+     * Returns an iterator over the run qualities of the document. The
+     * underlying parser is closed once the iterator is exhausted or this
+     * reader is closed.
+     *
+     * @return the iterator over run qualities.
+     * @throws IOException if the file can not be read or is malformed.
+     */
+    public Iterator<BaseQuality> runQualitiesIterator() throws IOException {
+        return iterator(RUN_QUALITIES);
+    }
+
+    /**
+     * Returns an iterator over the set qualities of the document. The
+     * underlying parser is closed once the iterator is exhausted or this
+     * reader is closed.
+     *
+     * @return the iterator over set qualities.
+     * @throws IOException if the file can not be read or is malformed.
+     */
+    public Iterator<BaseQuality> setQualitiesIterator() throws IOException {
+        return iterator(SET_QUALITIES);
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException first = null;
+        synchronized (openParsers) {
+            for (JsonParser parser : openParsers) {
+                try {
+                    parser.close();
+                } catch (IOException ex) {
+                    if (first == null) {
+                        first = ex;
+                    }
+                }
+            }
+            openParsers.clear();
+        }
+        if (first != null) {
+            throw first;
+        }
+    }
+
+    private JsonParser openParser() throws IOException {
+        JsonParser parser = codec.createParser(Files.newInputStream(path));
+        synchronized (openParsers) {
+            openParsers.add(parser);
+        }
+        return parser;
+    }
+
+    private void closeParser(JsonParser parser) {
+        synchronized (openParsers) {
+            openParsers.remove(parser);
+        }
+        try {
+            parser.close();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Advances the parser to the first property of the mzQC object.
+     */
+    static void enterMzQC(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expected start of JSON object at " + parser.currentLocation());
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            if (MZQC.equals(name)) {
+                if (parser.currentToken() != JsonToken.START_OBJECT) {
+                    throw new IOException("Expected property '" + MZQC + "' to be an object at " + parser.currentLocation());
+                }
+                return;
+            }
+            parser.skipChildren();
+        }
+        throw new IOException("No property '" + MZQC + "' found in document!");
+    }
+
+    private static MzQC readHeader(Path path, MzQCCodec codec) throws IOException {
+        ObjectMapper mapper = codec.getObjectMapper();
+        try ( JsonParser parser = codec.createParser(Files.newInputStream(path))) {
+            enterMzQC(parser);
+            ObjectNode node = mapper.createObjectNode();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                if (RUN_QUALITIES.equals(name) || SET_QUALITIES.equals(name)) {
+                    parser.skipChildren();
+                } else {
+                    node.set(name, mapper.readTree(parser));
+                }
+            }
+            return mapper.treeToValue(node, MzQC.class);
+        }
+    }
+
+    private Stream<BaseQuality> stream(String property) throws IOException {
+        QualityIterator iterator = iterator(property);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
+    private QualityIterator iterator(String property) throws IOException {
+        JsonParser parser = openParser();
+        try {
+            enterMzQC(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if (property.equals(name)) {
+                    if (token != JsonToken.START_ARRAY) {
+                        throw new IOException("Expected property '" + property + "' to be an array at " + parser.currentLocation());
+                    }
+                    return new QualityIterator(parser, RUN_QUALITIES.equals(property));
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException | RuntimeException ex) {
+            closeParser(parser);
+            throw ex;
+        }
+        closeParser(parser);
+        return new QualityIterator(null, false);
+    }
+
+    private void readQualities(JsonParser parser, boolean isRun, List<BaseQuality> qualities) throws IOException {
+        int index = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token == JsonToken.START_OBJECT) {
+                BaseQuality quality = readQuality(parser, isRun, index++);
+                if (quality != null) {
+                    qualities.add(quality);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private BaseQuality readQuality(JsonParser parser, boolean isRun, int index) throws IOException {
+        return projection.isAll() && (!isRun || query.isAll()) ? qualityReader.readValue(parser) : readProjected(parser, isRun, index);
+    }
+
+    /**
+     * Reads the quality object at the current START_OBJECT token with the
+     * projection and, for runs, the query applied.
+     *
+     * @return the projected quality, or null if it is not selected.
+     */
+    private BaseQuality readProjected(JsonParser parser, boolean isRun, int index) throws IOException {
+        boolean selected = !isRun || projection.selectsRunIndex(index);
+        if (!selected && projection.runLabels().isEmpty()) {
+            parser.skipChildren();
+            return null;
+        }
+        RunQuery.Evaluation evaluation = isRun && !query.isAll() ? query.evaluate(header.creationDate()) : null;
+        Metadata metadata = null;
+        List<QualityMetric> metrics = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if (METADATA.equals(name)) {
+                metadata = metadataReader.readValue(parser);
+                if (!selected) {
+                    if (!projection.selectsRunLabel(metadata == null ? null : metadata.label())) {
+                        skipRemainingFields(parser);
+                        return null;
+                    }
+                    selected = true;
+                }
+                if (evaluation != null && !evaluation.metadata(metadata)) {
+                    skipRemainingFields(parser);
+                    return null;
+                }
+            } else if (QUALITY_METRICS.equals(name) && token == JsonToken.START_ARRAY) {
+                metrics = readProjectedMetrics(parser, evaluation);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return selected && (evaluation == null || evaluation.accepts()) ? new BaseQuality(metadata, metrics) : null;
+    }
+
+    /**
+     * Reads the metrics array at the current START_ARRAY token.
+     *
+     * @return the projected metrics.
+     */
+    private List<QualityMetric> readProjectedMetrics(JsonParser parser, RunQuery.Evaluation evaluation) throws IOException {
+        List<QualityMetric> metrics = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token == JsonToken.START_OBJECT) {
+                QualityMetric metric = readProjectedMetric(parser, evaluation);
+                if (metric != null) {
+                    metrics.add(metric);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Reads the metric object at the current START_OBJECT token. Once the
+     * accession is known, the remaining properties of unselected metrics are
+     * skipped, and those of selected metrics are bound from the stream.
+     * Properties that precede the accession are buffered, since the mzQC
+     * format does not mandate the order of properties. If table values are
+     * dropped, all properties are buffered, except for dropped values. The
+     * values of metrics constrained by the query are passed to the
+     * evaluation, whether the metric is selected or not.
+     */
+    private QualityMetric readProjectedMetric(JsonParser parser, RunQuery.Evaluation evaluation) throws IOException {
+        TokenBuffer buffer = new TokenBuffer(parser);
+        buffer.writeStartObject();
+        String accession = null;
+        QualityMetric metric = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if (ACCESSION.equals(name) && token == JsonToken.VALUE_STRING) {
+                accession = parser.getText();
+                if (!projection.selectsAccession(accession) && (evaluation == null || !query.constrains(accession))) {
+                    skipRemainingFields(parser);
+                    return null;
+                }
+                buffer.writeFieldName(name);
+                buffer.copyCurrentEvent(parser);
+                if (!projection.dropTableValues()) {
+                    metric = metricReader.readValue(JsonParserSequence.createFlattened(false, buffer.asParser(parser), parser));
+                    break;
+                }
+            } else if (VALUE.equals(name) && projection.dropTableValues()) {
+                copyUnlessTableValue(parser, buffer);
+            } else {
+                buffer.writeFieldName(name);
+                buffer.copyCurrentStructure(parser);
+            }
+        }
+        if (metric == null) {
+            buffer.writeEndObject();
+            metric = metricReader.readValue(buffer.asParser(parser));
+        }
+        if (evaluation != null && accession != null && query.constrains(accession)) {
+            evaluation.metric(accession, metric.value() instanceof Number number ? number.doubleValue() : Double.NaN);
+        }
+        if (accession == null ? !projection.accessions().isEmpty() : !projection.selectsAccession(accession)) {
+            return null;
+        }
+        return metric;
+    }
+
+    /**
+     * Copies the metric value at the current token to the buffer, unless it
+     * is a table, i.e. an object, or a matrix, i.e. an array of arrays, which
+     * is skipped.
+     */
+    private static void copyUnlessTableValue(JsonParser parser, TokenBuffer buffer) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            parser.skipChildren();
+        } else if (token == JsonToken.START_ARRAY) {
+            token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                do {
+                    parser.skipChildren();
+                } while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null);
+                return;
+            }
+            buffer.writeFieldName(VALUE);
+            buffer.writeStartArray();
+            for (; token != JsonToken.END_ARRAY && token != null; token = parser.nextToken()) {
+                buffer.copyCurrentStructure(parser);
+            }
+            buffer.writeEndArray();
+        } else {
+            buffer.writeFieldName(VALUE);
+            buffer.copyCurrentStructure(parser);
+        }
+    }
+
+    private static void skipRemainingFields(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            parser.nextToken();
+            parser.skipChildren();
+        }
+    }
+
+    private final class QualityIterator implements Iterator<BaseQuality> {
+
+        private final boolean runs;
+        private JsonParser parser;
+        private BaseQuality next;
+        private int index;
+
+        QualityIterator(JsonParser parser, boolean runs) {
+            this.parser = parser;
+            this.runs = runs;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && parser != null) {
+                try {
+                    if (parser.nextToken() == JsonToken.START_OBJECT) {
+                        next = readQuality(parser, runs, index++);
+                    } else {
+                        close();
+                    }
+                } catch (IOException ex) {
+                    close();
+                    throw new UncheckedIOException(ex);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public BaseQuality next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            BaseQuality current = next;
+            next = null;
+            return current;
+        }
+
+        void close() {
+            if (parser != null) {
+                JsonParser p = parser;
+                parser = null;
+                closeParser(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Searches the run qualities of many mzQC files with a {@link RunQuery}. The
+ * files are scanned concurrently on a {@link ForkJoinPool}, each in a single
+ * pass that evaluates the query while parsing, like an {@link MzQCReader}, so
+ * runs that do not match are never bound.
+ *
+ * The matching runs are returned as a lazy stream in the order of the files
+ * and of the runs within each file. Files are scanned only a few files ahead
+ * of the consumer, so a stream that is closed early, e.g. after
+ * {@link Stream#findFirst()}, does not scan the remaining files. The stream
+ * must be closed after use to stop its threads.
+ *
+ * <pre>
+ * RunQuery query = RunQuery.all()
+ *         .withCreationDate(OffsetDateTime.now().minusDays(90), null)
+ *         .withValue("MS:4000059", 0, 1000);
+ * try (Stream&lt;MzQCSearch.Hit&gt; hits = new MzQCSearch(8).search(BatchValidator.resolve(List.of("runs/")), query)) {
+ *     hits.forEach((hit) -&gt; ...);
+ * }
+ * </pre>
+ */
+public final class MzQCSearch {
+
+    /**
+     * A run quality that matches the query.
+     *
+     * @param file the file containing the run.
+     * @param header the header of the file, an {@link MzQC} object with empty
+     * run and set qualities.
+     * @param run the run quality, with the metrics selected by the
+     * projection.
+     */
+    public record Hit(Path file, MzQC header, BaseQuality run) {
+
+    }
+
+    private final int threads;
+
+    /**
+     * Create a new search with one thread per available processor.
+     */
+    public MzQCSearch() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a new search with the given number of threads.
+     *
+     * @param threads the number of threads, at least one.
+     * @throws IllegalArgumentException if threads is smaller than one.
+     */
+    public MzQCSearch(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1, was " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the runs of the given files that match the query, with all of
+     * their metrics.
+     *
+     * @param files the mzQC files to search.
+     * @param query the criteria for the runs.
+     * @return the lazy stream of matching runs.
+     */
+    public Stream<Hit> search(List<Path> files, RunQuery query) {
+        return search(files, query, Projection.all());
+    }
+
+    /**
+     * Returns the runs of the given files that are selected by the projection
+     * and match the query. Set qualities are not searched. A file that can
+     * not be read fails the stream with an {@link UncheckedIOException}.
+     *
+     * @param files the mzQC files to search.
+     * @param query the criteria for the runs.
+     * @param projection the runs and metrics to read.
+     * @return the lazy stream of matching runs.
+     */
+    public Stream<Hit> search(List<Path> files, RunQuery query, Projection projection) {
+        HitIterator iterator = new HitIterator(List.copyOf(files), query, projection);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
+    /**
+     * Scan a single file.
+     *
+     * @param file the mzQC file.
+     * @param query the criteria for the runs.
+     * @param projection the runs and metrics to read.
+     * @return the matching runs in file order.
+     * @throws IOException if the file can not be read or is malformed.
+     */
+    static List<Hit> scan(Path file, RunQuery query, Projection projection) throws IOException {
+        List<BaseQuality> runs = new ArrayList<>();
+        MzQC header = MzQCReader.readRunQualities(file, projection, query, runs, MzQCCodec.getDefault());
+        List<Hit> hits = new ArrayList<>(runs.size());
+        for (BaseQuality run : runs) {
+            hits.add(new Hit(file, header, run));
+        }
+        return hits;
+    }
+
+    /**
+     * Iterates the hits of the files in order, while the next files are
+     * scanned concurrently within a window of twice the number of threads.
+     */
+    private final class HitIterator implements Iterator<Hit> {
+
+        private final List<Path> files;
+        private final RunQuery query;
+        private final Projection projection;
+        private final ArrayDeque<Future<List<Hit>>> window = new ArrayDeque<>();
+        private ForkJoinPool pool;
+        private Iterator<Hit> current = Collections.emptyIterator();
+        private int nextFile;
+
+        HitIterator(List<Path> files, RunQuery query, Projection projection) {
+            this.files = files;
+            this.query = query;
+            this.projection = projection;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                fill();
+                if (window.isEmpty()) {
+                    close();
+                    return false;
+                }
+                Path file = files.get(nextFile - window.size());
+                current = await(window.poll(), file).iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public Hit next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        private void fill() {
+            if (nextFile < files.size() && pool == null) {
+                pool = new ForkJoinPool(threads);
+            }
+            while (nextFile < files.size() && window.size() < 2 * threads) {
+                Path file = files.get(nextFile++);
+                window.add(pool.submit(() -> scan(file, query, projection)));
+            }
+        }
+
+        private List<Hit> await(Future<List<Hit>> future, Path file) {
+            try {
+                return future.get();
+            } catch (InterruptedException ex) {
+                close();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while searching files", ex);
+            } catch (ExecutionException ex) {
+                close();
+                // the pool wraps checked exceptions of the scan, possibly more than once
+                for (Throwable cause = ex.getCause(); cause != null; cause = cause.getCause()) {
+                    if (cause instanceof IOException io) {
+                        throw new UncheckedIOException("Could not search file " + file + ": " + io.getMessage(), io);
+                    }
+                }
+                throw new IllegalStateException("Unexpected error while searching file " + file, ex.getCause());
+            }
+        }
+
+        void close() {
+            nextFile = files.size();
+            window.clear();
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.networknt.schema.JsonSchema;
+import com.networknt.schema.JsonSchemaFactory;
+import com.networknt.schema.SchemaValidatorsConfig;
+import com.networknt.schema.SpecVersion;
+import com.networknt.schema.ValidationMessage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Set;
+
+/**
+ * Validates mzQC documents against the mzQC JSON schema. The schema is loaded
+ * and compiled once, when the validator is created. Afterwards, a validator
+ * instance is immutable and can be shared between threads.
+ *
+ * Use {@link #getDefault()} to obtain the shared validator for the bundled
+ * mzQC schema. Calling it at application startup moves the cost of compiling
+ * the schema out of the first validation.
+ */
+public class MzQCValidator {
+
+    /**
+     * Classpath location of the bundled mzQC JSON schema.
+     */
+    public static final String SCHEMA_RESOURCE = "/schema/mzqc_schema.json";
+
+    private static class DefaultHolder {
+
+        static final MzQCValidator INSTANCE = new MzQCValidator();
+    }
+
+    private final JsonSchema schema;
+
+    /**
+     * Create a new validator for the bundled mzQC JSON schema.
+     */
+    public MzQCValidator() {
+        this(MzQCValidator.class.getResourceAsStream(SCHEMA_RESOURCE));
+    }
+
+    /**
+     * Create a new validator for the JSON schema read from the given stream.
+     * The stream is closed after the schema has been read.
+     *
+     * @param schemaStream the stream to read the schema from.
+     */
+    public MzQCValidator(InputStream schemaStream) {
+        JsonSchemaFactory factory = JsonSchemaFactory.getInstance(SpecVersion.VersionFlag.V7);
+        SchemaValidatorsConfig config = new SchemaValidatorsConfig();
+        config.setHandleNullableField(false);
+        try ( InputStream is = schemaStream) {
+            this.schema = factory.getSchema(is, config);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not read mzQC JSON schema!", ex);
+        }
+        // resolve all (nested) validators now, to avoid lazy initialization
+        // during concurrent validation calls
+        this.schema.initializeValidators();
+    }
+
+    /**
+     * Returns the shared validator for the bundled mzQC JSON schema. The
+     * schema is compiled on the first call.
+     *
+     * @return the default validator.
+     */
+    public static MzQCValidator getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Validate a parsed mzQC JSON tree.
+     *
+     * @param node the root node of the mzQC document.
+     * @return a set of validation messages.
+     */
+    public Set<ValidationMessage> validate(JsonNode node) {
+        return schema.validate(node);
+    }
+
+    /**
+     * Validate a mzQC JSON string.
+     *
+     * @param json the mzQC data in JSON format.
+     * @return a set of validation messages.
+     * @throws JsonProcessingException if the JSON is malformed.
+     */
+    public Set<ValidationMessage> validate(String json) throws JsonProcessingException {
+        return validate(json, MzQCCodec.getDefault());
+    }
+
+    /**
+     * Validate a mzQC JSON string parsed with the given codec.
+     *
+     * @param json the mzQC data in JSON format.
+     * @param codec the codec to parse with.
+     * @return a set of validation messages.
+     * @throws JsonProcessingException if the JSON is malformed.
+     */
+    public Set<ValidationMessage> validate(String json, MzQCCodec codec) throws JsonProcessingException {
+        return validate(codec.getObjectMapper().readTree(json));
+    }
+
+    /**
+     * Validate a mzQC JSON file. Files in the binary Smile format are
+     * detected and validated as well.
+     *
+     * @param file the mzQC data file in JSON or Smile format.
+     * @return a set of validation messages.
+     * @throws IOException if the file can not be read or the JSON is
+     * malformed.
+     */
+    public Set<ValidationMessage> validate(File file) throws IOException {
+        return validate(file, MzQCCodec.getDefault());
+    }
+
+    /**
+     * Validate a mzQC JSON or Smile file parsed with the given codec.
+     *
+     * @param file the mzQC data file in JSON or Smile format.
+     * @param codec the codec to parse with.
+     * @return a set of validation messages.
+     * @throws IOException if the file can not be read or the JSON is
+     * malformed.
+     */
+    public Set<ValidationMessage> validate(File file, MzQCCodec codec) throws IOException {
+        try ( InputStream is = Files.newInputStream(file.toPath())) {
+            return validate(codec.readTree(is));
+        }
+    }
+
+    /**
+     * Validate a mzQC JSON URL.
+     *
+     * @param url the url to read mzQC data in JSON format from.
+     * @return a set of validation messages.
+     * @throws IOException if the url can not be read or the JSON is
+     * malformed.
+     */
+    public Set<ValidationMessage> validate(URL url) throws IOException {
+        try ( InputStream is = url.openStream()) {
+            return validate(Converter.readTree(is));
+        }
+    }
+
+    /**
+     * Validate a mzQC Object. The object is converted directly into a JSON
+     * tree, without serializing it to a JSON string first. Validation messages
+     * and their paths are the same as for the serialized document.
+     *
+     * @param mzQc the mzQC object.
+     * @return a set of validation messages.
+     * @throws JsonProcessingException if the object can not be serialized.
+     */
+    public Set<ValidationMessage> validate(MzQC mzQc) throws JsonProcessingException {
+        return validate(mzQc, MzQCCodec.getDefault());
+    }
+
+    /**
+     * Validate a mzQC Object converted into a JSON tree with the given codec.
+     *
+     * @param mzQc the mzQC object.
+     * @param codec the codec to convert with.
+     * @return a set of validation messages.
+     * @throws JsonProcessingException if the object can not be serialized.
+     */
+    public Set<ValidationMessage> validate(MzQC mzQc, MzQCCodec codec) throws JsonProcessingException {
+        return validate(toTree(mzQc, codec));
+    }
+
+    /**
+     * Converts the object graph into a JSON tree through a token buffer.
+     */
+    static JsonNode toTree(MzQC mzQc, MzQCCodec codec) throws JsonProcessingException {
+        try {
+            return codec.getObjectMapper().valueToTree(new Coordinate(mzQc));
+        } catch (IllegalArgumentException ex) {
+            if (ex.getCause() instanceof JsonProcessingException jpe) {
+                throw jpe;
+            }
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Incremental writer for mzQC files. The header of the document is written
+ * when the writer is created, run and set qualities are then appended one at
+ * a time, as they are produced. The JSON document is never materialized in
+ * memory, so memory usage stays flat regardless of the number of qualities
+ * written.
+ *
+ * All run qualities must be written before the first set quality. The
+ * document is completed when the writer is closed.
+ *
+ * <pre>
+ * try (MzQCWriter writer = new MzQCWriter(path, header)) {
+ *     for (BaseQuality run : runs) {
+ *         writer.writeRunQuality(run);
+ *     }
+ * }
+ * </pre>
+ */
+public class MzQCWriter implements Closeable {
+
+    private enum State {
+        HEADER, RUN_QUALITIES, SET_QUALITIES, CLOSED
+    }
+
+    private final ObjectWriter qualityWriter;
+    private final JsonGenerator generator;
+    private State state = State.HEADER;
+
+    /**
+     * Create a new writer for the given file and write the header to it.
+     *
+     * @param file the file to write to, will be truncated if it exists. The
+     * format is chosen by {@link MzQCFormat#forFileName(String)} and the
+     * output is gzip compressed if the file name ends in {@code .gz}.
+     * @param header the header of the mzQC document. Run and set qualities
+     * contained in the header are written first.
+     * @throws IOException if the file can not be written.
+     */
+    public MzQCWriter(File file, MzQC header) throws IOException {
+        this(file.toPath(), header);
+    }
+
+    /**
+     * Create a new writer for the given path and write the header to it.
+     *
+     * @param path the path to write to, will be truncated if it exists. The
+     * format is chosen by {@link MzQCFormat#forFileName(String)} and the
+     * output is gzip compressed if the file name ends in {@code .gz}.
+     * @param header the header of the mzQC document. Run and set qualities
+     * contained in the header are written first.
+     * @throws IOException if the file can not be written.
+     */
+    public MzQCWriter(Path path, MzQC header) throws IOException {
+        this(path, header, MzQCCodec.getDefault());
+    }
+
+    /**
+     * Create a new writer for the given path that serializes with the given
+     * codec and write the header to it.
+     *
+     * @param path the path to write to, will be truncated if it exists. The
+     * format is chosen by {@link MzQCFormat#forFileName(String)} and the
+     * output is gzip compressed if the file name ends in {@code .gz}.
+     * @param header the header of the mzQC document. Run and set qualities
+     * contained in the header are written first.
+     * @param codec the codec to write with.
+     * @throws IOException if the file can not be written.
+     */
+    public MzQCWriter(Path path, MzQC header, MzQCCodec codec) throws IOException {
+        this(Converter.openOutputStream(path), header, codec, MzQCFormat.forFileName(path.getFileName().toString()));
+    }
+
+    /**
+     * Create a new writer for the given output stream and write the header as
+     * JSON to it. The output stream is closed when this writer is closed.
+     *
+     * @param out the output stream to write to.
+     * @param header the header of the mzQC document. Run and set qualities
+     * contained in the header are written first.
+     * @throws IOException if the header can not be written.
+     */
+    public MzQCWriter(OutputStream out, MzQC header) throws IOException {
+        this(out, header, MzQCCodec.getDefault());
+    }
+
+    /**
+     * Create a new writer for the given output stream that serializes with
+     * the given codec and write the header as JSON to it. The output stream
+     * is closed when this writer is closed.
+     *
+     * @param out the output stream to write to.
+     * @param header the header of the mzQC document. Run and set qualities
+     * contained in the header are written first.
+     * @param codec the codec to write with.
+     * @throws IOException if the header can not be written.
+     */
+    public MzQCWriter(OutputStream out, MzQC header, MzQCCodec codec) throws IOException {
+        this(out, header, codec, MzQCFormat.JSON);
+    }
+
+    /**
+     * Create a new writer for the given output stream that serializes with
+     * the given codec and write the header in the given format to it. The
+     * output stream is closed when this writer is closed, or when the header
+     * can not be written.
+     *
+     * @param out the output stream to write to.
+     * @param header the header of the mzQC document. Run and set qualities
+     * contained in the header are written first.
+     * @param codec the codec to write with.
+     * @param format the format to write.
+     * @throws IOException if the header can not be written.
+     */
+    public MzQCWriter(OutputStream out, MzQC header, MzQCCodec codec, MzQCFormat format) throws IOException {
+        ObjectMapper mapper = format == MzQCFormat.SMILE ? codec.getSmileMapper() : codec.getObjectMapper();
+        this.qualityWriter = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try {
+            this.generator = qualityWriter.createGenerator(out, JsonEncoding.UTF8);
+            writeHeader(mapper, header);
+        } catch (IOException | RuntimeException ex) {
+            try {
+                out.close();
+            } catch (IOException suppressed) {
+                ex.addSuppressed(suppressed);
+            }
+            throw ex;
+        }
+    }
+
+    private void writeHeader(ObjectMapper mapper, MzQC header) throws IOException {
+        MzQC headerOnly = new MzQC(
+                header.contactAddress(),
+                header.contactName(),
+                header.controlledVocabularies(),
+                header.creationDate(),
+                header.description(),
+                Collections.emptyList(),
+                Collections.emptyList(),
+                header.version());
+        ObjectNode node = mapper.valueToTree(headerOnly);
+        generator.writeStartObject();
+        generator.writeFieldName(MzQCReader.MZQC);
+        generator.writeStartObject();
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            generator.writeFieldName(field.getKey());
+            mapper.writeTree(generator, field.getValue());
+        }
+        for (BaseQuality runQuality : header.runQualities()) {
+            writeRunQuality(runQuality);
+        }
+        for (BaseQuality setQuality : header.setQualities()) {
+            writeSetQuality(setQuality);
+        }
+    }
+
+    /**
+     * Append a run quality to the document.
+     *
+     * @param runQuality the run quality.
+     * @throws IOException if the run quality can not be written.
+     * @throws IllegalStateException if a set quality has already been written
+     * or the writer is closed.
+     */
+    public void writeRunQuality(BaseQuality runQuality) throws IOException {
+        switch (state) {
+            case HEADER -> {
+                generator.writeArrayFieldStart(MzQCReader.RUN_QUALITIES);
+                state = State.RUN_QUALITIES;
+            }
+            case RUN_QUALITIES -> {
+            }
+            case SET_QUALITIES ->
+                throw new IllegalStateException("Run qualities must be written before set qualities!");
+            default ->
+                throw new IllegalStateException("Writer is closed!");
+        }
+        qualityWriter.writeValue(generator, runQuality);
+    }
+
+    /**
+     * Append a set quality to the document. Once a set quality has been
+     * written, no more run qualities can be added.
+     *
+     * @param setQuality the set quality.
+     * @throws IOException if the set quality can not be written.
+     * @throws IllegalStateException if the writer is closed.
+     */
+    public void writeSetQuality(BaseQuality setQuality) throws IOException {
+        switch (state) {
+            case HEADER -> {
+                generator.writeArrayFieldStart(MzQCReader.SET_QUALITIES);
+                state = State.SET_QUALITIES;
+            }
+            case RUN_QUALITIES -> {
+                generator.writeEndArray();
+                generator.writeArrayFieldStart(MzQCReader.SET_QUALITIES);
+                state = State.SET_QUALITIES;
+            }
+            case SET_QUALITIES -> {
+            }
+            default ->
+                throw new IllegalStateException("Writer is closed!");
+        }
+        qualityWriter.writeValue(generator, setQuality);
+    }
+
+    /**
+     * Completes the mzQC document and closes the underlying output.
+     *
+     * @throws IOException if the document can not be completed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (state == State.CLOSED) {
+            return;
+        }
+        try {
+            if (state != State.HEADER) {
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        } finally {
+            state = State.CLOSED;
+            generator.close();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Selects the parts of an mzQC document that an {@link MzQCReader} binds.
+ * Everything else is skipped at the token level while parsing.
+ *
+ * Run qualities are selected by their zero-based index or by their metadata
+ * label. If neither indices nor labels are given, all run qualities are
+ * selected. Set qualities are always selected. Within selected qualities,
+ * only metrics with one of the given accessions are kept, or all metrics if no
+ * accessions are given. Table values, which are JSON objects, can be dropped
+ * from the kept metrics, leaving their value null.
+ *
+ * <pre>
+ * Projection projection = Projection.all()
+ *         .withAccessions("MS:4000059", "MS:4000060")
+ *         .withDropTableValues(true);
+ * </pre>
+ *
+ * @param runIndices the indices of the run qualities to select.
+ * @param runLabels the labels of the run qualities to select.
+ * @param accessions the accessions of the metrics to keep.
+ * @param dropTableValues if true, the values of table and matrix metrics are
+ * not read.
+ */
+public record Projection(
+        Set<Integer> runIndices,
+        Set<String> runLabels,
+        Set<String> accessions,
+        boolean dropTableValues) {
+
+    public Projection {
+        runIndices = runIndices == null ? Collections.emptySet() : Set.copyOf(runIndices);
+        runLabels = runLabels == null ? Collections.emptySet() : Set.copyOf(runLabels);
+        accessions = accessions == null ? Collections.emptySet() : Set.copyOf(accessions);
+    }
+
+    /**
+     * Returns the projection that selects the complete document.
+     *
+     * @return the projection selecting everything.
+     */
+    public static Projection all() {
+        return new Projection(null, null, null, false);
+    }
+
+    public Projection withRunIndices(int... runIndices) {
+        return new Projection(Arrays.stream(runIndices).boxed().collect(Collectors.toSet()), runLabels, accessions, dropTableValues);
+    }
+
+    public Projection withRunLabels(String... runLabels) {
+        return new Projection(runIndices, Set.of(runLabels), accessions, dropTableValues);
+    }
+
+    public Projection withAccessions(String... accessions) {
+        return new Projection(runIndices, runLabels, Set.of(accessions), dropTableValues);
+    }
+
+    public Projection withDropTableValues(boolean dropTableValues) {
+        return new Projection(runIndices, runLabels, accessions, dropTableValues);
+    }
+
+    /**
+     * Returns true, if this projection selects the complete document.
+     *
+     * @return true if nothing is skipped.
+     */
+    public boolean isAll() {
+        return !selectsRunSubset() && accessions.isEmpty() && !dropTableValues;
+    }
+
+    /**
+     * Returns true, if only some run qualities are selected.
+     *
+     * @return true if run indices or labels are given.
+     */
+    public boolean selectsRunSubset() {
+        return !runIndices.isEmpty() || !runLabels.isEmpty();
+    }
+
+    /**
+     * Returns true, if the run quality with the given index is selected
+     * regardless of its label.
+     *
+     * @param index the zero-based index of the run quality.
+     * @return true if the run is selected by its index.
+     */
+    public boolean selectsRunIndex(int index) {
+        return !selectsRunSubset() || runIndices.contains(index);
+    }
+
+    /**
+     * Returns true, if the run quality with the given label is selected.
+     *
+     * @param label the label of the run quality, may be null.
+     * @return true if the run is selected by its label.
+     */
+    public boolean selectsRunLabel(String label) {
+        return label != null && runLabels.contains(label);
+    }
+
+    /**
+     * Returns true, if metrics with the given accession are kept.
+     *
+     * @param accession the accession of the metric.
+     * @return true if metrics with that accession are kept.
+     */
+    public boolean selectsAccession(String accession) {
+        return accessions.isEmpty() || accessions.contains(accession);
+    }
+}
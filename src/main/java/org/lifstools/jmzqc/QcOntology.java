@@ -0,0 +1,469 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Immutable, indexed model of the mzQC controlled vocabulary (qc-cv.obo).
+ * Terms can be looked up by accession, and the transitive closures of the
+ * {@code is_a} and {@code has_relation} relationships are precomputed as
+ * bitsets, so that hierarchy queries do not walk the graph.
+ *
+ * The vocabulary bundled with this library is loaded lazily, once per JVM,
+ * on the first call to {@link #getDefault()}.
+ */
+public final class QcOntology {
+
+    /**
+     * Classpath location of the bundled QC controlled vocabulary.
+     */
+    public static final String OBO_RESOURCE = "/cv/qc-cv.obo";
+
+    /**
+     * Accession of the root term of all QC metrics.
+     */
+    public static final String QC_METRIC = "MS:4000001";
+
+    static final String IS_A = "is_a";
+    static final String HAS_RELATION = "has_relation";
+    static final String HAS_UNITS = "has_units";
+    static final String HAS_COLUMN = "has_column";
+    static final String HAS_OPTIONAL_COLUMN = "has_optional_column";
+
+    /**
+     * The value type of a QC metric, as defined by the children of
+     * {@code MS:4000002 ! QC metric value type}.
+     */
+    public enum ValueType {
+        SINGLE_VALUE("MS:4000003"),
+        N_TUPLE("MS:4000004"),
+        TABLE("MS:4000006"),
+        MATRIX("MS:4000007"),
+        UNKNOWN(null);
+
+        private final String accession;
+
+        ValueType(String accession) {
+            this.accession = accession;
+        }
+
+        /**
+         * Returns the accession of the value type term, or null for
+         * {@link #UNKNOWN}.
+         */
+        public String getAccession() {
+            return accession;
+        }
+    }
+
+    /**
+     * A term of the controlled vocabulary.
+     *
+     * @param accession the term accession, e.g. MS:4000059.
+     * @param name the term name.
+     * @param definition the term definition, without quotes and references.
+     * @param isA the accessions of the direct parents.
+     * @param relationships the direct relationships, by relationship type.
+     * @param synonyms the synonyms of the term.
+     * @param valueType the value type of a metric term.
+     */
+    public record Term(
+            String accession,
+            String name,
+            String definition,
+            List<String> isA,
+            Map<String, List<String>> relationships,
+            List<String> synonyms,
+            ValueType valueType) {
+
+        /**
+         * Returns the direct targets of the given relationship type.
+         *
+         * @param relationship the relationship type, e.g. has_units.
+         * @return the target accessions.
+         */
+        public List<String> getRelated(String relationship) {
+            return relationships.getOrDefault(relationship, Collections.emptyList());
+        }
+
+        /**
+         * Returns the accessions of the units declared for this term.
+         */
+        public List<String> getUnits() {
+            return getRelated(HAS_UNITS);
+        }
+
+        /**
+         * Returns the accessions of the required table columns of this term.
+         */
+        public List<String> getColumns() {
+            return getRelated(HAS_COLUMN);
+        }
+
+        /**
+         * Returns the accessions of the optional table columns of this term.
+         */
+        public List<String> getOptionalColumns() {
+            return getRelated(HAS_OPTIONAL_COLUMN);
+        }
+    }
+
+    private static class DefaultHolder {
+
+        static final QcOntology INSTANCE = loadDefault();
+
+        private static QcOntology loadDefault() {
+            try ( InputStream is = QcOntology.class.getResourceAsStream(OBO_RESOURCE)) {
+                if (is == null) {
+                    throw new IllegalStateException("Could not find " + OBO_RESOURCE + " on the classpath!");
+                }
+                return load(is);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    private final Map<String, Term> terms;
+    private final Map<String, Integer> ids;
+    private final String[] accessions;
+    private final BitSet[] ancestors;
+    private final BitSet[] relations;
+
+    private QcOntology(Map<String, Term> terms, Map<String, Integer> ids, String[] accessions, BitSet[] ancestors, BitSet[] relations) {
+        this.terms = terms;
+        this.ids = ids;
+        this.accessions = accessions;
+        this.ancestors = ancestors;
+        this.relations = relations;
+    }
+
+    /**
+     * Returns the ontology for the QC controlled vocabulary bundled with this
+     * library. The vocabulary is parsed on the first call.
+     *
+     * @return the default QC ontology.
+     */
+    public static QcOntology getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Parse an ontology from an OBO 1.2 stream. Only {@code [Term]} stanzas
+     * are read, the stream is not closed.
+     *
+     * @param is the input stream.
+     * @return the ontology.
+     * @throws IOException if the stream can not be read.
+     */
+    public static QcOntology load(InputStream is) throws IOException {
+        List<TermBuilder> builders = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+        TermBuilder current = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.strip();
+            if (line.startsWith("[")) {
+                current = null;
+                if (line.equals("[Term]")) {
+                    current = new TermBuilder();
+                    builders.add(current);
+                }
+                continue;
+            }
+            int colon = line.indexOf(':');
+            if (current == null || colon < 0) {
+                continue;
+            }
+            String tag = line.substring(0, colon);
+            String value = line.substring(colon + 1).strip();
+            switch (tag) {
+                case "id" ->
+                    current.accession = stripComment(value);
+                case "name" ->
+                    current.name = value;
+                case "def" ->
+                    current.definition = quoted(value);
+                case "synonym" ->
+                    current.synonyms.add(quoted(value));
+                case IS_A ->
+                    current.isA.add(stripComment(value));
+                case "relationship" -> {
+                    String[] parts = stripComment(value).split("\\s+");
+                    if (parts.length >= 2) {
+                        // tolerate 'has_column: MS:...' as used by some terms
+                        String type = parts[0].endsWith(":") ? parts[0].substring(0, parts[0].length() - 1) : parts[0];
+                        current.relationships.computeIfAbsent(type, (key) -> new ArrayList<>()).add(parts[1]);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        return build(builders);
+    }
+
+    private static String stripComment(String value) {
+        int bang = value.indexOf(" !");
+        String stripped = bang >= 0 ? value.substring(0, bang) : value;
+        int brace = stripped.indexOf(" {");
+        return (brace >= 0 ? stripped.substring(0, brace) : stripped).strip();
+    }
+
+    private static String quoted(String value) {
+        if (value.startsWith("\"")) {
+            int end = value.indexOf('"', 1);
+            while (end > 0 && value.charAt(end - 1) == '\\') {
+                end = value.indexOf('"', end + 1);
+            }
+            if (end > 0) {
+                return value.substring(1, end).replace("\\\"", "\"");
+            }
+        }
+        return value;
+    }
+
+    private static QcOntology build(List<TermBuilder> builders) {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> accessions = new ArrayList<>();
+        for (TermBuilder builder : builders) {
+            id(builder.accession, ids, accessions);
+        }
+        // referenced terms from other vocabularies become nodes as well
+        for (TermBuilder builder : builders) {
+            builder.isA.forEach((target) -> id(target, ids, accessions));
+            builder.relationships.values().forEach((targets) -> targets.forEach((target) -> id(target, ids, accessions)));
+        }
+        int n = accessions.size();
+        int[][] parents = new int[n][];
+        int[][] related = new int[n][];
+        for (int i = 0; i < n; i++) {
+            parents[i] = new int[0];
+            related[i] = new int[0];
+        }
+        for (TermBuilder builder : builders) {
+            int id = ids.get(builder.accession);
+            parents[id] = builder.isA.stream().mapToInt(ids::get).toArray();
+            related[id] = builder.relationships.getOrDefault(HAS_RELATION, Collections.emptyList()).stream().mapToInt(ids::get).toArray();
+        }
+        BitSet[] ancestors = new BitSet[n];
+        for (int i = 0; i < n; i++) {
+            closeAncestors(i, parents, ancestors, new BitSet(n));
+        }
+        // has_relation targets of a term and of all its ancestors,
+        // together with the ancestors of these targets
+        BitSet[] relations = new BitSet[n];
+        for (int i = 0; i < n; i++) {
+            BitSet closure = new BitSet(n);
+            BitSet self = (BitSet) ancestors[i].clone();
+            self.set(i);
+            for (int a = self.nextSetBit(0); a >= 0; a = self.nextSetBit(a + 1)) {
+                for (int target : related[a]) {
+                    closure.set(target);
+                    closure.or(ancestors[target]);
+                }
+            }
+            relations[i] = closure;
+        }
+        Map<String, Term> terms = new LinkedHashMap<>();
+        for (TermBuilder builder : builders) {
+            int id = ids.get(builder.accession);
+            Map<String, List<String>> relationships = new LinkedHashMap<>();
+            builder.relationships.forEach((type, targets) -> relationships.put(type, List.copyOf(targets)));
+            terms.put(builder.accession, new Term(
+                    builder.accession,
+                    builder.name,
+                    builder.definition,
+                    List.copyOf(builder.isA),
+                    Collections.unmodifiableMap(relationships),
+                    List.copyOf(builder.synonyms),
+                    valueType(ancestors[id], ids)));
+        }
+        return new QcOntology(Collections.unmodifiableMap(terms), ids, accessions.toArray(String[]::new), ancestors, relations);
+    }
+
+    private static void id(String accession, Map<String, Integer> ids, List<String> accessions) {
+        if (!ids.containsKey(accession)) {
+            ids.put(accession, accessions.size());
+            accessions.add(accession);
+        }
+    }
+
+    private static BitSet closeAncestors(int id, int[][] parents, BitSet[] ancestors, BitSet visiting) {
+        if (ancestors[id] != null) {
+            return ancestors[id];
+        }
+        BitSet closure = new BitSet();
+        if (!visiting.get(id)) {
+            visiting.set(id);
+            for (int parent : parents[id]) {
+                closure.set(parent);
+                closure.or(closeAncestors(parent, parents, ancestors, visiting));
+            }
+            visiting.clear(id);
+        }
+        ancestors[id] = closure;
+        return closure;
+    }
+
+    private static ValueType valueType(BitSet ancestors, Map<String, Integer> ids) {
+        for (ValueType type : ValueType.values()) {
+            Integer id = type.accession == null ? null : ids.get(type.accession);
+            if (id != null && ancestors.get(id)) {
+                return type;
+            }
+        }
+        return ValueType.UNKNOWN;
+    }
+
+    /**
+     * Returns all terms defined in the vocabulary, in file order.
+     *
+     * @return the terms by accession.
+     */
+    public Map<String, Term> getTerms() {
+        return terms;
+    }
+
+    /**
+     * Returns the term with the given accession.
+     *
+     * @param accession the term accession.
+     * @return the term, or an empty optional if the term is not defined.
+     */
+    public Optional<Term> getTerm(String accession) {
+        return Optional.ofNullable(accession == null ? null : terms.get(accession));
+    }
+
+    /**
+     * Returns true if the term is defined in the vocabulary.
+     *
+     * @param accession the term accession.
+     * @return true if the term is defined.
+     */
+    public boolean contains(String accession) {
+        return accession != null && terms.containsKey(accession);
+    }
+
+    /**
+     * Returns the value type of a metric term.
+     *
+     * @param accession the metric accession.
+     * @return the value type, {@link ValueType#UNKNOWN} for unknown terms or
+     * terms without a value type.
+     */
+    public ValueType getValueType(String accession) {
+        Term term = accession == null ? null : terms.get(accession);
+        return term == null ? ValueType.UNKNOWN : term.valueType();
+    }
+
+    /**
+     * Returns true if {@code ancestor} is a (transitive) parent of
+     * {@code accession} via {@code is_a}.
+     *
+     * @param accession the child accession.
+     * @param ancestor the ancestor accession.
+     * @return true if accession is_a ancestor.
+     */
+    public boolean isA(String accession, String ancestor) {
+        Integer child = accession == null ? null : ids.get(accession);
+        Integer parent = ancestor == null ? null : ids.get(ancestor);
+        return child != null && parent != null && ancestors[child].get(parent);
+    }
+
+    /**
+     * Returns true if the term is a QC metric, i.e. has {@link #QC_METRIC} as
+     * an ancestor.
+     *
+     * @param accession the accession.
+     * @return true if the term is a QC metric.
+     */
+    public boolean isMetric(String accession) {
+        return isA(accession, QC_METRIC);
+    }
+
+    /**
+     * Returns true if the term, or one of its ancestors, has a
+     * {@code has_relation} relationship to {@code target} or to one of the
+     * descendants of {@code target}.
+     *
+     * @param accession the accession.
+     * @param target the related accession.
+     * @return true if the relation exists.
+     */
+    public boolean hasRelation(String accession, String target) {
+        Integer source = accession == null ? null : ids.get(accession);
+        Integer related = target == null ? null : ids.get(target);
+        return source != null && related != null && relations[source].get(related);
+    }
+
+    /**
+     * Returns the accessions of all (transitive) ancestors of a term.
+     *
+     * @param accession the accession.
+     * @return the ancestor accessions.
+     */
+    public Set<String> getAncestors(String accession) {
+        Integer id = accession == null ? null : ids.get(accession);
+        return id == null ? Collections.emptySet() : toAccessions(ancestors[id]);
+    }
+
+    /**
+     * Returns the accessions of all terms related to a term via
+     * {@code has_relation}, including inherited relations.
+     *
+     * @param accession the accession.
+     * @return the related accessions.
+     */
+    public Set<String> getRelations(String accession) {
+        Integer id = accession == null ? null : ids.get(accession);
+        return id == null ? Collections.emptySet() : toAccessions(relations[id]);
+    }
+
+    private Set<String> toAccessions(BitSet bits) {
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            result.add(accessions[i]);
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    private static final class TermBuilder {
+
+        String accession;
+        String name;
+        String definition;
+        final List<String> isA = new ArrayList<>();
+        final Map<String, List<String>> relationships = new LinkedHashMap<>();
+        final List<String> synonyms = new ArrayList<>();
+    }
+}
@@ -16,6 +16,30 @@
 package org.lifstools.jmzqc;
 
 import com.fasterxml.jackson.annotation.*;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * Element containing the value and description of a QC metric defined in a
@@ -25,7 +49,19 @@ import com.fasterxml.jackson.annotation.*;
  * OPTIONAL value.
  *
  * Type of input file.
+ *
+ * When read from JSON, the value is decoded according to the value type of
+ * the accession in the {@link QcOntology}: n-tuples of numbers become
+ * {@code long[]} or {@code double[]}, tables become {@link MetricTable} and
+ * numeric matrices {@link MetricMatrix}. Single values, values of unknown
+ * accessions and values that do not have the shape of their value type are
+ * bound as generic JSON values ({@link Number}, {@link String},
+ * {@link List}, {@link Map}). Metrics compare values by their content, and a
+ * generic list or map value equals the typed value it is read back as, so
+ * metrics created with generic values are equal to their round trip.
  */
+@JsonDeserialize(using = QualityMetric.Deserializer.class)
+@JsonSerialize(using = QualityMetric.Serializer.class)
 public record QualityMetric(
         String accession,
         String description,
@@ -56,4 +92,490 @@ public record QualityMetric(
         }
         throw new ClassCastException(value.getClass().getName() + " cannot be cast to " + Number.class.getName());
     }
+
+    /**
+     * Returns the value as a columnar {@link MetricTable}. Values that were
+     * bound as generic maps are converted on each call.
+     *
+     * @return the table value.
+     * @throws ClassCastException if the value is not a table.
+     */
+    @JsonIgnore
+    public MetricTable asTable() {
+        if (value instanceof MetricTable table) {
+            return table;
+        }
+        if (value instanceof Map<?, ?> map) {
+            return MetricTable.of(map);
+        }
+        throw new ClassCastException(value.getClass().getName() + " cannot be cast to " + MetricTable.class.getName());
+    }
+
+    /**
+     * Returns the value as a dense {@link MetricMatrix}. Values that were
+     * bound as generic lists are converted on each call.
+     *
+     * @return the matrix value.
+     * @throws ClassCastException if the value is not a numeric matrix.
+     */
+    @JsonIgnore
+    public MetricMatrix asMatrix() {
+        if (value instanceof MetricMatrix matrix) {
+            return matrix;
+        }
+        if (value instanceof List<?> list) {
+            return MetricMatrix.of(list);
+        }
+        throw new ClassCastException(value.getClass().getName() + " cannot be cast to " + MetricMatrix.class.getName());
+    }
+
+    /**
+     * Returns the value as an array of numbers, e.g. for n-tuples. Values
+     * that were bound as generic lists are converted on each call.
+     *
+     * @return a copy of the values.
+     * @throws ClassCastException if the value is not a list of numbers.
+     */
+    @JsonIgnore
+    public double[] asDoubleArray() {
+        if (value instanceof double[] doubles) {
+            return doubles.clone();
+        }
+        if (value instanceof long[] longs) {
+            return Arrays.stream(longs).asDoubleStream().toArray();
+        }
+        if (value instanceof List<?> list) {
+            double[] doubles = new double[list.size()];
+            for (int i = 0; i < doubles.length; i++) {
+                if (!(list.get(i) instanceof Number number)) {
+                    throw new ClassCastException("Element " + i + " cannot be cast to " + Number.class.getName());
+                }
+                doubles[i] = number.doubleValue();
+            }
+            return doubles;
+        }
+        throw new ClassCastException(value.getClass().getName() + " cannot be cast to " + double[].class.getName());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof QualityMetric other
+                && Objects.equals(accession, other.accession)
+                && Objects.equals(description, other.description)
+                && Objects.equals(name, other.name)
+                && (Objects.deepEquals(value, other.value) || Objects.deepEquals(canonical(value), canonical(other.value)))
+                && Objects.equals(unit, other.unit);
+    }
+
+    @Override
+    public int hashCode() {
+        Object canonical = canonical(value);
+        int valueHash = canonical instanceof double[] doubles ? Arrays.hashCode(doubles)
+                : canonical instanceof long[] longs ? Arrays.hashCode(longs) : Objects.hashCode(canonical);
+        return Objects.hash(accession, description, name, unit) * 31 + valueHash;
+    }
+
+    /**
+     * Returns the value in the form the {@link Deserializer} binds it to, so
+     * that a metric created with a generic value equals the metric read back
+     * from its JSON: lists of {@link Long}, {@link Integer}, {@link Short} or
+     * {@link Byte} become {@code long[]}, lists of {@link Double} become
+     * {@code double[]}, lists of numeric rows become {@link MetricMatrix} and
+     * maps of lists become {@link MetricTable}. Other values are returned
+     * unchanged.
+     */
+    private static Object canonical(Object value) {
+        if (value instanceof Map<?, ?> map && map.values().stream().allMatch((column) -> column instanceof List<?>)) {
+            return MetricTable.of(map);
+        }
+        if (!(value instanceof List<?> list) || list.isEmpty()) {
+            return value;
+        }
+        if (list.stream().allMatch((element) -> element instanceof Long || element instanceof Integer || element instanceof Short || element instanceof Byte)) {
+            return list.stream().mapToLong((element) -> ((Number) element).longValue()).toArray();
+        }
+        if (list.stream().allMatch((element) -> element instanceof Double)) {
+            return list.stream().mapToDouble((element) -> (Double) element).toArray();
+        }
+        if (list.stream().allMatch((row) -> row instanceof List<?> cells && cells.stream().allMatch((cell) -> cell == null || cell instanceof Number))) {
+            try {
+                return MetricMatrix.of(list);
+            } catch (IllegalArgumentException ex) {
+                // rows of different lengths are not a matrix
+                return value;
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        String valueString = value instanceof double[] doubles ? Arrays.toString(doubles)
+                : value instanceof long[] longs ? Arrays.toString(longs) : String.valueOf(value);
+        return "QualityMetric[accession=" + accession + ", description=" + description + ", name=" + name + ", value=" + valueString + ", unit=" + unit + "]";
+    }
+
+    /**
+     * Reads a metric and decodes its value by the value type of its
+     * accession, directly from the token stream into compact holders. If the
+     * value precedes the accession, its tokens are buffered until the
+     * accession is known. The value types are taken from the
+     * {@link QcOntology} set as the reader attribute {@code QcOntology.class},
+     * or the default ontology.
+     */
+    static class Deserializer extends JsonDeserializer<QualityMetric> implements ResolvableDeserializer {
+
+        private static final String ACCESSION = "accession";
+        private static final String DESCRIPTION = "description";
+        private static final String NAME = "name";
+        private static final String VALUE = "value";
+        private static final String UNIT = "unit";
+
+        private static final List<Object> PROPERTIES = List.of(ACCESSION, DESCRIPTION, NAME, VALUE, UNIT);
+
+        private JsonDeserializer<Object> untyped;
+        private JsonDeserializer<Object> units;
+
+        @Override
+        public void resolve(DeserializationContext deserializationContext) throws JsonMappingException {
+            untyped = deserializationContext.findRootValueDeserializer(deserializationContext.constructType(Object.class));
+            units = deserializationContext.findRootValueDeserializer(deserializationContext.constructType(Unit.class));
+        }
+
+        @Override
+        public Collection<Object> getKnownPropertyNames() {
+            return PROPERTIES;
+        }
+
+        @Override
+        public QualityMetric deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JsonProcessingException {
+            JsonToken token = JsonCodecs.firstProperty(jsonParser);
+            if (token == null) {
+                return (QualityMetric) deserializationContext.handleUnexpectedToken(QualityMetric.class, jsonParser);
+            }
+            String accession = null;
+            String description = null;
+            String name = null;
+            Object value = null;
+            Unit unit = null;
+            TokenBuffer pending = null;
+            for (; token == JsonToken.FIELD_NAME; token = jsonParser.nextToken()) {
+                String field = jsonParser.currentName();
+                JsonToken valueToken = jsonParser.nextToken();
+                try {
+                    switch (field) {
+                        case ACCESSION ->
+                            accession = JsonCodecs.readString(jsonParser, deserializationContext);
+                        case DESCRIPTION ->
+                            description = JsonCodecs.readString(jsonParser, deserializationContext);
+                        case NAME ->
+                            name = JsonCodecs.readString(jsonParser, deserializationContext);
+                        case VALUE -> {
+                            if (accession == null && (valueToken == JsonToken.START_ARRAY || valueToken == JsonToken.START_OBJECT)) {
+                                pending = deserializationContext.bufferAsCopyOfValue(jsonParser);
+                            } else {
+                                value = readValue(jsonParser, deserializationContext, accession);
+                            }
+                        }
+                        case UNIT ->
+                            unit = valueToken == JsonToken.VALUE_NULL ? null : (Unit) units.deserialize(jsonParser, deserializationContext);
+                        default ->
+                            deserializationContext.handleUnknownProperty(jsonParser, this, QualityMetric.class, field);
+                    }
+                } catch (Exception ex) {
+                    throw JsonCodecs.wrap(ex, deserializationContext, QualityMetric.class, field);
+                }
+            }
+            if (pending != null) {
+                try ( JsonParser buffered = pending.asParserOnFirstToken()) {
+                    value = readValue(buffered, deserializationContext, accession);
+                }
+            }
+            return new QualityMetric(accession, description, name, value, unit);
+        }
+
+        private Object readValue(JsonParser jsonParser, DeserializationContext deserializationContext, String accession) throws IOException {
+            JsonToken token = jsonParser.currentToken();
+            if (token == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            QcOntology.ValueType valueType = token == JsonToken.START_ARRAY || token == JsonToken.START_OBJECT
+                    ? ontology(deserializationContext).getValueType(accession)
+                    : QcOntology.ValueType.UNKNOWN;
+            if (valueType == QcOntology.ValueType.N_TUPLE && token == JsonToken.START_ARRAY) {
+                return readTuple(jsonParser, deserializationContext);
+            }
+            if (valueType == QcOntology.ValueType.MATRIX && token == JsonToken.START_ARRAY) {
+                return readMatrix(jsonParser, deserializationContext);
+            }
+            if (valueType == QcOntology.ValueType.TABLE && token == JsonToken.START_OBJECT) {
+                return readTable(jsonParser, deserializationContext);
+            }
+            return untyped.deserialize(jsonParser, deserializationContext);
+        }
+
+        /**
+         * Returns the ontology set as attribute of the given context, or the
+         * default ontology.
+         */
+        private static QcOntology ontology(DeserializationContext deserializationContext) {
+            return deserializationContext.getAttribute(QcOntology.class) instanceof QcOntology ontology ? ontology : QcOntology.getDefault();
+        }
+
+        private Object readElement(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException {
+            return jsonParser.currentToken() == JsonToken.VALUE_NULL ? null : untyped.deserialize(jsonParser, deserializationContext);
+        }
+
+        /**
+         * Reads the rest of an array after a typed read had to fall back to
+         * a generic list.
+         */
+        private List<Object> readRemaining(JsonParser jsonParser, DeserializationContext deserializationContext, List<Object> list) throws IOException {
+            while (jsonParser.nextToken() != JsonToken.END_ARRAY) {
+                list.add(readElement(jsonParser, deserializationContext));
+            }
+            return list;
+        }
+
+        /**
+         * Reads an array of numbers into a {@code long[]}, or a
+         * {@code double[]} if it contains floating point numbers only. Arrays
+         * with other elements or mixed integral and floating point numbers
+         * are read as a list, so that they are written unchanged.
+         */
+        private Object readTuple(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException {
+            NumberArray numbers = new NumberArray();
+            JsonToken token;
+            while ((token = jsonParser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == JsonToken.VALUE_NULL || !numbers.add(jsonParser, token)) {
+                    List<Object> list = numbers.toList(0, numbers.size());
+                    list.add(readElement(jsonParser, deserializationContext));
+                    return readRemaining(jsonParser, deserializationContext, list);
+                }
+            }
+            return numbers.isMixed() ? numbers.toList(0, numbers.size()) : numbers.toArray();
+        }
+
+        /**
+         * Reads an array of equally long arrays of numbers or nulls into a
+         * {@link MetricMatrix}. Other arrays and matrices with mixed integral
+         * and floating point numbers are read as a list.
+         */
+        private Object readMatrix(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException {
+            NumberArray cells = new NumberArray();
+            int rows = 0;
+            int columns = -1;
+            JsonToken token;
+            while ((token = jsonParser.nextToken()) == JsonToken.START_ARRAY) {
+                int rowStart = cells.size();
+                while ((token = jsonParser.nextToken()) != JsonToken.END_ARRAY) {
+                    if (token == JsonToken.VALUE_NULL) {
+                        cells.addNull();
+                    } else if (!cells.add(jsonParser, token)) {
+                        List<Object> list = cells.toRows(rows, columns);
+                        List<Object> row = cells.toList(rowStart, cells.size());
+                        row.add(readElement(jsonParser, deserializationContext));
+                        list.add(readRemaining(jsonParser, deserializationContext, row));
+                        return readRemaining(jsonParser, deserializationContext, list);
+                    }
+                }
+                int length = cells.size() - rowStart;
+                if (columns >= 0 && length != columns) {
+                    List<Object> list = cells.toRows(rows, columns);
+                    list.add(cells.toList(rowStart, cells.size()));
+                    return readRemaining(jsonParser, deserializationContext, list);
+                }
+                columns = length;
+                rows++;
+            }
+            if (token != JsonToken.END_ARRAY) {
+                List<Object> list = cells.toRows(rows, columns);
+                list.add(readElement(jsonParser, deserializationContext));
+                return readRemaining(jsonParser, deserializationContext, list);
+            }
+            if (cells.isMixed()) {
+                return cells.toRows(rows, columns);
+            }
+            return cells.toMatrix(rows, Math.max(columns, 0));
+        }
+
+        /**
+         * Reads an object of arrays into a {@link MetricTable}. Objects with
+         * other members are read as a map, in which the columns read before
+         * the first other member hold the values of their
+         * {@link MetricTable.Column}.
+         */
+        private Object readTable(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException {
+            List<String> names = new ArrayList<>();
+            List<MetricTable.Column> columns = new ArrayList<>();
+            while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+                String column = jsonParser.currentName();
+                if (jsonParser.nextToken() != JsonToken.START_ARRAY) {
+                    Map<String, Object> map = new LinkedHashMap<>();
+                    for (int i = 0; i < names.size(); i++) {
+                        List<Object> values = new ArrayList<>(columns.get(i).size());
+                        for (int row = 0; row < columns.get(i).size(); row++) {
+                            values.add(NumberArray.box(columns.get(i).get(row)));
+                        }
+                        map.put(names.get(i), values);
+                    }
+                    map.put(column, readElement(jsonParser, deserializationContext));
+                    while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+                        String next = jsonParser.currentName();
+                        jsonParser.nextToken();
+                        map.put(next, readElement(jsonParser, deserializationContext));
+                    }
+                    return map;
+                }
+                names.add(column);
+                columns.add(MetricTable.Deserializer.readColumn(jsonParser));
+            }
+            return new MetricTable(names.toArray(String[]::new), columns.toArray(MetricTable.Column[]::new));
+        }
+    }
+
+    static class Serializer extends JsonSerializer<QualityMetric> {
+
+        private static final SerializableString ACCESSION = new SerializedString("accession");
+        private static final SerializableString DESCRIPTION = new SerializedString("description");
+        private static final SerializableString NAME = new SerializedString("name");
+        private static final SerializableString VALUE = new SerializedString("value");
+        private static final SerializableString UNIT = new SerializedString("unit");
+
+        @Override
+        public void serialize(QualityMetric metric, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
+            jsonGenerator.writeStartObject(metric);
+            JsonCodecs.writeString(jsonGenerator, ACCESSION, metric.accession);
+            JsonCodecs.writeString(jsonGenerator, DESCRIPTION, metric.description);
+            JsonCodecs.writeString(jsonGenerator, NAME, metric.name);
+            JsonCodecs.writeValue(jsonGenerator, serializerProvider, VALUE, metric.value);
+            JsonCodecs.writeValue(jsonGenerator, serializerProvider, UNIT, metric.unit);
+            jsonGenerator.writeEndObject();
+        }
+    }
+
+    /**
+     * Growable array of numbers that keeps integral values as {@code long}
+     * until the first floating point number is added. Remembers which
+     * elements were integral or null, so that a generic list equal to the one
+     * Jackson would have bound can be recreated.
+     */
+    private static final class NumberArray {
+
+        private long[] longs = new long[16];
+        private double[] doubles;
+        private final BitSet floats = new BitSet();
+        private final BitSet nulls = new BitSet();
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Adds the number at the current token.
+         *
+         * @return false if the token is not a number that fits into a long
+         * or double.
+         */
+        boolean add(JsonParser jsonParser, JsonToken token) throws IOException {
+            if (token == JsonToken.VALUE_NUMBER_INT && jsonParser.getNumberType() != JsonParser.NumberType.BIG_INTEGER) {
+                long value = jsonParser.getLongValue();
+                ensureCapacity();
+                longs[size] = value;
+                if (doubles != null) {
+                    doubles[size] = value;
+                }
+                size++;
+                return true;
+            }
+            // buffered tokens report BIG_DECIMAL for all floats, but keep doubles
+            if (token == JsonToken.VALUE_NUMBER_FLOAT
+                    && (jsonParser.getNumberType() != JsonParser.NumberType.BIG_DECIMAL || jsonParser.getNumberValue() instanceof Double)) {
+                double value = jsonParser.getDoubleValue();
+                if (doubles == null) {
+                    doubles = new double[longs.length];
+                    for (int i = 0; i < size; i++) {
+                        doubles[i] = nulls.get(i) ? Double.NaN : longs[i];
+                    }
+                }
+                ensureCapacity();
+                doubles[size] = value;
+                floats.set(size++);
+                return true;
+            }
+            return false;
+        }
+
+        void addNull() {
+            ensureCapacity();
+            if (doubles != null) {
+                doubles[size] = Double.NaN;
+            }
+            nulls.set(size++);
+        }
+
+        private void ensureCapacity() {
+            if (size == longs.length) {
+                longs = Arrays.copyOf(longs, size + (size >> 1));
+                if (doubles != null) {
+                    doubles = Arrays.copyOf(doubles, longs.length);
+                }
+            }
+        }
+
+        /**
+         * Returns the numbers as {@code long[]} if all are integral, as
+         * {@code double[]} otherwise.
+         */
+        Object toArray() {
+            return doubles == null ? Arrays.copyOf(longs, size) : Arrays.copyOf(doubles, size);
+        }
+
+        /**
+         * Returns true, if both integral and floating point numbers were
+         * added.
+         */
+        boolean isMixed() {
+            return doubles != null && floats.cardinality() + nulls.cardinality() < size;
+        }
+
+        /**
+         * Returns the numbers as an integral matrix if all are integral, as
+         * a floating point matrix with NaN for nulls otherwise.
+         */
+        MetricMatrix toMatrix(int rows, int columns) {
+            if (doubles != null) {
+                return new MetricMatrix(rows, columns, Arrays.copyOf(doubles, size));
+            }
+            return new MetricMatrix(rows, columns, Arrays.copyOf(longs, size), nulls.get(0, size));
+        }
+
+        List<Object> toList(int from, int to) {
+            List<Object> list = new ArrayList<>(to - from + 1);
+            for (int i = from; i < to; i++) {
+                list.add(nulls.get(i) ? null : floats.get(i) ? (Object) doubles[i] : box(longs[i]));
+            }
+            return list;
+        }
+
+        List<Object> toRows(int rows, int columns) {
+            List<Object> list = new ArrayList<>(rows + 1);
+            for (int i = 0; i < rows; i++) {
+                list.add(toList(i * columns, (i + 1) * columns));
+            }
+            return list;
+        }
+
+        /**
+         * Boxes integral values like Jackson does for untyped values, as
+         * Integer if they fit, as Long otherwise.
+         */
+        static Object box(Object value) {
+            if (value instanceof Long number && number == number.intValue()) {
+                return number.intValue();
+            }
+            return value;
+        }
+    }
 }
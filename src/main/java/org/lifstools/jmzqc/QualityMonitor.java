@@ -0,0 +1,429 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Longitudinal quality control of the single numeric metrics of runs. The
+ * monitor consumes run qualities in the order of their creation date and
+ * compares every value with the baseline of all earlier values of the same
+ * accession, using three control rules:
+ * <ul>
+ * <li>{@link Rule#SHEWHART}: the value is outside of the mean plus or minus
+ * {@code shewhartLimit} standard deviations.</li>
+ * <li>{@link Rule#EWMA}: the exponentially weighted moving average including
+ * the value is outside of its control limits of {@code ewmaLimit} standard
+ * deviations of the EWMA statistic.</li>
+ * <li>{@link Rule#ROBUST_Z}: the absolute robust z-score of the value, based
+ * on streaming estimates of the median and the median absolute deviation,
+ * exceeds {@code robustZLimit}.</li>
+ * </ul>
+ *
+ * The state per accession has a constant size and is updated in constant
+ * time, so the history never needs to be rescanned. Values are only
+ * evaluated once {@code warmup} earlier values of their accession have been
+ * seen, and every value updates the baseline after it has been evaluated.
+ * The state can be written to a snapshot file and restored from it:
+ *
+ * <pre>
+ * QualityMonitor monitor = QualityMonitor.restore(snapshot)
+ *         .orElseGet(() -&gt; new QualityMonitor(QualityMonitor.Settings.defaults()));
+ * List&lt;QualityMonitor.Outlier&gt; outliers = monitor.observe(mzQC);
+ * monitor.snapshot(snapshot);
+ * </pre>
+ *
+ * Instances are not thread-safe.
+ */
+public final class QualityMonitor {
+
+    /**
+     * Version of the snapshot format.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * The control rule that flagged a value.
+     */
+    public enum Rule {
+        SHEWHART, EWMA, ROBUST_Z
+    }
+
+    /**
+     * Settings of the control rules.
+     *
+     * @param lambda the weight of a new value in the EWMA, between 0
+     * (exclusive) and 1 (inclusive).
+     * @param ewmaLimit the width of the EWMA control limits in standard
+     * deviations of the EWMA statistic.
+     * @param shewhartLimit the width of the Shewhart control limits in
+     * standard deviations.
+     * @param robustZLimit the maximum absolute robust z-score.
+     * @param medianRate the relative step size of the streaming median and MAD
+     * estimates, between 0 (exclusive) and 1 (inclusive).
+     * @param warmup the number of values per accession before values are
+     * evaluated, at least 2.
+     */
+    public record Settings(
+            double lambda,
+            double ewmaLimit,
+            double shewhartLimit,
+            double robustZLimit,
+            double medianRate,
+            int warmup) {
+
+        public Settings {
+            if (!(lambda > 0 && lambda <= 1)) {
+                throw new IllegalArgumentException("lambda must be in (0, 1], was " + lambda);
+            }
+            if (!(medianRate > 0 && medianRate <= 1)) {
+                throw new IllegalArgumentException("medianRate must be in (0, 1], was " + medianRate);
+            }
+            if (warmup < 2) {
+                throw new IllegalArgumentException("warmup must be at least 2, was " + warmup);
+            }
+        }
+
+        /**
+         * Returns the default settings: lambda 0.2, EWMA limits of 3 standard
+         * deviations, Shewhart limits of 3 standard deviations, a robust z
+         * limit of 3.5, a median rate of 0.05 and a warmup of 5 values.
+         *
+         * @return the default settings.
+         */
+        public static Settings defaults() {
+            return new Settings(0.2d, 3.0d, 3.0d, 3.5d, 0.05d, 5);
+        }
+
+        public Settings withLambda(double lambda) {
+            return new Settings(lambda, ewmaLimit, shewhartLimit, robustZLimit, medianRate, warmup);
+        }
+
+        public Settings withEwmaLimit(double ewmaLimit) {
+            return new Settings(lambda, ewmaLimit, shewhartLimit, robustZLimit, medianRate, warmup);
+        }
+
+        public Settings withShewhartLimit(double shewhartLimit) {
+            return new Settings(lambda, ewmaLimit, shewhartLimit, robustZLimit, medianRate, warmup);
+        }
+
+        public Settings withRobustZLimit(double robustZLimit) {
+            return new Settings(lambda, ewmaLimit, shewhartLimit, robustZLimit, medianRate, warmup);
+        }
+
+        public Settings withMedianRate(double medianRate) {
+            return new Settings(lambda, ewmaLimit, shewhartLimit, robustZLimit, medianRate, warmup);
+        }
+
+        public Settings withWarmup(int warmup) {
+            return new Settings(lambda, ewmaLimit, shewhartLimit, robustZLimit, medianRate, warmup);
+        }
+    }
+
+    /**
+     * A value that violated a control rule.
+     *
+     * @param runLabel the metadata label of the run, may be null.
+     * @param creationDate the creation date of the run, may be null.
+     * @param accession the cv accession of the metric.
+     * @param value the value of the metric.
+     * @param rule the violated rule.
+     * @param statistic the value of the rule statistic, the value itself for
+     * the Shewhart rule, the EWMA or the robust z-score.
+     * @param lower the lower control limit.
+     * @param upper the upper control limit.
+     */
+    public record Outlier(
+            String runLabel,
+            OffsetDateTime creationDate,
+            String accession,
+            double value,
+            Rule rule,
+            double statistic,
+            double lower,
+            double upper) {
+
+    }
+
+    /**
+     * Running state of one accession.
+     *
+     * @param count the number of values seen.
+     * @param mean the running mean.
+     * @param m2 the running sum of squared deviations from the mean.
+     * @param ewma the exponentially weighted moving average.
+     * @param decay {@code (1 - lambda)^(2 * (count - 1))}, for the EWMA
+     * limits.
+     * @param median the streaming median estimate.
+     * @param mad the streaming MAD estimate.
+     */
+    public record AccessionState(
+            long count,
+            double mean,
+            double m2,
+            double ewma,
+            double decay,
+            double median,
+            double mad) {
+
+        static AccessionState first(double value) {
+            return new AccessionState(1, value, 0, value, 1, value, 0);
+        }
+
+        /**
+         * Returns the sample standard deviation of the values seen.
+         *
+         * @return the standard deviation, or NaN for less than two values.
+         */
+        public double standardDeviation() {
+            return count > 1 ? Math.sqrt(m2 / (count - 1)) : Double.NaN;
+        }
+
+        AccessionState update(double value, Settings settings) {
+            long n = count + 1;
+            double delta = value - mean;
+            double nextMean = mean + delta / n;
+            double nextM2 = m2 + delta * (value - nextMean);
+            double nextEwma = settings.lambda() * value + (1 - settings.lambda()) * ewma;
+            double nextDecay = decay * (1 - settings.lambda()) * (1 - settings.lambda());
+            // frugal streaming estimates: move a step proportional to the
+            // current spread towards the new value
+            double deviation = Math.abs(value - median);
+            double nextMad = mad == 0 ? deviation : mad + settings.medianRate() * mad * Math.signum(deviation - mad);
+            double step = settings.medianRate() * (mad == 0 ? deviation : mad);
+            double nextMedian = median + Math.min(step, deviation) * Math.signum(value - median);
+            return new AccessionState(n, nextMean, nextM2, nextEwma, nextDecay, nextMedian, nextMad);
+        }
+    }
+
+    /**
+     * Serialized form of the monitor.
+     */
+    record Snapshot(
+            int version,
+            Settings settings,
+            OffsetDateTime lastCreationDate,
+            long observations,
+            Map<String, AccessionState> states) {
+
+    }
+
+    private final Settings settings;
+    private final Map<String, AccessionState> states;
+    private OffsetDateTime lastCreationDate;
+    private long observations;
+
+    /**
+     * Create a new monitor without history.
+     *
+     * @param settings the settings of the control rules.
+     */
+    public QualityMonitor(Settings settings) {
+        this(settings, null, 0, new LinkedHashMap<>());
+    }
+
+    private QualityMonitor(Settings settings, OffsetDateTime lastCreationDate, long observations, Map<String, AccessionState> states) {
+        this.settings = settings;
+        this.lastCreationDate = lastCreationDate;
+        this.observations = observations;
+        this.states = states;
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Returns the number of runs observed so far.
+     *
+     * @return the number of observed runs.
+     */
+    public long getObservations() {
+        return observations;
+    }
+
+    /**
+     * Returns the creation date of the latest observed run.
+     *
+     * @return the creation date, may be null.
+     */
+    public OffsetDateTime getLastCreationDate() {
+        return lastCreationDate;
+    }
+
+    /**
+     * Returns the running state of the given accession.
+     *
+     * @param accession the cv accession.
+     * @return the state, or null if no value was seen for the accession.
+     */
+    public AccessionState getState(String accession) {
+        return states.get(accession);
+    }
+
+    /**
+     * Returns the running states of all accessions seen so far.
+     *
+     * @return an unmodifiable map of states by accession.
+     */
+    public Map<String, AccessionState> getStates() {
+        return Collections.unmodifiableMap(states);
+    }
+
+    /**
+     * Observe all run qualities of the given document, ordered by the
+     * completion time of their first input file ({@value MzQCMerger#COMPLETION_TIME})
+     * or, if absent, by the creation date of the document.
+     *
+     * @param mzQC the mzQC document.
+     * @return the outliers of all runs, in observation order.
+     * @throws IllegalArgumentException if a run was created before the
+     * latest observed run.
+     */
+    public List<Outlier> observe(MzQC mzQC) {
+        record Dated(BaseQuality run, OffsetDateTime creationDate) {
+
+        }
+        List<Dated> runs = new ArrayList<>(mzQC.runQualities().size());
+        for (BaseQuality run : mzQC.runQualities()) {
+            OffsetDateTime creationDate = MzQCMerger.completionTime(run);
+            runs.add(new Dated(run, creationDate == null ? mzQC.creationDate() : creationDate));
+        }
+        runs.sort(Comparator.comparing(Dated::creationDate, Comparator.nullsFirst(Comparator.naturalOrder())));
+        List<Outlier> outliers = new ArrayList<>();
+        for (Dated dated : runs) {
+            outliers.addAll(observe(dated.run(), dated.creationDate()));
+        }
+        return outliers;
+    }
+
+    /**
+     * Observe the single numeric metrics of one run. Each value is evaluated
+     * against the state of its accession and then added to it. Only the first
+     * metric per accession is used, non-numeric and NaN values are ignored.
+     *
+     * @param run the run quality.
+     * @param creationDate the creation date of the run, may be null if
+     * unknown, in which case it is not checked.
+     * @return the outliers of the run.
+     * @throws IllegalArgumentException if the run was created before the
+     * latest observed run.
+     */
+    public List<Outlier> observe(BaseQuality run, OffsetDateTime creationDate) {
+        if (creationDate != null) {
+            if (lastCreationDate != null && creationDate.isBefore(lastCreationDate)) {
+                throw new IllegalArgumentException("Run created at " + creationDate + " is older than the latest observed run created at " + lastCreationDate);
+            }
+            lastCreationDate = creationDate;
+        }
+        String label = run.metadata() == null ? null : run.metadata().label();
+        List<Outlier> outliers = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (QualityMetric metric : run.qualityMetrics()) {
+            if (!(metric.value() instanceof Number number) || metric.accession() == null
+                    || Double.isNaN(number.doubleValue()) || !seen.add(metric.accession())) {
+                continue;
+            }
+            double value = number.doubleValue();
+            AccessionState state = states.get(metric.accession());
+            if (state == null) {
+                states.put(metric.accession(), AccessionState.first(value));
+                continue;
+            }
+            if (state.count() >= settings.warmup()) {
+                evaluate(label, creationDate, metric.accession(), value, state, outliers);
+            }
+            states.put(metric.accession(), state.update(value, settings));
+        }
+        observations++;
+        return outliers;
+    }
+
+    private void evaluate(String label, OffsetDateTime creationDate, String accession, double value, AccessionState state, List<Outlier> outliers) {
+        double sd = state.standardDeviation();
+        double shewhart = settings.shewhartLimit() * sd;
+        if (Math.abs(value - state.mean()) > shewhart) {
+            outliers.add(new Outlier(label, creationDate, accession, value, Rule.SHEWHART, value, state.mean() - shewhart, state.mean() + shewhart));
+        }
+        double lambda = settings.lambda();
+        double ewma = lambda * value + (1 - lambda) * state.ewma();
+        double decay = state.decay() * (1 - lambda) * (1 - lambda);
+        double ewmaWidth = settings.ewmaLimit() * sd * Math.sqrt(lambda / (2 - lambda) * (1 - decay));
+        if (Math.abs(ewma - state.mean()) > ewmaWidth) {
+            outliers.add(new Outlier(label, creationDate, accession, value, Rule.EWMA, ewma, state.mean() - ewmaWidth, state.mean() + ewmaWidth));
+        }
+        double scale = MetricCube.MAD_SCALE * state.mad();
+        if (scale > 0) {
+            double z = (value - state.median()) / scale;
+            if (Math.abs(z) > settings.robustZLimit()) {
+                outliers.add(new Outlier(label, creationDate, accession, value, Rule.ROBUST_Z, z, -settings.robustZLimit(), settings.robustZLimit()));
+            }
+        }
+    }
+
+    /**
+     * Write the state of this monitor to the given JSON file. The file is
+     * gzip compressed if its name ends in {@code .gz}.
+     *
+     * @param file the snapshot file.
+     * @throws IOException if the file can not be written.
+     */
+    public void snapshot(Path file) throws IOException {
+        try ( OutputStream out = Converter.openOutputStream(file)) {
+            Converter.getObjectMapper().writeValue(out, new Snapshot(FORMAT_VERSION, settings, lastCreationDate, observations, states));
+        }
+    }
+
+    /**
+     * Restore a monitor from the given snapshot file.
+     *
+     * @param file the snapshot file.
+     * @return the monitor, or an empty optional if the file does not exist.
+     * @throws IOException if the file can not be read or has an unsupported
+     * format version.
+     */
+    public static Optional<QualityMonitor> restore(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        Snapshot snapshot;
+        try ( InputStream in = Files.newInputStream(file);  var parser = Converter.createParser(in)) {
+            snapshot = Converter.getObjectMapper().readValue(parser, Snapshot.class);
+        }
+        if (snapshot == null || snapshot.version() != FORMAT_VERSION) {
+            throw new IOException("Unsupported monitor snapshot format in " + file);
+        }
+        Map<String, AccessionState> states = new LinkedHashMap<>();
+        if (snapshot.states() != null) {
+            states.putAll(snapshot.states());
+        }
+        return Optional.of(new QualityMonitor(snapshot.settings(), snapshot.lastCreationDate(), snapshot.observations(), states));
+    }
+}
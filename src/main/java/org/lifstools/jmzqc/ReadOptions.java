@@ -0,0 +1,53 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+/**
+ * Options for {@link Converter#read(java.nio.file.Path, ReadOptions)}.
+ *
+ * @param validate if true, validate the document against the mzQC JSON schema.
+ * @param bindInvalid if true, bind the document to {@link MzQC} even if
+ * validation produced messages.
+ * @param validateSemantics if true, also check the bound document against the
+ * QC controlled vocabulary with the {@link SemanticValidator}.
+ */
+public record ReadOptions(
+        boolean validate,
+        boolean bindInvalid,
+        boolean validateSemantics) {
+
+    /**
+     * Returns the default options: validate the document against the schema
+     * and bind it, even if it is invalid. Semantic validation is disabled.
+     *
+     * @return the default options.
+     */
+    public static ReadOptions defaults() {
+        return new ReadOptions(true, true, false);
+    }
+
+    public ReadOptions withValidate(boolean validate) {
+        return new ReadOptions(validate, bindInvalid, validateSemantics);
+    }
+
+    public ReadOptions withBindInvalid(boolean bindInvalid) {
+        return new ReadOptions(validate, bindInvalid, validateSemantics);
+    }
+
+    public ReadOptions withValidateSemantics(boolean validateSemantics) {
+        return new ReadOptions(validate, bindInvalid, validateSemantics);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.networknt.schema.ValidationMessage;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Result of reading and validating an mzQC document in a single pass.
+ *
+ * @param mzQC the bound mzQC object, or null if the document was invalid and
+ * could not be bound.
+ * @param validationMessages the validation messages, empty if the document is
+ * valid or was not validated.
+ */
+public record ReadResult(
+        MzQC mzQC,
+        Set<ValidationMessage> validationMessages) {
+
+    public ReadResult  {
+        if (validationMessages == null) {
+            validationMessages = Collections.emptySet();
+        }
+    }
+
+    /**
+     * Returns true, if no validation messages were produced.
+     *
+     * @return true if the document is valid.
+     */
+    public boolean isValid() {
+        return validationMessages.isEmpty();
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Selects run qualities by their metadata and metric values. All given
+ * criteria must hold for a run to match:
+ * <ul>
+ * <li>its metadata label is one of the given labels,</li>
+ * <li>the name of one of its input files is one of the given names,</li>
+ * <li>its creation date lies within the given range, where the creation date
+ * of a run is the completion time ({@value MzQCMerger#COMPLETION_TIME}) of its
+ * first input file, or the creation date of the document if that is
+ * absent,</li>
+ * <li>for every value range, it has a metric with that accession whose value
+ * is a number within the range. Other metrics with that accession and values
+ * outside of the range do not matter.</li>
+ * </ul>
+ * Empty sets, null dates and an empty list of value ranges do not restrict
+ * the runs.
+ *
+ * A {@link MzQCReader} evaluates the query while parsing: runs whose metadata
+ * does not match are skipped at the token level as soon as the metadata is
+ * read, and runs that do not match are never bound to {@link BaseQuality}
+ * objects. The
+ * {@link MzQCSearch} applies a query to many files in parallel.
+ *
+ * <pre>
+ * RunQuery query = RunQuery.all()
+ *         .withCreationDate(OffsetDateTime.now().minusDays(90), null)
+ *         .withValue("MS:4000059", 0, 1000);
+ * </pre>
+ *
+ * @param labels the metadata labels of the runs to select.
+ * @param inputFileNames the input file names of the runs to select.
+ * @param createdFrom the earliest creation date, inclusive, or null.
+ * @param createdTo the latest creation date, exclusive, or null.
+ * @param valueRanges the ranges that metric values must lie in.
+ */
+public record RunQuery(
+        Set<String> labels,
+        Set<String> inputFileNames,
+        OffsetDateTime createdFrom,
+        OffsetDateTime createdTo,
+        List<ValueRange> valueRanges) {
+
+    /**
+     * Closed range of the numeric value of the metric with the given
+     * accession.
+     *
+     * @param accession the accession of the metric.
+     * @param min the smallest accepted value.
+     * @param max the largest accepted value.
+     */
+    public record ValueRange(String accession, double min, double max) {
+
+        public ValueRange {
+            if (accession == null) {
+                throw new IllegalArgumentException("Accession of a value range must not be null!");
+            }
+            if (!(min <= max)) {
+                throw new IllegalArgumentException("Invalid value range [" + min + ", " + max + "] for " + accession);
+            }
+        }
+
+        /**
+         * Returns true, if the given value lies within this range.
+         *
+         * @param value the value, NaN if the metric has no numeric value.
+         * @return true if min &lt;= value &lt;= max.
+         */
+        public boolean contains(double value) {
+            return value >= min && value <= max;
+        }
+    }
+
+    public RunQuery {
+        labels = labels == null ? Collections.emptySet() : Set.copyOf(labels);
+        inputFileNames = inputFileNames == null ? Collections.emptySet() : Set.copyOf(inputFileNames);
+        valueRanges = valueRanges == null ? Collections.emptyList() : List.copyOf(valueRanges);
+        if (createdFrom != null && createdTo != null && createdTo.isBefore(createdFrom)) {
+            throw new IllegalArgumentException("Creation date range ends before it starts: " + createdFrom + " - " + createdTo);
+        }
+    }
+
+    /**
+     * Returns the query that selects all runs.
+     *
+     * @return the query selecting everything.
+     */
+    public static RunQuery all() {
+        return new RunQuery(null, null, null, null, null);
+    }
+
+    public RunQuery withLabels(String... labels) {
+        return new RunQuery(Set.of(labels), inputFileNames, createdFrom, createdTo, valueRanges);
+    }
+
+    public RunQuery withInputFileNames(String... inputFileNames) {
+        return new RunQuery(labels, Set.of(inputFileNames), createdFrom, createdTo, valueRanges);
+    }
+
+    /**
+     * Returns a copy of this query for runs created within the given range.
+     *
+     * @param from the earliest creation date, inclusive, or null.
+     * @param to the latest creation date, exclusive, or null.
+     * @return the new query.
+     */
+    public RunQuery withCreationDate(OffsetDateTime from, OffsetDateTime to) {
+        return new RunQuery(labels, inputFileNames, from, to, valueRanges);
+    }
+
+    /**
+     * Returns a copy of this query that additionally requires the value of
+     * the metric with the given accession to lie within the given range.
+     *
+     * @param accession the accession of the metric.
+     * @param min the smallest accepted value.
+     * @param max the largest accepted value.
+     * @return the new query.
+     */
+    public RunQuery withValue(String accession, double min, double max) {
+        List<ValueRange> ranges = new ArrayList<>(valueRanges);
+        ranges.add(new ValueRange(accession, min, max));
+        return new RunQuery(labels, inputFileNames, createdFrom, createdTo, ranges);
+    }
+
+    /**
+     * Returns true, if this query selects all runs.
+     *
+     * @return true if no criteria are given.
+     */
+    public boolean isAll() {
+        return labels.isEmpty() && inputFileNames.isEmpty() && createdFrom == null && createdTo == null && valueRanges.isEmpty();
+    }
+
+    /**
+     * Returns true, if the value of metrics with the given accession is
+     * restricted by this query.
+     *
+     * @param accession the accession of the metric.
+     * @return true if a value range for the accession is given.
+     */
+    public boolean constrains(String accession) {
+        for (ValueRange range : valueRanges) {
+            if (range.accession().equals(accession)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true, if the given metadata matches the label, input file name
+     * and creation date criteria of this query.
+     *
+     * @param metadata the metadata of the run, may be null.
+     * @param documentCreationDate the creation date of the document, used if
+     * the run has no completion time, may be null.
+     * @return true if the metadata matches.
+     */
+    public boolean matchesMetadata(Metadata metadata, OffsetDateTime documentCreationDate) {
+        if (!labels.isEmpty() && (metadata == null || metadata.label() == null || !labels.contains(metadata.label()))) {
+            return false;
+        }
+        if (!inputFileNames.isEmpty() && (metadata == null || metadata.inputFiles().stream().noneMatch((f) -> f.name() != null && inputFileNames.contains(f.name())))) {
+            return false;
+        }
+        if (createdFrom != null || createdTo != null) {
+            OffsetDateTime creationDate = MzQCMerger.completionTime(metadata);
+            if (creationDate == null) {
+                creationDate = documentCreationDate;
+            }
+            if (creationDate == null
+                    || (createdFrom != null && creationDate.isBefore(createdFrom))
+                    || (createdTo != null && !creationDate.isBefore(createdTo))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true, if the given run matches all criteria of this query.
+     *
+     * @param run the run quality.
+     * @param documentCreationDate the creation date of the document, used if
+     * the run has no completion time, may be null.
+     * @return true if the run matches.
+     */
+    public boolean matches(BaseQuality run, OffsetDateTime documentCreationDate) {
+        Evaluation evaluation = evaluate(documentCreationDate);
+        evaluation.metadata(run.metadata());
+        for (QualityMetric metric : run.qualityMetrics()) {
+            if (metric.accession() != null && constrains(metric.accession())) {
+                evaluation.metric(metric.accession(), metric.value() instanceof Number number ? number.doubleValue() : Double.NaN);
+            }
+        }
+        return evaluation.accepts();
+    }
+
+    /**
+     * Start the evaluation of this query for one run, whose metadata and
+     * metrics are passed in as they are read.
+     */
+    Evaluation evaluate(OffsetDateTime documentCreationDate) {
+        return new Evaluation(documentCreationDate);
+    }
+
+    /**
+     * Incremental evaluation of a query for one run. Once the metadata
+     * criteria fail, the run is rejected and the rest of it can be skipped.
+     * The value ranges can only be decided after all metrics have been read.
+     */
+    final class Evaluation {
+
+        private final OffsetDateTime documentCreationDate;
+        private final BitSet satisfied = new BitSet();
+        private boolean metadataSeen;
+        private boolean rejected;
+
+        private Evaluation(OffsetDateTime documentCreationDate) {
+            this.documentCreationDate = documentCreationDate;
+        }
+
+        /**
+         * Evaluates the metadata criteria.
+         *
+         * @return false if the run is rejected.
+         */
+        boolean metadata(Metadata metadata) {
+            metadataSeen = true;
+            rejected |= !matchesMetadata(metadata, documentCreationDate);
+            return !rejected;
+        }
+
+        /**
+         * Marks the value ranges for the given accession that contain the
+         * value as satisfied.
+         *
+         * @param value the value of the metric, NaN if it is not a number.
+         */
+        void metric(String accession, double value) {
+            for (int i = 0; i < valueRanges.size(); i++) {
+                ValueRange range = valueRanges.get(i);
+                if (range.accession().equals(accession) && range.contains(value)) {
+                    satisfied.set(i);
+                }
+            }
+        }
+
+        /**
+         * Returns true, if the run matches after all of it has been read.
+         */
+        boolean accepts() {
+            if (!metadataSeen) {
+                metadata(null);
+            }
+            return !rejected && satisfied.cardinality() == valueRanges.size();
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.networknt.schema.ValidationMessage;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Validates the quality metrics of an mzQC document against the QC controlled
+ * vocabulary, beyond the structural checks of the JSON schema. Each metric is
+ * checked with a constant number of lookups in the precomputed
+ * {@link QcOntology}, so validation is linear in the number of metrics.
+ *
+ * The following checks are performed:
+ * <ul>
+ * <li>accessions in the QC namespace (MS:4000000 to MS:4999999) must be
+ * defined in the vocabulary,</li>
+ * <li>known accessions must be QC metrics,</li>
+ * <li>the value must match the value type of the metric (single value,
+ * n-tuple, table or matrix),</li>
+ * <li>table values must contain all required columns of the metric,</li>
+ * <li>units given for a metric must be units declared for the metric, or for
+ * one of the columns of a table metric,</li>
+ * <li>if units are given for a table metric, they must include a unit for
+ * each column that declares units.</li>
+ * </ul>
+ * A missing unit is not reported, since metrics such as counts are commonly
+ * written without one.
+ *
+ * Messages are reported as {@link ValidationMessage}s, with paths in the same
+ * notation as the JSON schema validation messages.
+ */
+public class SemanticValidator {
+
+    /**
+     * Type of messages for accessions in the QC namespace that are not
+     * defined in the vocabulary.
+     */
+    public static final String TYPE_UNKNOWN_TERM = "cvUnknownTerm";
+    /**
+     * Type of messages for accessions that are not QC metrics.
+     */
+    public static final String TYPE_NOT_A_METRIC = "cvNotAMetric";
+    /**
+     * Type of messages for values that do not match the value type of the
+     * metric.
+     */
+    public static final String TYPE_VALUE_TYPE = "cvValueType";
+    /**
+     * Type of messages for table values that lack a required column.
+     */
+    public static final String TYPE_MISSING_COLUMN = "cvMissingColumn";
+    /**
+     * Type of messages for units that are not declared for the metric.
+     */
+    public static final String TYPE_UNEXPECTED_UNIT = "cvUnexpectedUnit";
+    /**
+     * Type of messages for table metrics with units that lack a unit for a
+     * column.
+     */
+    public static final String TYPE_MISSING_COLUMN_UNIT = "cvMissingColumnUnit";
+
+    private static final String UNKNOWN_TERM = "{0}: accession {1} is not defined in the QC controlled vocabulary";
+    private static final String NOT_A_METRIC = "{0}: accession {1} ({2}) is not a QC metric";
+    private static final String VALUE_TYPE = "{0}: metric {1} ({2}) requires a value of type {3}, but found {4}";
+    private static final String MISSING_COLUMN = "{0}: table metric {1} ({2}) is missing required column {3}";
+    private static final String UNEXPECTED_UNIT = "{0}: unit {1} is not declared for metric {2} ({3}), expected one of {4}";
+    private static final String MISSING_COLUMN_UNIT = "{0}: table metric {1} ({2}) has no unit for column {3}, expected one of {4}";
+
+    private static final String QC_NAMESPACE_PREFIX = "MS:4";
+
+    private static class DefaultHolder {
+
+        static final SemanticValidator INSTANCE = new SemanticValidator(QcOntology.getDefault());
+    }
+
+    private final QcOntology ontology;
+
+    /**
+     * Create a new semantic validator for the bundled QC vocabulary.
+     */
+    public SemanticValidator() {
+        this(QcOntology.getDefault());
+    }
+
+    /**
+     * Create a new semantic validator for the given vocabulary.
+     *
+     * @param ontology the QC vocabulary.
+     */
+    public SemanticValidator(QcOntology ontology) {
+        this.ontology = ontology;
+    }
+
+    /**
+     * Returns the shared semantic validator for the bundled QC vocabulary.
+     *
+     * @return the default semantic validator.
+     */
+    public static SemanticValidator getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Validate all run and set qualities of an mzQC object.
+     *
+     * @param mzQC the mzQC object.
+     * @return a set of validation messages, empty if no issues were found.
+     */
+    public Set<ValidationMessage> validate(MzQC mzQC) {
+        Set<ValidationMessage> messages = new LinkedHashSet<>();
+        List<BaseQuality> runQualities = mzQC.runQualities();
+        for (int i = 0; i < runQualities.size(); i++) {
+            validate(runQualities.get(i), "$.mzQC.runQualities[" + i + "]", messages);
+        }
+        List<BaseQuality> setQualities = mzQC.setQualities();
+        for (int i = 0; i < setQualities.size(); i++) {
+            validate(setQualities.get(i), "$.mzQC.setQualities[" + i + "]", messages);
+        }
+        return messages;
+    }
+
+    /**
+     * Validate the metrics of a single run or set quality.
+     *
+     * @param quality the run or set quality.
+     * @param path the path of the quality in the document, e.g.
+     * {@code $.mzQC.runQualities[0]}.
+     * @return a set of validation messages, empty if no issues were found.
+     */
+    public Set<ValidationMessage> validate(BaseQuality quality, String path) {
+        Set<ValidationMessage> messages = new LinkedHashSet<>();
+        validate(quality, path, messages);
+        return messages;
+    }
+
+    private void validate(BaseQuality quality, String path, Set<ValidationMessage> messages) {
+        List<QualityMetric> metrics = quality.qualityMetrics();
+        for (int j = 0; j < metrics.size(); j++) {
+            validate(metrics.get(j), path + ".qualityMetrics[" + j + "]", messages);
+        }
+    }
+
+    private void validate(QualityMetric metric, String path, Set<ValidationMessage> messages) {
+        String accession = metric.accession();
+        if (accession == null) {
+            // reported by the JSON schema validation
+            return;
+        }
+        Optional<QcOntology.Term> optionalTerm = ontology.getTerm(accession);
+        if (optionalTerm.isEmpty()) {
+            if (accession.startsWith(QC_NAMESPACE_PREFIX)) {
+                messages.add(message(TYPE_UNKNOWN_TERM, "2001", UNKNOWN_TERM, path + ".accession", accession));
+            }
+            return;
+        }
+        QcOntology.Term term = optionalTerm.get();
+        if (!ontology.isMetric(accession)) {
+            messages.add(message(TYPE_NOT_A_METRIC, "2002", NOT_A_METRIC, path + ".accession", accession, term.name()));
+            return;
+        }
+        Object value = metric.value();
+        QcOntology.ValueType valueType = term.valueType();
+        List<String> units = units(metric.unit());
+        List<String> allowedUnits = new ArrayList<>(term.getUnits());
+        if (valueType == QcOntology.ValueType.TABLE) {
+            for (String column : concat(term.getColumns(), term.getOptionalColumns())) {
+                allowedUnits.addAll(columnUnits(column));
+            }
+        }
+        if (value != null && !matches(valueType, value)) {
+            messages.add(message(TYPE_VALUE_TYPE, "2003", VALUE_TYPE, path + ".value", accession, term.name(), valueType.name(), describe(value)));
+        } else if (valueType == QcOntology.ValueType.TABLE && value != null) {
+            Collection<?> columns = value instanceof MetricTable table ? table.columnNames() : ((Map<?, ?>) value).keySet();
+            for (String column : term.getColumns()) {
+                if (!hasColumn(columns, column)) {
+                    messages.add(message(TYPE_MISSING_COLUMN, "2004", MISSING_COLUMN, path + ".value", accession, term.name(), column));
+                }
+            }
+            for (String column : concat(term.getColumns(), term.getOptionalColumns())) {
+                List<String> columnUnits = columnUnits(column);
+                if (!units.isEmpty() && !columnUnits.isEmpty() && hasColumn(columns, column)
+                        && units.stream().noneMatch((unit) -> isAllowed(unit, columnUnits))) {
+                    messages.add(message(TYPE_MISSING_COLUMN_UNIT, "2006", MISSING_COLUMN_UNIT, path + ".unit", accession, term.name(), column, columnUnits.toString()));
+                }
+            }
+        }
+        if (!allowedUnits.isEmpty()) {
+            for (String unit : units) {
+                if (!isAllowed(unit, allowedUnits)) {
+                    messages.add(message(TYPE_UNEXPECTED_UNIT, "2005", UNEXPECTED_UNIT, path + ".unit", unit, accession, term.name(), allowedUnits.toString()));
+                }
+            }
+        }
+    }
+
+    private List<String> columnUnits(String column) {
+        return ontology.getTerm(column).map(QcOntology.Term::getUnits).orElse(List.of());
+    }
+
+    private boolean isAllowed(String unit, List<String> allowedUnits) {
+        for (String allowed : allowedUnits) {
+            if (allowed.equals(unit) || ontology.isA(unit, allowed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> units(Unit unit) {
+        if (unit == null) {
+            return List.of();
+        }
+        List<String> units = new ArrayList<>();
+        if (unit.cvParameterValue() != null && unit.cvParameterValue().accession() != null) {
+            units.add(unit.cvParameterValue().accession());
+        }
+        for (CvParameter cvParameter : unit.cvParameterArrayValue()) {
+            if (cvParameter != null && cvParameter.accession() != null) {
+                units.add(cvParameter.accession());
+            }
+        }
+        return units;
+    }
+
+    private static List<String> concat(List<String> first, List<String> second) {
+        List<String> all = new ArrayList<>(first);
+        all.addAll(second);
+        return all;
+    }
+
+    private boolean hasColumn(Collection<?> columns, String column) {
+        if (columns.contains(column)) {
+            return true;
+        }
+        String name = ontology.getTerm(column).map(QcOntology.Term::name).orElse(null);
+        return name != null && columns.contains(name);
+    }
+
+    static boolean matches(QcOntology.ValueType valueType, Object value) {
+        return switch (valueType) {
+            case SINGLE_VALUE ->
+                !(value instanceof Collection<?> || value instanceof Map<?, ?> || value.getClass().isArray() || value instanceof MetricTable || value instanceof MetricMatrix);
+            case N_TUPLE ->
+                value instanceof List<?> || value.getClass().isArray();
+            case TABLE ->
+                value instanceof MetricTable || value instanceof Map<?, ?>;
+            case MATRIX ->
+                value instanceof MetricMatrix || (value instanceof List<?> list && list.stream().allMatch((row) -> row instanceof List<?>));
+            case UNKNOWN ->
+                true;
+        };
+    }
+
+    private static String describe(Object value) {
+        if (value instanceof MetricTable || value instanceof Map<?, ?>) {
+            return "table";
+        }
+        if (value instanceof MetricMatrix) {
+            return "matrix";
+        }
+        if (value instanceof Collection<?> || value.getClass().isArray()) {
+            return "array";
+        }
+        return "single value";
+    }
+
+    private static ValidationMessage message(String type, String code, String pattern, String path, String... arguments) {
+        return new ValidationMessage.Builder()
+                .type(type)
+                .code(code)
+                .path(path)
+                .schemaPath(QcOntology.OBO_RESOURCE)
+                .arguments(arguments)
+                .format(new MessageFormat(pattern))
+                .build();
+    }
+}
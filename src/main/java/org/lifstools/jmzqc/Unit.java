@@ -16,9 +16,9 @@
 package org.lifstools.jmzqc;
 
 import com.fasterxml.jackson.core.*;
-import com.fasterxml.jackson.core.type.*;
 import com.fasterxml.jackson.databind.*;
 import com.fasterxml.jackson.databind.annotation.*;
+import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
@@ -38,17 +38,24 @@ import java.util.List;
         }
     }
 
-    static class Deserializer extends JsonDeserializer<Unit> {
+    static class Deserializer extends JsonDeserializer<Unit> implements ResolvableDeserializer {
+
+        private JsonDeserializer<Object> cvParameterDeserializer;
+
+        @Override
+        public void resolve(DeserializationContext deserializationContext) throws JsonMappingException {
+            cvParameterDeserializer = JsonCodecs.find(deserializationContext, CvParameter.class);
+        }
 
         @Override
         public Unit deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JsonProcessingException {
             switch (jsonParser.currentToken()) {
                 case START_ARRAY -> {
-                    return new Unit(null, jsonParser.readValueAs(new TypeReference<List<CvParameter>>() {
-                    }));
+                    List<CvParameter> cvParameters = JsonCodecs.readList(jsonParser, deserializationContext, cvParameterDeserializer);
+                    return Interner.intern(deserializationContext, new Unit(null, Collections.unmodifiableList(cvParameters)));
                 }
                 case START_OBJECT -> {
-                    return new Unit(jsonParser.readValueAs(CvParameter.class), null);
+                    return Interner.intern(deserializationContext, new Unit((CvParameter) cvParameterDeserializer.deserialize(jsonParser, deserializationContext), null));
                 }
                 default ->
                     throw new IOException("Cannot deserialize Unit");
@@ -61,11 +68,20 @@ import java.util.List;
         @Override
         public void serialize(Unit obj, JsonGenerator jsonGenerator, SerializerProvider serializerProvider) throws IOException {
             if (obj.cvParameterValue != null) {
-                jsonGenerator.writeObject(obj.cvParameterValue);
+                serializerProvider.findTypedValueSerializer(CvParameter.class, true, null).serialize(obj.cvParameterValue, jsonGenerator, serializerProvider);
                 return;
             }
             if (obj.cvParameterArrayValue != null) {
-                jsonGenerator.writeObject(obj.cvParameterArrayValue);
+                JsonSerializer<Object> serializer = serializerProvider.findTypedValueSerializer(CvParameter.class, true, null);
+                jsonGenerator.writeStartArray(obj.cvParameterArrayValue, obj.cvParameterArrayValue.size());
+                for (CvParameter cvParameter : obj.cvParameterArrayValue) {
+                    if (cvParameter == null) {
+                        jsonGenerator.writeNull();
+                    } else {
+                        serializer.serialize(cvParameter, jsonGenerator, serializerProvider);
+                    }
+                }
+                jsonGenerator.writeEndArray();
                 return;
             }
             jsonGenerator.writeNull();
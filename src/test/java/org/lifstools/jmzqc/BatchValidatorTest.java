@@ -0,0 +1,104 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.networknt.schema.ValidationMessage;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class BatchValidatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testBatchValidation() throws IOException {
+        Path sub = Files.createDirectories(tempDir.resolve("sub"));
+        for (int i = 0; i < 4; i++) {
+            Converter.toJsonFile(MzQCGenerator.generate(2, 1, 3), sub.resolve("valid-" + i + ".mzQC").toFile());
+        }
+        String invalid = Converter.toJsonString(MzQCGenerator.generate(1, 0, 1)).replace("\"version\"", "\"versions\"");
+        Files.writeString(tempDir.resolve("invalid.mzQC"), invalid);
+        Files.writeString(tempDir.resolve("broken.mzQC"), "{\"mzQC\": {");
+        Files.writeString(tempDir.resolve("ignored.txt"), "not an mzQC file");
+
+        List<Path> files = BatchValidator.resolve(List.of(tempDir.toString()));
+        assertEquals(6, files.size());
+        assertEquals(4, BatchValidator.resolve(List.of(tempDir + "/sub/*.mzQC", sub.resolve("valid-0.mzQC").toString())).size());
+
+        List<BatchValidator.Result> results = new BatchValidator(3).validate(files);
+        assertEquals(files, results.stream().map(BatchValidator.Result::file).toList());
+        assertEquals(BatchValidator.Status.ERROR, results.get(0).status());
+        assertEquals(BatchValidator.Status.INVALID, results.get(1).status());
+        assertTrue(results.subList(2, 6).stream().allMatch((r) -> r.status() == BatchValidator.Status.VALID));
+
+        StringWriter tsv = new StringWriter();
+        BatchValidator.writeTsv(tsv, results);
+        String[] lines = tsv.toString().split("\n");
+        assertTrue(lines[0].startsWith("File\tStatus\tDurationMillis"));
+        assertEquals(1 + 1 + results.get(1).messages().size() + 4, lines.length);
+
+        StringWriter json = new StringWriter();
+        BatchValidator.writeJson(json, results);
+        JsonNode report = Converter.getObjectMapper().readTree(json.toString());
+        assertEquals(6, report.get("summary").get("files").asInt());
+        assertEquals(4, report.get("summary").get("valid").asInt());
+        assertEquals(1, report.get("summary").get("invalid").asInt());
+        assertEquals(1, report.get("summary").get("error").asInt());
+        assertEquals("INVALID", report.get("results").get(1).get("status").asText());
+    }
+
+    @Test
+    public void testUnexpectedErrorDoesNotAbortBatch() throws IOException {
+        Path valid = tempDir.resolve("valid.mzQC");
+        Path failing = tempDir.resolve("failing.mzQC");
+        Converter.toJsonFile(MzQCGenerator.generate(1, 0, 1), valid.toFile());
+        Converter.toJsonFile(MzQCGenerator.generate(1, 0, 1), failing.toFile());
+        MzQCValidator validator = new MzQCValidator() {
+            @Override
+            public Set<ValidationMessage> validate(File file) throws IOException {
+                if (file.getName().equals("failing.mzQC")) {
+                    throw new IllegalStateException("unexpected");
+                }
+                return super.validate(file);
+            }
+        };
+        List<BatchValidator.Result> results = new BatchValidator(2, validator).validate(List.of(failing, valid));
+        assertEquals(BatchValidator.Status.ERROR, results.get(0).status());
+        assertEquals("unexpected", results.get(0).error());
+        assertEquals(BatchValidator.Status.VALID, results.get(1).status());
+    }
+
+    @Test
+    public void testInvalidThreads() {
+        assertThrows(IllegalArgumentException.class, () -> new BatchValidator(0));
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.datatype.jsr310.ser.OffsetDateTimeSerializer;
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the hand-written serializers and deserializers of the mzQC
+ * records and the ISO-8601 fast path of the date and time codecs with
+ * Jackson's reflective record binding and the date and time formatters. The
+ * reflective mapper is a copy of the {@link Converter} mapper in which mix-ins
+ * switch the hand-written codecs off.
+ *
+ * Run with {@code ./mvnw -Pjmh -DskipTests verify -Djmh.includes=CodecBenchmark}.
+ *
+ * @author nilshoffmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    @JsonDeserialize(using = JsonDeserializer.None.class)
+    @JsonSerialize(using = JsonSerializer.None.class)
+    private interface Reflective {
+    }
+
+    @JsonSerialize(using = JsonSerializer.None.class)
+    private interface ReflectiveSerialization {
+    }
+
+    @Param({"10", "1000"})
+    public int runs;
+
+    @Param({"20"})
+    public int metricsPerRun;
+
+    private ObjectReader codecReader;
+    private ObjectWriter codecWriter;
+    private ObjectReader reflectiveReader;
+    private ObjectWriter reflectiveWriter;
+    private Coordinate coordinate;
+    private byte[] json;
+    private char[] dateTime;
+    private OffsetDateTime offsetDateTime;
+
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper mapper = Converter.getObjectMapper();
+        codecReader = mapper.readerFor(Coordinate.class);
+        codecWriter = mapper.writerFor(Coordinate.class);
+        ObjectMapper reflective = mapper.copy();
+        for (Class<?> type : List.of(Coordinate.class, MzQC.class, BaseQuality.class, Metadata.class, InputFile.class, CvParameter.class, AnalysisSoftware.class, ControlledVocabulary.class)) {
+            reflective.addMixIn(type, Reflective.class);
+        }
+        reflective.addMixIn(QualityMetric.class, ReflectiveSerialization.class);
+        SimpleModule formatters = new SimpleModule("formatters");
+        formatters.addDeserializer(OffsetDateTime.class, new JsonDeserializer<OffsetDateTime>() {
+            @Override
+            public OffsetDateTime deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException {
+                return parseWithFormatter(jsonParser.getText());
+            }
+        });
+        formatters.addSerializer(OffsetDateTime.class, OffsetDateTimeSerializer.INSTANCE);
+        reflective.registerModule(formatters);
+        reflectiveReader = reflective.readerFor(Coordinate.class);
+        reflectiveWriter = reflective.writerFor(Coordinate.class);
+        coordinate = new Coordinate(MzQCGenerator.generate(runs, Math.max(1, runs / 100), metricsPerRun));
+        json = codecWriter.writeValueAsBytes(coordinate);
+        if (!reflectiveReader.readValue(json).equals(codecReader.readValue(json))
+                || !reflectiveWriter.writeValueAsString(coordinate).equals(codecWriter.writeValueAsString(coordinate))) {
+            throw new IllegalStateException("Reflective and hand-written codecs differ");
+        }
+        dateTime = "2021-11-10T14:03:00.125+02:00".toCharArray();
+        offsetDateTime = OffsetDateTime.parse("2021-11-10T14:03:00.125+02:00");
+    }
+
+    private static OffsetDateTime parseWithFormatter(String text) {
+        return ZonedDateTime.from(Converter.DATE_TIME_FORMATTER.parse(text)).toOffsetDateTime();
+    }
+
+    @Benchmark
+    public Object parseReflective() throws IOException {
+        return reflectiveReader.readValue(json);
+    }
+
+    @Benchmark
+    public Object parseCodec() throws IOException {
+        return codecReader.readValue(json);
+    }
+
+    @Benchmark
+    public byte[] serializeReflective() throws IOException {
+        return reflectiveWriter.writeValueAsBytes(coordinate);
+    }
+
+    @Benchmark
+    public byte[] serializeCodec() throws IOException {
+        return codecWriter.writeValueAsBytes(coordinate);
+    }
+
+    @Benchmark
+    public OffsetDateTime parseDateTimeFormatter() {
+        return parseWithFormatter(new String(dateTime));
+    }
+
+    @Benchmark
+    public OffsetDateTime parseDateTimeFastPath() {
+        return Converter.parseIsoDateTime(dateTime, 0, dateTime.length);
+    }
+
+    @Benchmark
+    public String formatDateTimeFormatter() {
+        return DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(offsetDateTime);
+    }
+
+    @Benchmark
+    public String formatDateTimeFastPath() {
+        char[] buffer = new char[Converter.ISO_DATE_TIME_LENGTH];
+        return new String(buffer, 0, Converter.formatIsoDateTime(offsetDateTime, buffer));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.networknt.schema.ValidationMessage;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Baseline for parsing, validating and serializing synthetic mzQC documents
+ * of different sizes with the {@link Converter}. Each benchmark reports
+ * throughput and sampled latency percentiles; add {@code -prof gc} (the
+ * default of the {@code jmh} profile) to report allocation rates.
+ *
+ * Run with {@code ./mvnw -Pjmh -DskipTests verify -Djmh.includes=ConverterBenchmark}.
+ *
+ * @author nilshoffmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConverterBenchmark {
+
+    @Param({"10", "1000"})
+    public int runs;
+
+    @Param({"20"})
+    public int metricsPerRun;
+
+    @Param({"0", "1000"})
+    public int tableRows;
+
+    private MzQC mzQC;
+    private String json;
+    private File file;
+    private URL url;
+    private File outputFile;
+
+    @Setup
+    public void setup() throws IOException {
+        mzQC = MzQCGenerator.generate(runs, Math.max(1, runs / 100), metricsPerRun, tableRows);
+        json = Converter.toJsonString(mzQC);
+        file = File.createTempFile("converter-benchmark", ".mzQC");
+        Converter.toJsonFile(mzQC, file);
+        url = file.toURI().toURL();
+        outputFile = File.createTempFile("converter-benchmark-out", ".mzQC");
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+        outputFile.delete();
+    }
+
+    @Benchmark
+    public MzQC ofString() throws IOException {
+        return Converter.of(json);
+    }
+
+    @Benchmark
+    public MzQC ofFile() throws IOException {
+        return Converter.of(file);
+    }
+
+    @Benchmark
+    public Set<ValidationMessage> validateString() throws IOException {
+        return Converter.validate(json);
+    }
+
+    @Benchmark
+    public Set<ValidationMessage> validateMzQC() throws IOException {
+        return Converter.validate(mzQC);
+    }
+
+    @Benchmark
+    public Set<ValidationMessage> validateFile() throws IOException {
+        return Converter.validate(file);
+    }
+
+    @Benchmark
+    public Set<ValidationMessage> validateUrl() throws IOException {
+        return Converter.validate(url);
+    }
+
+    @Benchmark
+    public String toJsonString() throws IOException {
+        return Converter.toJsonString(mzQC);
+    }
+
+    @Benchmark
+    public File toJsonFile() throws IOException {
+        return Converter.toJsonFile(mzQC, outputFile);
+    }
+}
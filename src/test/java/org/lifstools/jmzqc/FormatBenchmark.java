@@ -0,0 +1,91 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares parse and write throughput of the indented JSON output with the
+ * binary Smile format. The encoded sizes of both formats are printed during
+ * setup.
+ *
+ * Run with {@code ./mvnw -Pjmh -DskipTests verify -Djmh.includes=FormatBenchmark}.
+ *
+ * @author nilshoffmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FormatBenchmark {
+
+    @Param({"scalars", "tables"})
+    public String document;
+
+    private MzQC mzQC;
+    private byte[] json;
+    private byte[] smile;
+
+    @Setup
+    public void setup() throws IOException {
+        mzQC = switch (document) {
+            case "scalars" ->
+                MzQCGenerator.generate(1000, 10, 20);
+            case "tables" ->
+                MzQCGenerator.generate(100, 1, 20, 2000);
+            default ->
+                throw new IllegalArgumentException("Unknown document: " + document);
+        };
+        json = Converter.toJsonString(mzQC).getBytes(StandardCharsets.UTF_8);
+        smile = Converter.toSmileBytes(mzQC);
+        System.out.printf("%n%s: JSON %d bytes, Smile %d bytes (%.1f%%)%n", document, json.length, smile.length, 100.0d * smile.length / json.length);
+    }
+
+    @Benchmark
+    public MzQC readJson() throws IOException {
+        return Converter.of(json);
+    }
+
+    @Benchmark
+    public MzQC readSmile() throws IOException {
+        return Converter.of(smile);
+    }
+
+    @Benchmark
+    public String writeJson() throws IOException {
+        return Converter.toJsonString(mzQC);
+    }
+
+    @Benchmark
+    public byte[] writeSmile() throws IOException {
+        return Converter.toSmileBytes(mzQC);
+    }
+}
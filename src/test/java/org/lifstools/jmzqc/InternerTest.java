@@ -0,0 +1,86 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class InternerTest {
+
+    @Test
+    public void testReadsShareInstances() throws IOException {
+        MzQC mzQC = MzQCGenerator.generate(3, 0, 2);
+        Unit seconds = new Unit(new CvParameter("UO:0000010", "A time unit.", "second", null), null);
+        Unit units = new Unit(null, asList(new CvParameter("UO:0000010", null, "second", null), new CvParameter("UO:0000189", null, "count unit", null)));
+        for (BaseQuality run : mzQC.runQualities()) {
+            run.qualityMetrics().add(new QualityMetric("MS:4000070", "retention time acquisition range", "retention time acquisition range", List.of(1.0, 2.0), seconds));
+            run.qualityMetrics().add(new QualityMetric("MS:4000071", "spectra counts", "spectra counts", List.of(1, 2), units));
+        }
+        String json = Converter.toJsonString(mzQC);
+        MzQC first = Converter.of(json);
+        MzQC second = Converter.of(json);
+        assertEquals(first, second);
+
+        QualityMetric a = first.getRunQualityMetrics(0).get(2);
+        QualityMetric b = second.getRunQualityMetrics(2).get(2);
+        assertNotSame(a, b);
+        assertSame(a.description(), b.description());
+        assertSame(a.unit(), b.unit());
+        assertSame(first.getRunQualityMetrics(0).get(3).unit(), second.getRunQualityMetrics(1).get(3).unit());
+        assertThrows(UnsupportedOperationException.class, () -> first.getRunQualityMetrics(0).get(3).unit().cvParameterArrayValue().clear());
+        assertSame(first.controlledVocabularies().get(0), second.controlledVocabularies().get(0));
+
+        Metadata metadata = first.runQualities().get(0).metadata();
+        assertSame(metadata.analysisSoftware().get(0), second.runQualities().get(1).metadata().analysisSoftware().get(0));
+        assertSame(metadata.inputFiles().get(0).fileFormat(), second.runQualities().get(2).metadata().inputFiles().get(0).fileFormat());
+        // lists of metrics stay distinct, so they can be modified per run
+        assertNotSame(first.getRunQualityMetrics(0), second.getRunQualityMetrics(0));
+    }
+
+    @Test
+    public void testOnlyImmutableValuesAreInterned() {
+        Interner interner = new Interner(4);
+        CvParameter scalar = interner.intern(new CvParameter("MS:1", null, "scalar", 1));
+        assertSame(scalar, interner.intern(new CvParameter("MS:1", null, "scalar", 1)));
+        CvParameter list = interner.intern(new CvParameter("MS:2", null, "list", new ArrayList<>(List.of(1))));
+        assertNotSame(list, interner.intern(new CvParameter("MS:2", null, "list", new ArrayList<>(List.of(1)))));
+        Metadata metadata = new Metadata(null, null, null, "metadata");
+        assertSame(metadata, interner.intern(metadata));
+        assertEquals(1, interner.size());
+    }
+
+    @Test
+    public void testCapacity() {
+        Interner interner = new Interner(2);
+        interner.intern("a");
+        interner.intern("b");
+        assertEquals(2, interner.size());
+        interner.intern("c");
+        assertEquals(1, interner.size());
+        assertThrows(IllegalArgumentException.class, () -> new Interner(0));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class MetricCubeTest {
+
+    private static final String A = "MS:4000059";
+    private static final String B = "MS:4000060";
+    private static final double DELTA = 1e-9;
+
+    @TempDir
+    Path tempDir;
+
+    private static BaseQuality run(String label, QualityMetric... metrics) {
+        return new BaseQuality(new Metadata(null, null, null, label), new ArrayList<>(List.of(metrics)));
+    }
+
+    private static QualityMetric metric(String accession, Object value) {
+        return new QualityMetric(accession, null, accession, value, null);
+    }
+
+    @Test
+    public void testStatistics() {
+        MetricCube cube = MetricCube.of(Stream.of(
+                run("r0", metric(A, 1), metric(B, "not a number")),
+                run("r1", metric(A, 2.0d), metric(A, 100)),
+                run("r2", metric(B, 10)),
+                run("r3", metric(A, 4L), metric(B, Double.NaN)),
+                run("r4", metric(A, 8), metric(B, 20))));
+        assertEquals(5, cube.getRunCount());
+        assertEquals("r2", cube.getRunLabel(2));
+        assertEquals(List.of(A, B), new ArrayList<>(cube.getAccessions()));
+
+        assertArrayEquals(new double[]{1, 2, Double.NaN, 4, 8}, cube.getValues(A));
+        assertTrue(cube.isMissing(A, 2));
+        assertFalse(cube.isMissing(A, 1));
+        assertEquals(3, cube.getMissing(B).cardinality());
+        assertTrue(Double.isNaN(cube.getValue(B, 3)));
+
+        // values 1, 2, 4, 8
+        MetricCube.Statistics a = cube.statistics(A, 0, 25, 90, 100);
+        assertEquals(4, a.count());
+        assertEquals(1, a.missing());
+        assertEquals(3.75d, a.mean(), DELTA);
+        assertEquals(Math.sqrt(28.75d / 3), a.standardDeviation(), DELTA);
+        assertEquals(1, a.min(), DELTA);
+        assertEquals(8, a.max(), DELTA);
+        assertEquals(3, a.median(), DELTA);
+        // absolute deviations 2, 1, 1, 5
+        assertEquals(1.5d, a.mad(), DELTA);
+        assertEquals(List.of(1.0d, 1.75d, 6.8d, 8.0d), a.percentiles().stream().map((p) -> Math.round(p * 1e9) / 1e9).toList());
+
+        double[] z = cube.zScores(A);
+        assertEquals((8 - 3.75d) / a.standardDeviation(), z[4], DELTA);
+        assertTrue(Double.isNaN(z[2]));
+        double[] robust = cube.robustZScores(A);
+        assertEquals((1 - 3) / (MetricCube.MAD_SCALE * 1.5d), robust[0], DELTA);
+
+        Map<String, MetricCube.Statistics> all = cube.statistics(50);
+        assertEquals(List.of(A, B), new ArrayList<>(all.keySet()));
+        assertEquals(15, all.get(B).median(), DELTA);
+        assertEquals(List.of(15.0d), all.get(B).percentiles());
+        assertEquals(Math.sqrt(50), cube.statistics(B).standardDeviation(), DELTA);
+
+        assertThrows(IllegalArgumentException.class, () -> cube.statistics("MS:0000000"));
+        assertThrows(IllegalArgumentException.class, () -> cube.statistics(A, 101));
+        assertThrows(IllegalArgumentException.class, () -> cube.getValue(A, 5));
+    }
+
+    @Test
+    public void testFromReader() throws IOException {
+        MzQC mzQC = MzQCGenerator.generate(200, 1, 5, 10);
+        Path file = Converter.toJsonFile(mzQC, tempDir.resolve("cube.mzQC").toFile()).toPath();
+        MetricCube expected = MetricCube.of(mzQC);
+        MetricCube cube;
+        try ( MzQCReader reader = new MzQCReader(file);  Stream<BaseQuality> runs = reader.runQualities()) {
+            cube = MetricCube.of(runs);
+        }
+        assertEquals(200, cube.getRunCount());
+        // the table metric MS:4000067 has no numeric values
+        assertEquals(5, cube.getAccessions().size());
+        assertEquals(expected.statistics(5, 95), cube.statistics(5, 95));
+        assertEquals(199 * 1000 + 4, cube.getValue("MS:4000186", 199), DELTA);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class MetricExporterTest {
+
+    private static final String HEADER = "quality\tlabel\taccession\tname\tunit_accession\tunit_name\tcolumn\trow\tvalue";
+
+    @TempDir
+    Path tempDir;
+
+    private Path write(MzQC mzQC) throws IOException {
+        return Converter.toJsonFile(mzQC, tempDir.resolve("export.mzQC").toFile()).toPath();
+    }
+
+    @Test
+    public void testExportTsv() throws IOException {
+        Unit seconds = new Unit(new CvParameter("UO:0000010", null, "second", null), null);
+        Unit units = new Unit(null, List.of(new CvParameter("UO:0000010", null, "second", null), new CvParameter("UO:0000189", null, "count unit", null)));
+        Map<String, List<Object>> table = new LinkedHashMap<>();
+        table.put("MS:4000069", List.of("a", "b"));
+        table.put("MS:4000070", List.of(1.5, 2.5));
+        List<QualityMetric> metrics = new ArrayList<>();
+        metrics.add(new QualityMetric("MS:4000059", null, "number of MS1 spectra", 42, null));
+        metrics.add(new QualityMetric("MS:4000061", null, "tab\tname", table, seconds));
+        metrics.add(new QualityMetric("MS:4000063", null, "matrix", List.of(List.of(1, 2), List.of(3, 4)), units));
+        metrics.add(new QualityMetric("MS:4000064", null, "vector", List.of(5, Map.of("x", 1)), null));
+        BaseQuality run = new BaseQuality(new Metadata(null, null, null, "run1"), metrics);
+        BaseQuality set = new BaseQuality(new Metadata(null, null, null, "set1"), List.of(new QualityMetric("MS:4000065", null, "empty", null, null)));
+        MzQC mzQC = new MzQC(null, null, null, OffsetDateTime.now(), null, List.of(run), List.of(set), "1.0.0");
+
+        StringWriter writer = new StringWriter();
+        long rows = new MetricExporter(MetricExporter.Format.TSV).export(write(mzQC), writer);
+        List<String> lines = writer.toString().lines().toList();
+        assertEquals(List.of(
+                HEADER,
+                "run\trun1\tMS:4000059\tnumber of MS1 spectra\t\t\t\t\t42",
+                "run\trun1\tMS:4000061\ttab name\tUO:0000010\tsecond\tMS:4000069\t0\ta",
+                "run\trun1\tMS:4000061\ttab name\tUO:0000010\tsecond\tMS:4000069\t1\tb",
+                "run\trun1\tMS:4000061\ttab name\tUO:0000010\tsecond\tMS:4000070\t0\t1.5",
+                "run\trun1\tMS:4000061\ttab name\tUO:0000010\tsecond\tMS:4000070\t1\t2.5",
+                "run\trun1\tMS:4000063\tmatrix\tUO:0000010,UO:0000189\tsecond,count unit\t0\t0\t1",
+                "run\trun1\tMS:4000063\tmatrix\tUO:0000010,UO:0000189\tsecond,count unit\t1\t0\t2",
+                "run\trun1\tMS:4000063\tmatrix\tUO:0000010,UO:0000189\tsecond,count unit\t0\t1\t3",
+                "run\trun1\tMS:4000063\tmatrix\tUO:0000010,UO:0000189\tsecond,count unit\t1\t1\t4",
+                "run\trun1\tMS:4000064\tvector\t\t\t\t0\t5",
+                "run\trun1\tMS:4000064\tvector\t\t\t\t1\t{\"x\":1}",
+                "set\tset1\tMS:4000065\tempty\t\t\t\t\t"), lines);
+        assertEquals(lines.size() - 1, rows);
+    }
+
+    @Test
+    public void testExportCsvMetadataLast() throws IOException {
+        String json = """
+                {"mzQC": {"version": "1.0.0", "creationDate": "2021-01-01T00:00:00Z",
+                  "runQualities": [{
+                    "qualityMetrics": [{"accession": "MS:4000059", "name": "count, \\"MS1\\"", "value": 7}],
+                    "metadata": {"inputFiles": [], "analysisSoftware": [], "label": "late"}
+                  }]}}
+                """;
+        Path input = tempDir.resolve("late.mzQC");
+        Files.writeString(input, json);
+        Path output = tempDir.resolve("metrics.csv.gz");
+        MetricExporter.Format format = MetricExporter.Format.forFileName(output.getFileName().toString());
+        assertEquals(MetricExporter.Format.CSV, format);
+        assertEquals(1, new MetricExporter(format).export(input, output));
+        try ( BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(output)), StandardCharsets.UTF_8))) {
+            assertEquals(List.of(
+                    HEADER.replace('\t', ','),
+                    "run,late,MS:4000059,\"count, \"\"MS1\"\"\",,,,,7"), reader.lines().toList());
+        }
+    }
+
+    @Test
+    public void testRowCount() throws IOException {
+        MzQC mzQC = MzQCGenerator.generate(20, 2, 4);
+        long values = 0;
+        for (BaseQuality quality : mzQC.runQualities()) {
+            values += quality.qualityMetrics().size();
+        }
+        for (BaseQuality quality : mzQC.setQualities()) {
+            values += quality.qualityMetrics().size();
+        }
+        StringWriter writer = new StringWriter();
+        assertEquals(values, new MetricExporter(MetricExporter.Format.TSV).export(write(mzQC), writer));
+        assertEquals(values + 1, writer.toString().lines().count());
+    }
+}
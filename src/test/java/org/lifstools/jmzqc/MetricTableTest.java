@@ -0,0 +1,208 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class MetricTableTest {
+
+    private static final String TABLE = """
+                                        {"MS:4000069": [1, 2, null, 4],
+                                         "MS:1000894": [0.5, 1.0, 1.5, null],
+                                         "MS:1000285": ["a", "b", "a", null],
+                                         "mixed": [1, "x", [1, 2], true]}
+                                        """;
+
+    @Test
+    public void testTableColumns() throws IOException {
+        ObjectMapper mapper = Converter.getObjectMapper();
+        MetricTable table = mapper.readValue(TABLE, MetricTable.class);
+        assertEquals(List.of("MS:4000069", "MS:1000894", "MS:1000285", "mixed"), table.columnNames());
+        assertEquals(4, table.rowCount());
+        MetricTable.LongColumn longs = (MetricTable.LongColumn) table.column("MS:4000069");
+        assertEquals(4L, longs.getLong(3));
+        assertTrue(longs.isNull(2));
+        MetricTable.DoubleColumn doubles = (MetricTable.DoubleColumn) table.column("MS:1000894");
+        assertEquals(1.0, doubles.getDouble(1));
+        assertTrue(Double.isNaN(doubles.getDouble(3)));
+        MetricTable.StringColumn strings = (MetricTable.StringColumn) table.column("MS:1000285");
+        assertEquals(List.of("a", "b"), strings.dictionary());
+        assertNull(strings.get(3));
+        assertEquals(MetricTable.ColumnType.OBJECT, table.column("mixed").type());
+        assertThrows(ClassCastException.class, () -> strings.getDouble(0));
+
+        Map<?, ?> generic = mapper.readValue(TABLE, Map.class);
+        QualityMetric metric = new QualityMetric("MS:4000067", null, "Total ion current chromatogram", generic, null);
+        assertEquals(table, metric.asTable());
+        assertEquals(mapper.readTree(TABLE), mapper.readTree(mapper.writeValueAsString(table)));
+        assertEquals(table, MetricTable.of(table.toMap()));
+    }
+
+    @Test
+    public void testTableRoundTripInMzQC() throws IOException {
+        MetricTable table = Converter.getObjectMapper().readValue(TABLE, MetricTable.class);
+        MzQC generated = MzQCGenerator.generate(1, 0, 1);
+        BaseQuality run = generated.runQualities().get(0);
+        MzQC mzQC = new MzQC(null, null, generated.controlledVocabularies(), generated.creationDate(), null,
+                List.of(new BaseQuality(run.metadata(), List.of(new QualityMetric("MS:4000067", null, "Total ion current chromatogram", table, null)))),
+                null, "1.0.0");
+        MzQC read = Converter.of(Converter.toJsonString(mzQC));
+        assertEquals(table, read.getRunQualityMetrics(0).get(0).asTable());
+    }
+
+    @Test
+    public void testMatrix() throws IOException {
+        ObjectMapper mapper = Converter.getObjectMapper();
+        String json = "[[1, 2.5, 3], [4, null, 6]]";
+        MetricMatrix matrix = mapper.readValue(json, MetricMatrix.class);
+        assertEquals(2, matrix.rows());
+        assertEquals(3, matrix.columns());
+        assertEquals(2.5, matrix.get(0, 1));
+        assertTrue(Double.isNaN(matrix.get(1, 1)));
+        assertArrayEquals(new double[]{4, Double.NaN, 6}, matrix.row(1));
+        QualityMetric metric = new QualityMetric("MS:4000000", null, null, mapper.readValue(json, List.class), null);
+        assertEquals(matrix, metric.asMatrix());
+        assertEquals(matrix, mapper.readValue(mapper.writeValueAsString(matrix), MetricMatrix.class));
+        assertThrows(IllegalArgumentException.class, () -> MetricMatrix.of(List.of(List.of(1, 2), List.of(3))));
+        assertThrows(ClassCastException.class, () -> new QualityMetric("MS:4000000", null, null, 1, null).asMatrix());
+        assertFalse(matrix.isIntegral());
+        assertThrows(ClassCastException.class, () -> matrix.getLong(0, 0));
+
+        // integral matrices keep their precision and are written as integers
+        String integral = "[[1,9007199254740993],[null,-4]]";
+        MetricMatrix longs = mapper.readValue(integral, MetricMatrix.class);
+        assertTrue(longs.isIntegral());
+        assertEquals(9007199254740993L, longs.getLong(0, 1));
+        assertTrue(longs.isNull(1, 0));
+        assertTrue(Double.isNaN(longs.get(1, 0)));
+        assertEquals(integral, mapper.writer().without(SerializationFeature.INDENT_OUTPUT).writeValueAsString(longs));
+        assertEquals(longs, MetricMatrix.of(mapper.readValue(integral, List.class)));
+        assertEquals(mapper.readValue(integral, List.class), longs.toList());
+
+        // integers beyond the long range switch the matrix to doubles
+        MetricMatrix big = mapper.readValue("[[1,18446744073709551616],[null,-4]]", MetricMatrix.class);
+        assertFalse(big.isIntegral());
+        assertEquals(1.8446744073709552E19, big.get(0, 1));
+        assertTrue(Double.isNaN(big.get(1, 0)));
+        assertEquals(big, MetricMatrix.of(Arrays.asList(List.of(1, new BigInteger("18446744073709551616")), Arrays.asList(null, -4))));
+    }
+
+    @Test
+    public void testMixedColumn() throws IOException {
+        ObjectMapper mapper = Converter.getObjectMapper();
+        String json = "{\"a\":[null,1,2.5,9007199254740993],\"b\":[null,0.5,2]}";
+        MetricTable table = mapper.readValue(json, MetricTable.class);
+        assertEquals(MetricTable.ColumnType.OBJECT, table.column("a").type());
+        assertEquals(MetricTable.ColumnType.OBJECT, table.column("b").type());
+        assertEquals(mapper.readTree(json), mapper.readTree(mapper.writeValueAsString(table)));
+        // leading nulls do not prevent primitive storage
+        MetricTable doubles = mapper.readValue("{\"a\":[null,1.5]}", MetricTable.class);
+        assertEquals(MetricTable.ColumnType.DOUBLE, doubles.column("a").type());
+    }
+
+    @Test
+    public void testGenericValuesEqualTheirRoundTrip() throws IOException {
+        ObjectMapper mapper = Converter.getObjectMapper();
+        ObjectReader reader = mapper.readerFor(QualityMetric.class);
+        Map<String, Object> table = new LinkedHashMap<>();
+        table.put("MS:4000108", List.of(0.5, 1.0));
+        table.put("MS:4000109", Arrays.asList(10, null));
+        List<QualityMetric> metrics = List.of(
+                new QualityMetric("MS:4000051", null, "XIC-FWHM quantiles", List.of(1, 2, 3), null),
+                new QualityMetric("MS:4000051", null, "XIC-FWHM quantiles", List.of(1L, 2L, 3L), null),
+                new QualityMetric("MS:4000051", null, "XIC-FWHM quantiles", List.of(1.5, 2.5), null),
+                new QualityMetric("MS:4000067", null, "Total ion current chromatogram table", table, null));
+        for (QualityMetric metric : metrics) {
+            QualityMetric read = reader.readValue(mapper.writeValueAsString(metric));
+            assertEquals(metric, read);
+            assertEquals(read, metric);
+            assertEquals(metric.hashCode(), read.hashCode());
+        }
+        assertNotEquals(metrics.get(0), metrics.get(2));
+    }
+
+    @Test
+    public void testTypedMetricValues() throws IOException {
+        ObjectMapper mapper = Converter.getObjectMapper();
+        ObjectReader reader = mapper.readerFor(QualityMetric.class);
+        // MS:4000051 is an n-tuple, MS:4000067 a table
+        QualityMetric integral = reader.readValue("{\"accession\": \"MS:4000051\", \"name\": \"XIC-FWHM quantiles\", \"value\": [1, 2, 3]}");
+        assertArrayEquals(new long[]{1, 2, 3}, (long[]) integral.value());
+        assertEquals(reader.readValue("{\"accession\": \"MS:4000051\", \"name\": \"XIC-FWHM quantiles\", \"value\": [1, 2, 3]}"), integral);
+        assertEquals("{\"accession\":\"MS:4000051\",\"name\":\"XIC-FWHM quantiles\",\"value\":[1,2,3]}", mapper.writer().without(SerializationFeature.INDENT_OUTPUT).writeValueAsString(integral));
+        assertArrayEquals(new double[]{1, 2, 3}, integral.asDoubleArray());
+        // the value may precede the accession
+        QualityMetric floating = reader.readValue("{\"value\": [1.5, 2.5], \"accession\": \"MS:4000051\"}");
+        assertArrayEquals(new double[]{1.5, 2.5}, (double[]) floating.value());
+        // mixed integral and floating point numbers are written unchanged
+        QualityMetric mixedNumbers = reader.readValue("{\"accession\": \"MS:4000051\", \"value\": [1, 2.5]}");
+        assertEquals(List.of(1, 2.5), mixedNumbers.value());
+        assertArrayEquals(new double[]{1, 2.5}, mixedNumbers.asDoubleArray());
+        // values that do not have the shape of their value type are bound as before
+        QualityMetric mixed = reader.readValue("{\"accession\": \"MS:4000051\", \"value\": [1, 2.5, null, \"x\"]}");
+        assertEquals(mapper.readValue("[1, 2.5, null, \"x\"]", List.class), mixed.value());
+        QualityMetric table = reader.readValue("{\"accession\": \"MS:4000067\", \"value\": " + TABLE + "}");
+        assertEquals(mapper.readValue(TABLE, MetricTable.class), table.value());
+        QualityMetric notATable = reader.readValue("{\"accession\": \"MS:4000067\", \"value\": {\"a\": [1, 2], \"b\": 2, \"c\": [\"x\"]}}");
+        assertEquals(mapper.readValue("{\"a\": [1, 2], \"b\": 2, \"c\": [\"x\"]}", Map.class), notATable.value());
+        QualityMetric unknown = reader.readValue("{\"accession\": \"MS:0000000\", \"value\": [1, 2]}");
+        assertEquals(List.of(1, 2), unknown.value());
+
+        String obo = """
+                     [Term]
+                     id: MS:4999999
+                     name: test matrix
+                     is_a: MS:4000007 ! matrix
+                     """;
+        QcOntology ontology = QcOntology.load(new ByteArrayInputStream(obo.getBytes(StandardCharsets.UTF_8)));
+        ObjectReader matrixReader = reader.withAttribute(QcOntology.class, ontology);
+        QualityMetric matrix = matrixReader.readValue("{\"accession\": \"MS:4999999\", \"value\": [[1, 2], [3, null]]}");
+        assertInstanceOf(MetricMatrix.class, matrix.value());
+        assertEquals(MetricMatrix.of(Arrays.asList(List.of(1, 2), Arrays.asList(3, null))), matrix.value());
+        assertTrue(((MetricMatrix) matrix.value()).isIntegral());
+        QualityMetric floatingMatrix = matrixReader.readValue("{\"accession\": \"MS:4999999\", \"value\": [[1.5, null]]}");
+        assertEquals(new MetricMatrix(1, 2, new double[]{1.5, Double.NaN}), floatingMatrix.value());
+        QualityMetric mixedMatrix = matrixReader.readValue("{\"accession\": \"MS:4999999\", \"value\": [[1, 2.5], [null, 4]]}");
+        assertEquals(mapper.readValue("[[1, 2.5], [null, 4]]", List.class), mixedMatrix.value());
+        QualityMetric ragged = matrixReader.readValue("{\"accession\": \"MS:4999999\", \"value\": [[1, 2], [3], [\"x\", 4.5]]}");
+        assertEquals(mapper.readValue("[[1, 2], [3], [\"x\", 4.5]]", List.class), ragged.value());
+        QualityMetric mixedRow = matrixReader.readValue("{\"accession\": \"MS:4999999\", \"value\": [[1, 2.5], [3, \"x\"], 7]}");
+        assertEquals(mapper.readValue("[[1, 2.5], [3, \"x\"], 7]", List.class), mixedRow.value());
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class MzQCCodecTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testSettings() throws IOException {
+        MzQC mzQC = MzQCGenerator.generate(3, 1, 4);
+        MzQCCodec defaults = MzQCCodec.getDefault();
+        assertSame(defaults, MzQCCodec.getDefault());
+        assertTrue(defaults.isPretty());
+        assertTrue(defaults.isLenient());
+        assertEquals(Converter.toJsonString(mzQC), defaults.writeValueAsString(mzQC));
+
+        MzQCCodec compact = MzQCCodec.builder().pretty(false).build();
+        String json = compact.writeValueAsString(mzQC);
+        assertFalse(json.contains("\n"));
+        assertEquals(mzQC, compact.readValue(json));
+        assertEquals(mzQC, compact.readValue(defaults.writeValueAsSmile(mzQC)));
+
+        // modules are registered explicitly, never discovered from the classpath
+        MzQCCodec withoutModules = MzQCCodec.builder().modules().addModules(new SimpleModule("custom")).build();
+        assertTrue(withoutModules.getObjectMapper().getRegisteredModuleIds().contains("custom"));
+        assertFalse(withoutModules.getObjectMapper().getRegisteredModuleIds().contains("jackson-datatype-jsr310"));
+        assertEquals(mzQC, withoutModules.readValue(withoutModules.writeValueAsString(mzQC)));
+        assertThrows(IllegalArgumentException.class, () -> MzQCCodec.builder().addModules((SimpleModule) null));
+        assertThrows(IllegalArgumentException.class, () -> MzQCCodec.builder().recyclerPool(null));
+
+        Path file = tempDir.resolve("codec.mzQC.smile.gz");
+        compact.writeValue(file, mzQC);
+        assertEquals(mzQC, defaults.readValue(file));
+    }
+
+    @Test
+    public void testStrictParsing() throws IOException {
+        MzQC mzQC = MzQCGenerator.generate(1, 0, 2);
+        String json = MzQCCodec.builder().pretty(false).build().writeValueAsString(mzQC);
+        MzQCCodec lenient = MzQCCodec.getDefault();
+        MzQCCodec strict = MzQCCodec.builder().lenient(false).build();
+        assertFalse(strict.isLenient());
+        assertEquals(mzQC, strict.readValue(json));
+
+        List<String> lax = List.of(
+                "// comment\n" + json,
+                json.replace("\"version\":\"1.0.0\"", "\"version\":\"1.0.0\","),
+                json.replace("\"label\":\"run_0\"", "\"label\":\"run_0\","));
+        for (String document : lax) {
+            assertEquals(mzQC, lenient.readValue(document), document);
+            assertThrows(IOException.class, () -> strict.readValue(document), document);
+        }
+        String duplicate = json.replace("\"version\":\"1.0.0\"", "\"version\":\"1.0.0\",\"version\":\"1.0.0\"");
+        assertThrows(IOException.class, () -> strict.readValue(duplicate));
+        assertThrows(IOException.class, () -> strict.readValue(new ByteArrayInputStream((json + " {}").getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void testCodecAwareReadersAndWriters() throws IOException {
+        MzQC mzQC = MzQCGenerator.generate(3, 1, 4);
+        MzQCCodec compact = MzQCCodec.builder().pretty(false).build();
+        Path file = tempDir.resolve("compact.mzQC");
+        new MzQCWriter(file, mzQC, compact).close();
+        assertFalse(Files.readString(file).contains("\n"));
+        assertEquals(mzQC, compact.readValue(file));
+
+        // a strict codec rejects the comment that the default codec accepts
+        Path commented = tempDir.resolve("commented.mzQC");
+        Files.writeString(commented, "// comment\n" + Files.readString(file));
+        MzQCCodec strict = MzQCCodec.builder().lenient(false).build();
+        try ( MzQCReader reader = new MzQCReader(commented, Projection.all(), RunQuery.all())) {
+            assertEquals(mzQC, reader.read());
+        }
+        assertThrows(IOException.class, () -> new MzQCReader(commented, Projection.all(), RunQuery.all(), strict));
+        assertThrows(IOException.class, () -> MzQCIndex.build(commented, strict));
+        assertThrows(IOException.class, () -> new IndexedMzQCReader(commented, strict));
+        try ( IndexedMzQCReader reader = new IndexedMzQCReader(commented)) {
+            assertEquals(mzQC, reader.asMzQC());
+        }
+        String json = Files.readString(commented);
+        assertTrue(MzQCValidator.getDefault().validate(json).isEmpty());
+        assertThrows(IOException.class, () -> MzQCValidator.getDefault().validate(json, strict));
+
+        // the validators of read are configured in the builder
+        String schema = "{\"$schema\": \"http://json-schema.org/draft-07/schema#\", \"type\": \"object\", \"required\": [\"missing\"]}";
+        MzQCValidator validator = new MzQCValidator(new ByteArrayInputStream(schema.getBytes(StandardCharsets.UTF_8)));
+        MzQCCodec validating = MzQCCodec.builder().validator(validator).build();
+        ReadResult result = validating.read(Files.newInputStream(file), ReadOptions.defaults());
+        assertEquals(1, result.validationMessages().size());
+        assertEquals(mzQC, result.mzQC());
+        assertTrue(compact.read(Files.newInputStream(file), ReadOptions.defaults()).validationMessages().isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> MzQCCodec.builder().validator(null));
+        assertThrows(IllegalArgumentException.class, () -> MzQCCodec.builder().semanticValidator(null));
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        MzQCCodec codec = MzQCCodec.builder()
+                .pretty(false)
+                .lenient(false)
+                .recyclerPool(JsonRecyclerPools.newBoundedPool(4))
+                .build();
+        MzQC mzQC = MzQCGenerator.generate(5, 1, 4);
+        String expected = codec.writeValueAsString(mzQC);
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < 50; j++) {
+                        String json = codec.writeValueAsString(mzQC);
+                        if (!expected.equals(json) || !mzQC.equals(codec.readValue(json)) || !mzQC.equals(codec.readValue(codec.writeValueAsSmile(mzQC)))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            start.countDown();
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
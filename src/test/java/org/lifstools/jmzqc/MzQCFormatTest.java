@@ -0,0 +1,124 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class MzQCFormatTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testDetection() {
+        assertEquals(MzQCFormat.SMILE, MzQCFormat.detect(":)\n\u0004".getBytes(StandardCharsets.US_ASCII), 4));
+        assertEquals(MzQCFormat.JSON, MzQCFormat.detect("{\"mzQC\"".getBytes(StandardCharsets.US_ASCII), 7));
+        assertEquals(MzQCFormat.JSON, MzQCFormat.detect(new byte[]{':', ')'}, 2));
+        assertEquals(MzQCFormat.SMILE, MzQCFormat.forFileName("run" + MzQCFormat.SMILE.getExtension()));
+        assertEquals(MzQCFormat.SMILE, MzQCFormat.forFileName("RUN.SML"));
+        assertEquals(MzQCFormat.JSON, MzQCFormat.forFileName("run.mzQC"));
+    }
+
+    @Test
+    public void testLosslessSmileRoundTrip() throws IOException {
+        MzQC mzQC = MzQCGenerator.generate(3, 1, 5, 100);
+        String json = Converter.toJsonString(mzQC);
+        byte[] smile = Converter.toSmileBytes(mzQC);
+        assertEquals(MzQCFormat.SMILE, MzQCFormat.detect(smile, smile.length));
+        assertTrue(smile.length < json.getBytes(StandardCharsets.UTF_8).length);
+
+        MzQC fromSmile = Converter.of(smile);
+        assertEquals(mzQC, fromSmile);
+        assertEquals(json, Converter.toJsonString(fromSmile));
+
+        // JSON to Smile to JSON at the token level, independent of binding
+        JsonNode tree = Converter.getObjectMapper().readTree(json);
+        byte[] treeSmile = Converter.getSmileMapper().writeValueAsBytes(tree);
+        assertEquals(tree, Converter.getSmileMapper().readTree(treeSmile));
+    }
+
+    @Test
+    public void testReadSmileFiles() throws IOException {
+        MzQC mzQC = MzQCGenerator.generate(4, 2, 3, 10);
+        File smileFile = Converter.toFile(mzQC, tempDir.resolve("test" + MzQCFormat.SMILE.getExtension()).toFile());
+        File jsonFile = Converter.toFile(mzQC, tempDir.resolve("test.mzQC").toFile());
+        assertEquals(MzQCFormat.SMILE, MzQCFormat.detect(Files.readAllBytes(smileFile.toPath()), 3));
+        assertEquals('{', Files.readString(jsonFile.toPath()).charAt(0));
+
+        assertEquals(mzQC, Converter.of(smileFile));
+        assertTrue(Converter.validate(smileFile).isEmpty());
+        ReadResult result = Converter.read(smileFile.toPath());
+        assertTrue(result.isValid());
+        assertEquals(mzQC, result.mzQC());
+        try (MzQCReader reader = new MzQCReader(smileFile.toPath())) {
+            assertEquals(mzQC.creationDate(), reader.getHeader().creationDate());
+            try (Stream<BaseQuality> runs = reader.runQualities()) {
+                List<BaseQuality> runQualities = runs.collect(Collectors.toList());
+                assertEquals(mzQC.runQualities(), runQualities);
+            }
+        }
+    }
+
+    @Test
+    public void testGzipFiles() throws IOException {
+        MzQC mzQC = MzQCGenerator.generate(5, 1, 3, 50);
+        File jsonGz = Converter.toJsonFile(mzQC, tempDir.resolve("test.mzQC.gz").toFile());
+        File smileGz = Converter.toFile(mzQC, tempDir.resolve("test.mzQC.smile.gz").toFile());
+        File json = Converter.toJsonFile(mzQC, tempDir.resolve("test.mzQC").toFile());
+        for (File file : List.of(jsonGz, smileGz)) {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            assertTrue(MzQCFormat.isGzip(bytes, bytes.length));
+            assertTrue(bytes.length < json.length());
+            assertEquals(mzQC, Converter.of(file));
+            assertTrue(Converter.validate(file).isEmpty());
+            assertEquals(mzQC, Converter.read(file.toPath()).mzQC());
+            try (MzQCReader reader = new MzQCReader(file.toPath())) {
+                try (Stream<BaseQuality> sets = reader.setQualities()) {
+                    assertEquals(mzQC.setQualities(), sets.collect(Collectors.toList()));
+                }
+            }
+        }
+        assertEquals(MzQCFormat.SMILE, MzQCFormat.forFileName(smileGz.getName()));
+
+        Path written = tempDir.resolve("written.mzQC.gz");
+        try (MzQCWriter writer = new MzQCWriter(written, MzQCGenerator.generate(0, 0, 0))) {
+            for (BaseQuality run : mzQC.runQualities()) {
+                writer.writeRunQuality(run);
+            }
+        }
+        assertEquals(mzQC.runQualities(), Converter.of(written.toFile()).runQualities());
+
+        List<Path> resolved = BatchValidator.resolve(List.of(tempDir.toString()));
+        assertEquals(4, resolved.size());
+        assertTrue(new BatchValidator(2).validate(resolved).stream().allMatch((r) -> r.status() == BatchValidator.Status.VALID));
+    }
+}
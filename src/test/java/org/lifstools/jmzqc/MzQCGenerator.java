@@ -0,0 +1,140 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.net.URI;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates synthetic, schema-valid mzQC documents for tests.
+ *
+ * @author nilshoffmann
+ */
+public class MzQCGenerator {
+
+    public static final OffsetDateTime CREATION_DATE = OffsetDateTime.of(2021, 11, 10, 14, 3, 0, 0, ZoneOffset.UTC);
+
+    private static final CvParameter COUNT_UNIT = new CvParameter("UO:0000189", null, "count unit", null);
+    private static final CvParameter HERTZ = new CvParameter("UO:0000106", null, "hertz", null);
+
+    /**
+     * Single value metrics of the QC controlled vocabulary, as accession,
+     * name and unit, in the order they are added to each run and set.
+     */
+    private static final List<QualityMetric> METRICS = List.of(
+            metric("MS:4000059", "Number of MS1 spectra", COUNT_UNIT),
+            metric("MS:4000060", "Number of MS2 spectra", COUNT_UNIT),
+            metric("MS:4000135", "Number of chromatograms", COUNT_UNIT),
+            metric("MS:4000184", "Number of different distinct proteins from all PSM", COUNT_UNIT),
+            metric("MS:4000186", "Total number of PSM", COUNT_UNIT),
+            metric("MS:4000053", "RT duration", null),
+            metric("MS:4000065", "Precursor median m/z for IDs", null),
+            metric("MS:4000072", "Interquartile RT period for peptide identifications", null),
+            metric("MS:4000073", "Peptide identification rate of the interquartile RT period", null),
+            metric("MS:4000074", "Median MS1 peak FWHM for peptides", null),
+            metric("MS:4000077", "Area under TIC", null),
+            metric("MS:4000103", "Total MS1 density", null),
+            metric("MS:4000104", "Total MS2 density", null),
+            metric("MS:4000140", "Fastest frequency for MS level 1 collection", HERTZ),
+            metric("MS:4000142", "Slowest frequency for MS level 1 collection", HERTZ),
+            metric("MS:4000172", "MS1 signal jump (10x) count", null),
+            metric("MS:4000173", "MS1 signal fall (10x) count", null),
+            metric("MS:4000177", "Mean charge in identified spectra", null),
+            metric("MS:4000178", "Median charge in identified spectra", null),
+            metric("MS:4000182", "Mean precursor charge in all MS2", null));
+
+    /**
+     * Create an mzQC document with the given number of runs and sets, each
+     * carrying the first {@code metricsPerRun} of 20 single value metrics.
+     * Metric j of run or set i has the value {@code i * 1000 + j}.
+     */
+    public static MzQC generate(int runs, int sets, int metricsPerRun) {
+        return generate(runs, sets, metricsPerRun, 0);
+    }
+
+    /**
+     * Create an mzQC document like {@link #generate(int, int, int)}, where
+     * each run additionally carries a total ion current chromatogram table
+     * (MS:4000067) with {@code tableRows} rows, if tableRows is positive.
+     */
+    public static MzQC generate(int runs, int sets, int metricsPerRun, int tableRows) {
+        List<BaseQuality> runQualities = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            BaseQuality run = quality("run_" + i, i, metricsPerRun);
+            if (tableRows > 0) {
+                run.qualityMetrics().add(ticTable(i, tableRows));
+            }
+            runQualities.add(run);
+        }
+        List<BaseQuality> setQualities = new ArrayList<>();
+        for (int i = 0; i < sets; i++) {
+            setQualities.add(quality("set_" + i, i, metricsPerRun));
+        }
+        return new MzQC(
+                "contact@example.org",
+                "Test Contact",
+                asList(
+                        new ControlledVocabulary("Proteomics Standards Initiative Mass Spectrometry Ontology", URI.create("https://github.com/HUPO-PSI/psi-ms-CV/releases/download/4.1.103/psi-ms.obo"), "4.1.103"),
+                        new ControlledVocabulary("Unit Ontology", URI.create("http://purl.obolibrary.org/obo/uo.owl"), "2020-03-10")),
+                CREATION_DATE,
+                "synthetic test file",
+                runQualities,
+                setQualities,
+                "1.0.0");
+    }
+
+    static BaseQuality quality(String label, int index, int metricsPerRun) {
+        var inputFile = new InputFile(
+                new CvParameter("MS:1000584", "mzML format", "mzML format", null),
+                asList(new CvParameter("MS:1000747", "completion time", "completion time", "2021-11-10T14:03:00Z")),
+                URI.create("file:///data/" + label + ".mzML"),
+                label + ".mzML");
+        var software = new AnalysisSoftware("MS:1003162", "PTX-QC", "PTX-QC", null, URI.create("https://github.com/cbielow/PTXQC/"), "1.0.0");
+        var metadata = new Metadata(asList(software), null, asList(inputFile), label);
+        List<QualityMetric> metrics = new ArrayList<>();
+        if (metricsPerRun > METRICS.size()) {
+            throw new IllegalArgumentException("At most " + METRICS.size() + " metrics per run are supported, was " + metricsPerRun);
+        }
+        for (int j = 0; j < metricsPerRun; j++) {
+            QualityMetric metric = METRICS.get(j);
+            metrics.add(new QualityMetric(metric.accession(), metric.description(), metric.name(), index * 1000 + j, metric.unit()));
+        }
+        return new BaseQuality(metadata, metrics);
+    }
+
+    private static QualityMetric metric(String accession, String name, CvParameter unit) {
+        return new QualityMetric(accession, null, name, null, unit == null ? null : new Unit(unit, null));
+    }
+
+    static QualityMetric ticTable(int index, int rows) {
+        List<Double> retentionTimes = new ArrayList<>(rows);
+        List<Double> intensities = new ArrayList<>(rows);
+        for (int r = 0; r < rows; r++) {
+            retentionTimes.add(r * 0.5d + index);
+            intensities.add(Math.abs(Math.sin(r + index)) * 1.0e9d + 0.123456789d);
+        }
+        Map<String, Object> table = new LinkedHashMap<>();
+        table.put("MS:4000108", retentionTimes);
+        table.put("MS:4000109", intensities);
+        return new QualityMetric("MS:4000067", "total ion current chromatogram", "Total ion current chromatogram table", MetricTable.of(table), null);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class MzQCIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testRandomAccess() throws IOException {
+        MzQC mzQC = MzQCGenerator.generate(50, 3, 4, 10);
+        Path file = Converter.toJsonFile(mzQC, tempDir.resolve("indexed.mzQC").toFile()).toPath();
+        try ( IndexedMzQCReader reader = new IndexedMzQCReader(file)) {
+            assertTrue(Files.isRegularFile(MzQCIndex.sidecarPath(file)));
+            assertEquals(50, reader.getRunCount());
+            assertEquals(3, reader.getSetCount());
+            assertEquals(mzQC.creationDate(), reader.getHeader().creationDate());
+            assertEquals(mzQC.controlledVocabularies(), reader.getHeader().controlledVocabularies());
+            assertEquals(mzQC.runQualities().get(42), reader.getRunQuality(42));
+            assertEquals(mzQC.runQualities().get(0), reader.getRunQuality(0));
+            assertEquals(mzQC.runQualities().get(7), reader.getRunQuality("run_7"));
+            assertEquals(mzQC.setQualities().get(2), reader.getSetQuality(2));
+            assertEquals("set_1", reader.getIndex().getSetLabel(1));
+            assertThrows(IllegalArgumentException.class, () -> reader.getRunQuality(50));
+            assertThrows(IllegalArgumentException.class, () -> reader.getRunQuality("missing"));
+        }
+    }
+
+    @Test
+    public void testLazyView() throws IOException {
+        MzQC mzQC = MzQCGenerator.generate(20, 2, 3);
+        Path file = Converter.toJsonFile(mzQC, tempDir.resolve("lazy.mzQC").toFile()).toPath();
+        try ( IndexedMzQCReader reader = new IndexedMzQCReader(file)) {
+            MzQC lazy = reader.asMzQC();
+            LazyQualityList runs = (LazyQualityList) lazy.runQualities();
+            assertEquals(20, runs.size());
+            assertEquals(0, runs.cachedCount());
+            assertEquals(mzQC.getRunQualityMetrics(12), lazy.getRunQualityMetrics(12));
+            assertSame(lazy.runQualities().get(12), lazy.runQualities().get(12));
+            assertEquals(1, runs.cachedCount());
+            assertEquals(mzQC.setQualities().get(1), lazy.setQualities().get(1));
+            assertThrows(UnsupportedOperationException.class, () -> lazy.runQualities().remove(0));
+            assertThrows(IndexOutOfBoundsException.class, () -> lazy.runQualities().get(20));
+            assertEquals(mzQC, lazy);
+        }
+        MzQC closed;
+        try ( IndexedMzQCReader reader = new IndexedMzQCReader(file)) {
+            closed = reader.asMzQC();
+        }
+        assertThrows(UncheckedIOException.class, () -> closed.runQualities().get(13));
+    }
+
+    @Test
+    public void testSidecarInvalidation() throws IOException {
+        Path file = Converter.toJsonFile(MzQCGenerator.generate(5, 0, 2), tempDir.resolve("changing.mzQC").toFile()).toPath();
+        assertTrue(MzQCIndex.load(file).isEmpty());
+        MzQCIndex index = MzQCIndex.of(file);
+        assertTrue(MzQCIndex.load(file).isPresent());
+        assertEquals(index.getRunOffset(3), MzQCIndex.load(file).get().getRunOffset(3));
+
+        MzQC changed = MzQCGenerator.generate(8, 0, 2);
+        Converter.toJsonFile(changed, file.toFile());
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+        assertFalse(index.isValidFor(file));
+        assertTrue(MzQCIndex.load(file).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> new IndexedMzQCReader(file, index));
+        try ( IndexedMzQCReader reader = new IndexedMzQCReader(file)) {
+            assertEquals(8, reader.getRunCount());
+            assertEquals(changed.runQualities().get(7), reader.getRunQuality(7));
+        }
+    }
+
+    @Test
+    public void testDamagedSidecar() throws IOException {
+        MzQC mzQC = MzQCGenerator.generate(4, 1, 2);
+        Path file = Converter.toJsonFile(mzQC, tempDir.resolve("damaged.mzQC").toFile()).toPath();
+        Path sidecar = MzQCIndex.sidecarPath(file);
+        MzQCIndex.of(file);
+        String complete = Files.readString(sidecar);
+        // a partially written sidecar is stale and replaced
+        Files.writeString(sidecar, complete.substring(0, complete.length() / 2));
+        assertTrue(MzQCIndex.load(file).isEmpty());
+        try ( IndexedMzQCReader reader = new IndexedMzQCReader(file)) {
+            assertEquals(mzQC.runQualities().get(3), reader.getRunQuality(3));
+        }
+        assertEquals(complete, Files.readString(sidecar));
+        try ( var files = Files.list(tempDir)) {
+            assertEquals(2, files.count());
+        }
+
+        // an index that can not be written is still returned
+        Files.delete(sidecar);
+        Files.createDirectories(sidecar.resolve("blocked"));
+        MzQCIndex index = MzQCIndex.of(file);
+        assertEquals(4, index.getRunCount());
+        assertTrue(MzQCIndex.load(file).isEmpty());
+    }
+
+    @Test
+    public void testUnsupportedFormats() throws IOException {
+        MzQC mzQC = MzQCGenerator.generate(2, 0, 2);
+        Path gzip = Converter.toJsonFile(mzQC, tempDir.resolve("compressed.mzQC.gz").toFile()).toPath();
+        Path smile = Converter.toSmileFile(mzQC, tempDir.resolve("binary.mzQC.smile").toFile()).toPath();
+        assertThrows(IOException.class, () -> MzQCIndex.build(gzip));
+        assertThrows(IOException.class, () -> MzQCIndex.build(smile));
+    }
+}
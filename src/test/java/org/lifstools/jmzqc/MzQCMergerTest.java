@@ -0,0 +1,116 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class MzQCMergerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path singleRun(String label, String completionTime, ControlledVocabulary extraCv, boolean withSet) throws IOException {
+        MzQC template = MzQCGenerator.generate(1, withSet ? 1 : 0, 2);
+        BaseQuality run = template.runQualities().get(0);
+        var inputFile = new InputFile(
+                new CvParameter("MS:1000584", "mzML format", "mzML format", null),
+                asList(new CvParameter(MzQCMerger.COMPLETION_TIME, "completion time", "completion time", completionTime)),
+                URI.create("file:///data/" + label + ".mzML"),
+                label + ".mzML");
+        Metadata metadata = new Metadata(run.metadata().analysisSoftware(), null, asList(inputFile), label);
+        List<ControlledVocabulary> cvs = new ArrayList<>(template.controlledVocabularies());
+        cvs.add(extraCv);
+        MzQC mzQC = new MzQC(template.contactAddress(), template.contactName(), cvs, template.creationDate(), template.description(),
+                asList(new BaseQuality(metadata, run.qualityMetrics())), template.setQualities(), template.version());
+        return Converter.toJsonFile(mzQC, tempDir.resolve(label + ".mzQC").toFile()).toPath();
+    }
+
+    @Test
+    public void testMerge() throws IOException {
+        ControlledVocabulary extra = new ControlledVocabulary("Extra", URI.create("https://example.org/extra.obo"), "1");
+        ControlledVocabulary other = new ControlledVocabulary("Other", URI.create("https://example.org/other.obo"), "2");
+        List<Path> inputs = List.of(
+                singleRun("c", "2021-11-10T10:00:00Z", extra, true),
+                singleRun("a", "2021-11-10T12:00:00Z", other, false),
+                singleRun("b", "2021-11-10T08:00:00Z", extra, true));
+
+        Path byInput = tempDir.resolve("by-input.mzQC.gz");
+        assertEquals(3, new MzQCMerger(inputs).merge(byInput));
+        MzQC merged = Converter.of(byInput.toFile());
+        assertEquals(List.of("c", "a", "b"), labels(merged));
+        assertEquals(4, merged.controlledVocabularies().size());
+        assertEquals(List.of(extra, other), merged.controlledVocabularies().subList(2, 4));
+        assertEquals(2, merged.setQualities().size());
+        assertEquals(MzQCGenerator.CREATION_DATE, merged.creationDate());
+        assertTrue(Converter.validate(byInput.toFile()).isEmpty());
+
+        Path byDate = tempDir.resolve("by-date.mzQC");
+        new MzQCMerger(inputs, MzQCMerger.Order.CREATION_DATE).merge(byDate);
+        assertEquals(List.of("b", "c", "a"), labels(Converter.of(byDate.toFile())));
+
+        Path byLabel = tempDir.resolve("by-label.mzQC");
+        new MzQCMerger(inputs, MzQCMerger.Order.LABEL).merge(byLabel);
+        MzQC mergedByLabel = Converter.of(byLabel.toFile());
+        assertEquals(List.of("a", "b", "c"), labels(mergedByLabel));
+        assertEquals(merged.setQualities(), mergedByLabel.setQualities());
+
+        // the output format follows the file name
+        Path smile = tempDir.resolve("by-label.mzQC.smile");
+        new MzQCMerger(inputs, MzQCMerger.Order.LABEL).merge(smile);
+        byte[] data = Files.readAllBytes(smile);
+        assertEquals(MzQCFormat.SMILE, MzQCFormat.detect(data, data.length));
+        assertEquals(mergedByLabel, Converter.of(smile.toFile()));
+    }
+
+    @Test
+    public void testMergeIntoInput() throws IOException {
+        ControlledVocabulary extra = new ControlledVocabulary("Extra", URI.create("https://example.org/extra.obo"), "1");
+        Path first = singleRun("a", "2021-11-10T10:00:00Z", extra, false);
+        Path second = singleRun("b", "not a date", extra, false);
+        Path third = singleRun("c", "", extra, false);
+        // the output is replaced only after it has been read as an input
+        assertEquals(3, new MzQCMerger(List.of(first, second, third), MzQCMerger.Order.CREATION_DATE).merge(first));
+        assertEquals(List.of("a", "b", "c"), labels(Converter.of(first.toFile())));
+        try ( var files = Files.list(tempDir)) {
+            assertEquals(3, files.count());
+        }
+        assertEquals(null, MzQCMerger.completionTime(Converter.of(third.toFile()).runQualities().get(0)));
+    }
+
+    @Test
+    public void testNoInputs() {
+        assertThrows(IllegalArgumentException.class, () -> new MzQCMerger(List.of()));
+    }
+
+    private static List<String> labels(MzQC mzQC) {
+        return mzQC.runQualities().stream().map((r) -> r.metadata().label()).toList();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class MzQCReaderTest {
+
+    @Test
+    public void testStreamRunAndSetQualities() throws IOException {
+        MzQC mzQC = MzQCGenerator.generate(25, 3, 4);
+        File file = File.createTempFile("reader-test", ".mzQC");
+        Converter.toJsonFile(mzQC, file);
+        MzQC expected = Converter.of(file);
+        try ( MzQCReader reader = new MzQCReader(file)) {
+            MzQC header = reader.getHeader();
+            assertEquals("1.0.0", header.version());
+            assertEquals(expected.creationDate(), header.creationDate());
+            assertEquals(expected.controlledVocabularies(), header.controlledVocabularies());
+            assertTrue(header.runQualities().isEmpty());
+            assertTrue(header.setQualities().isEmpty());
+            try ( Stream<BaseQuality> runs = reader.runQualities()) {
+                assertEquals(expected.runQualities(), runs.toList());
+            }
+            try ( Stream<BaseQuality> sets = reader.setQualities()) {
+                assertEquals(expected.setQualities(), sets.toList());
+            }
+        }
+    }
+
+    @Test
+    public void testHeaderAfterQualities() throws IOException {
+        String json = """
+                      {"mzQC": {
+                        "runQualities": [
+                          {"metadata": {"label": "a", "inputFiles": [{"location": "file:///a.mzML", "name": "a.mzML", "fileFormat": {"accession": "MS:1000584", "name": "mzML format"}}],
+                                        "analysisSoftware": [{"accession": "MS:1003162", "name": "PTX-QC", "version": "1.0", "uri": "https://github.com/cbielow/PTXQC/"}]},
+                           "qualityMetrics": [{"accession": "MS:4000059", "name": "number of MS1 spectra", "value": 13405}]}
+                        ],
+                        "version": "1.0.0",
+                        "creationDate": "2020-12-01T11:56:34Z",
+                        "controlledVocabularies": [{"name": "PSI-MS", "uri": "https://github.com/HUPO-PSI/psi-ms-CV/releases/download/4.1.103/psi-ms.obo", "version": "4.1.103"}]
+                      }}
+                      """;
+        File file = File.createTempFile("reader-test-header", ".mzQC");
+        Files.writeString(file.toPath(), json, StandardCharsets.UTF_8);
+        try ( MzQCReader reader = new MzQCReader(file)) {
+            assertEquals(1, reader.getHeader().controlledVocabularies().size());
+            Iterator<BaseQuality> runs = reader.runQualitiesIterator();
+            assertTrue(runs.hasNext());
+            List<QualityMetric> metrics = runs.next().qualityMetrics();
+            assertEquals(13405, metrics.get(0).toInteger());
+            assertFalse(runs.hasNext());
+            assertFalse(reader.setQualitiesIterator().hasNext());
+        }
+    }
+
+    @Test
+    public void testProjection() throws IOException {
+        MzQC mzQC = MzQCGenerator.generate(10, 2, 4, 20);
+        File file = File.createTempFile("reader-projection-test", ".mzQC");
+        Converter.toJsonFile(mzQC, file);
+
+        Projection projection = Projection.all()
+                .withRunIndices(1, 7)
+                .withRunLabels("run_3")
+                .withAccessions("MS:4000060", "MS:4000067")
+                .withDropTableValues(true);
+        assertFalse(projection.isAll());
+        try ( MzQCReader reader = new MzQCReader(file, projection)) {
+            MzQC projected = reader.read();
+            assertEquals(List.of("run_1", "run_3", "run_7"), projected.runQualities().stream().map((r) -> r.metadata().label()).toList());
+            for (BaseQuality run : projected.runQualities()) {
+                assertEquals(List.of("MS:4000060", "MS:4000067"), run.qualityMetrics().stream().map(QualityMetric::accession).toList());
+                assertEquals(null, run.qualityMetrics().get(1).value());
+            }
+            BaseQuality expectedRun = mzQC.runQualities().get(3);
+            assertEquals(expectedRun.metadata(), projected.runQualities().get(1).metadata());
+            assertEquals(expectedRun.qualityMetrics().get(1).value(), projected.runQualities().get(1).qualityMetrics().get(0).value());
+            assertEquals(2, projected.setQualities().size());
+            assertEquals(List.of("MS:4000060"), projected.setQualities().get(0).qualityMetrics().stream().map(QualityMetric::accession).toList());
+        }
+        try ( MzQCReader reader = new MzQCReader(file, Projection.all().withAccessions("MS:4000067"))) {
+            assertEquals(Converter.of(file).getRunQualityMetrics(5).get(4), reader.read().getRunQualityMetrics(5).get(0));
+        }
+    }
+
+    @Test
+    public void testProjectionWithUnorderedProperties() throws IOException {
+        String json = """
+            {"mzQC": {
+              "version": "1.0.0",
+              "creationDate": "2021-11-10T14:03:00Z",
+              "runQualities": [
+                {"qualityMetrics": [
+                   {"value": 1, "name": "a", "accession": "MS:4000059"},
+                   {"value": {"MS:4000108": [1.0]}, "accession": "MS:4000067", "name": "b"}
+                 ],
+                 "metadata": {"label": "first"}},
+                {"qualityMetrics": [{"accession": "MS:4000059", "name": "a", "value": 2}],
+                 "metadata": {"label": "second"}}
+              ]
+            }}
+            """;
+        File file = File.createTempFile("reader-projection-unordered-test", ".mzQC");
+        Files.writeString(file.toPath(), json, StandardCharsets.UTF_8);
+        Projection projection = Projection.all().withRunLabels("first").withAccessions("MS:4000059");
+        try ( MzQCReader reader = new MzQCReader(file, projection)) {
+            List<BaseQuality> runs = reader.read().runQualities();
+            assertEquals(1, runs.size());
+            assertEquals("first", runs.get(0).metadata().label());
+            assertEquals(List.of(new QualityMetric("MS:4000059", null, "a", 1, null)), runs.get(0).qualityMetrics());
+        }
+    }
+
+    @Test
+    public void testProjectionDropsTableAndMatrixValues() throws IOException {
+        String json = """
+            {"mzQC": {
+              "version": "1.0.0",
+              "creationDate": "2021-11-10T14:03:00Z",
+              "runQualities": [
+                {"metadata": {"label": "first"},
+                 "qualityMetrics": [
+                   {"value": [[1, 2], [3, 4]], "accession": "MS:4000000", "name": "matrix"},
+                   {"accession": "MS:4000001", "name": "matrix", "value": [[1.5], [null]]},
+                   {"accession": "MS:4000067", "value": {"MS:4000108": [1.0]}, "name": "table"},
+                   {"name": "tuple", "accession": "MS:4000051", "value": [1, 2, 3]},
+                   {"accession": "MS:4000059", "value": 7}
+                 ]}
+              ]
+            }}
+            """;
+        File file = File.createTempFile("reader-projection-drop-test", ".mzQC");
+        Files.writeString(file.toPath(), json, StandardCharsets.UTF_8);
+        try ( MzQCReader reader = new MzQCReader(file, Projection.all().withDropTableValues(true))) {
+            List<QualityMetric> metrics = reader.read().getRunQualityMetrics(0);
+            assertEquals(List.of("MS:4000000", "MS:4000001", "MS:4000067", "MS:4000051", "MS:4000059"), metrics.stream().map(QualityMetric::accession).toList());
+            assertEquals(List.of("matrix", "matrix", "table", "tuple"), metrics.subList(0, 4).stream().map(QualityMetric::name).toList());
+            assertNull(metrics.get(0).value());
+            assertNull(metrics.get(1).value());
+            assertNull(metrics.get(2).value());
+            assertArrayEquals(new long[]{1, 2, 3}, (long[]) metrics.get(3).value());
+            assertEquals(7, metrics.get(4).value());
+        }
+        try ( MzQCReader reader = new MzQCReader(file, Projection.all().withAccessions("MS:4000051", "MS:4000067"))) {
+            assertEquals(Converter.of(file).getRunQualityMetrics(0).subList(2, 4), reader.read().getRunQualityMetrics(0));
+        }
+    }
+}
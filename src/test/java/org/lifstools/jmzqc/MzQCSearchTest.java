@@ -0,0 +1,193 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class MzQCSearchTest {
+
+    private static final OffsetDateTime NOV_10 = OffsetDateTime.parse("2021-11-10T00:00:00Z");
+
+    @TempDir
+    Path tempDir;
+
+    private Path write(String name, MzQC mzQC) throws IOException {
+        return Converter.toJsonFile(mzQC, tempDir.resolve(name).toFile()).toPath();
+    }
+
+    private static List<String> labels(Stream<BaseQuality> runs) {
+        try (runs) {
+            return runs.map((r) -> r.metadata().label()).toList();
+        }
+    }
+
+    @Test
+    public void testReaderPushdown() throws IOException {
+        // metric MS:4000059 of run i has the value i * 1000
+        Path file = write("query.mzQC", MzQCGenerator.generate(10, 1, 3));
+        RunQuery range = RunQuery.all().withValue("MS:4000059", 2000, 4000);
+        try ( MzQCReader reader = new MzQCReader(file, Projection.all(), range)) {
+            assertEquals(List.of("run_2", "run_3", "run_4"), labels(reader.runQualities()));
+            // set qualities are not filtered
+            assertEquals(List.of("set_0"), labels(reader.setQualities()));
+            assertEquals(3, reader.read().runQualities().size());
+        }
+        RunQuery combined = range.withValue("MS:4000135", 0, 3002).withLabels("run_3", "run_4", "run_5");
+        try ( MzQCReader reader = new MzQCReader(file, Projection.all().withAccessions("MS:4000060"), combined)) {
+            List<BaseQuality> runs = reader.read().runQualities();
+            assertEquals(1, runs.size());
+            assertEquals("run_3", runs.get(0).metadata().label());
+            // constrained metrics are evaluated, but only projected metrics are returned
+            assertEquals(List.of("MS:4000060"), runs.get(0).qualityMetrics().stream().map(QualityMetric::accession).toList());
+        }
+        RunQuery byFile = RunQuery.all().withInputFileNames("run_7.mzML", "other.mzML");
+        try ( MzQCReader reader = new MzQCReader(file, Projection.all(), byFile)) {
+            assertEquals(List.of("run_7"), labels(reader.runQualities()));
+        }
+        RunQuery unknown = RunQuery.all().withValue("MS:0000000", 0, 1);
+        try ( MzQCReader reader = new MzQCReader(file, Projection.all(), unknown)) {
+            assertEquals(List.of(), labels(reader.runQualities()));
+        }
+    }
+
+    @Test
+    public void testSharedAccession() throws IOException {
+        // a run matches if any metric with the accession lies within the range
+        String json = """
+                {"mzQC": {"version": "1.0.0", "creationDate": "2021-11-01T00:00:00Z",
+                  "runQualities": [
+                    {"metadata": {"inputFiles": [], "analysisSoftware": [], "label": "first"},
+                     "qualityMetrics": [{"accession": "MS:4000059", "name": "a", "value": 50},
+                                        {"accession": "MS:4000059", "name": "a", "value": 5}]},
+                    {"metadata": {"inputFiles": [], "analysisSoftware": [], "label": "second"},
+                     "qualityMetrics": [{"accession": "MS:4000059", "name": "a", "value": 5},
+                                        {"accession": "MS:4000059", "name": "a", "value": 50}]},
+                    {"metadata": {"inputFiles": [], "analysisSoftware": [], "label": "none"},
+                     "qualityMetrics": [{"accession": "MS:4000059", "name": "a", "value": 50},
+                                        {"accession": "MS:4000059", "name": "a", "value": "x"}]}
+                  ]}}
+                """;
+        Path file = tempDir.resolve("shared.mzQC");
+        Files.writeString(file, json);
+        RunQuery query = RunQuery.all().withValue("MS:4000059", 0, 10);
+        try ( MzQCReader reader = new MzQCReader(file, Projection.all(), query)) {
+            assertEquals(List.of("first", "second"), labels(reader.runQualities()));
+        }
+        MzQC mzQC = Converter.of(file.toFile());
+        assertEquals(List.of(true, true, false), mzQC.runQualities().stream().map((r) -> query.matches(r, mzQC.creationDate())).toList());
+        // every range must be satisfied, but not necessarily by the same metric
+        RunQuery both = query.withValue("MS:4000059", 40, 60);
+        assertEquals(List.of(true, true, false), mzQC.runQualities().stream().map((r) -> both.matches(r, mzQC.creationDate())).toList());
+        try ( MzQCReader reader = new MzQCReader(file, Projection.all().withAccessions("MS:4000060"), both)) {
+            assertEquals(List.of("first", "second"), labels(reader.runQualities()));
+        }
+    }
+
+    @Test
+    public void testCreationDate() throws IOException {
+        // runs without completion time fall back to the creation date of the document
+        String json = """
+                {"mzQC": {"version": "1.0.0", "creationDate": "2021-11-01T00:00:00Z",
+                  "runQualities": [
+                    {"qualityMetrics": [{"accession": "MS:4000059", "name": "a", "value": 5}],
+                     "metadata": {"inputFiles": [{"name": "late.mzML", "location": "file:///late.mzML", "fileFormat": {"accession": "MS:1000584", "name": "mzML format"},
+                       "fileProperties": [{"accession": "MS:1000747", "name": "completion time", "value": "2021-11-20T10:00:00Z"}]}],
+                       "analysisSoftware": [], "label": "late"}},
+                    {"metadata": {"inputFiles": [], "analysisSoftware": [], "label": "undated"},
+                     "qualityMetrics": [{"accession": "MS:4000059", "name": "a", "value": 50}]}
+                  ]}}
+                """;
+        Path file = tempDir.resolve("dates.mzQC");
+        Files.writeString(file, json);
+        try ( MzQCReader reader = new MzQCReader(file, Projection.all(), RunQuery.all().withCreationDate(NOV_10, null))) {
+            assertEquals(List.of("late"), labels(reader.runQualities()));
+        }
+        try ( MzQCReader reader = new MzQCReader(file, Projection.all(), RunQuery.all().withCreationDate(null, NOV_10))) {
+            assertEquals(List.of("undated"), labels(reader.runQualities()));
+        }
+        // metrics before metadata are evaluated once the metadata is known
+        try ( MzQCReader reader = new MzQCReader(file, Projection.all(), RunQuery.all().withCreationDate(NOV_10, null).withValue("MS:4000059", 0, 10))) {
+            assertEquals(List.of("late"), labels(reader.runQualities()));
+        }
+        // the search reads files in one pass, unless the creation date follows the runs
+        Path reordered = tempDir.resolve("reordered.mzQC");
+        Files.writeString(reordered, json.replace("\"creationDate\": \"2021-11-01T00:00:00Z\",", "").replace("]}}", "], \"creationDate\": \"2021-11-01T00:00:00Z\"}}"));
+        try ( Stream<MzQCSearch.Hit> hits = new MzQCSearch(2).search(List.of(file, reordered), RunQuery.all().withCreationDate(null, NOV_10))) {
+            assertEquals(List.of("dates.mzQC", "reordered.mzQC"), hits.map((h) -> h.file().getFileName().toString()).toList());
+        }
+        assertThrows(IllegalArgumentException.class, () -> RunQuery.all().withCreationDate(NOV_10, NOV_10.minusDays(1)));
+        assertThrows(IllegalArgumentException.class, () -> RunQuery.all().withValue("MS:4000059", 1, 0));
+    }
+
+    @Test
+    public void testSearch() throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            files.add(write("file_" + i + ".mzQC", MzQCGenerator.generate(i % 4 + 1, 0, 2)));
+        }
+        RunQuery query = RunQuery.all().withValue("MS:4000059", 1000, 2000);
+        List<MzQCSearch.Hit> hits;
+        try ( Stream<MzQCSearch.Hit> stream = new MzQCSearch(3).search(files, query)) {
+            hits = stream.toList();
+        }
+        // files with 2, 3 and 4 runs contain run_1, those with 3 and 4 runs also run_2
+        List<String> expected = new ArrayList<>();
+        for (Path file : files) {
+            try ( MzQCReader reader = new MzQCReader(file);  Stream<BaseQuality> runs = reader.runQualities()) {
+                runs.filter((r) -> query.matches(r, reader.getHeader().creationDate()))
+                        .forEach((r) -> expected.add(file.getFileName() + "/" + r.metadata().label()));
+            }
+        }
+        assertEquals(15, expected.size());
+        assertEquals(expected, hits.stream().map((h) -> h.file().getFileName() + "/" + h.run().metadata().label()).toList());
+        assertEquals(MzQCGenerator.CREATION_DATE, hits.get(0).header().creationDate());
+
+        try ( Stream<MzQCSearch.Hit> stream = new MzQCSearch(2).search(files, query)) {
+            Optional<MzQCSearch.Hit> first = stream.findFirst();
+            assertTrue(first.isPresent());
+            assertEquals("file_1.mzQC", first.get().file().getFileName().toString());
+        }
+
+        Path broken = tempDir.resolve("broken.mzQC");
+        Files.writeString(broken, "{\"mzQC\": {\"runQualities\": [");
+        List<Path> withBroken = List.of(files.get(1), broken);
+        try ( Stream<MzQCSearch.Hit> stream = new MzQCSearch(2).search(withBroken, query)) {
+            UncheckedIOException ex = assertThrows(UncheckedIOException.class, stream::toList);
+            assertTrue(ex.getMessage().contains("broken.mzQC"));
+        }
+        try ( Stream<MzQCSearch.Hit> stream = new MzQCSearch(1).search(List.of(), query)) {
+            assertFalse(stream.findAny().isPresent());
+        }
+    }
+}
@@ -22,12 +22,18 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
 import static java.util.Arrays.asList;
 import java.util.List;
 import java.util.Set;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 
@@ -164,4 +170,80 @@ public class MzQCTest {
         var messages2 = Converter.validate(file);
         assertTrue(messages2.isEmpty());
     }
+
+    @Test
+    public void testReadAndValidateInOnePass() throws IOException {
+        MzQC mzQC = MzQCGenerator.generate(5, 1, 3);
+        File file = File.createTempFile("read-single-pass", ".mzQC");
+        Converter.toJsonFile(mzQC, file);
+        ReadResult result = Converter.read(file.toPath());
+        assertTrue(result.isValid());
+        assertEquals(Converter.of(file), result.mzQC());
+
+        String invalid = Converter.toJsonString(mzQC).replace("\"version\" : \"1.0.0\"", "\"version\" : 1");
+        Files.writeString(file.toPath(), invalid, StandardCharsets.UTF_8);
+        ReadResult invalidResult = Converter.read(file.toPath());
+        assertFalse(invalidResult.isValid());
+        assertEquals(Converter.validate(file), invalidResult.validationMessages());
+        assertEquals("1", invalidResult.mzQC().version());
+        ReadResult unbound = Converter.read(file.toPath(), ReadOptions.defaults().withBindInvalid(false));
+        assertNull(unbound.mzQC());
+        ReadResult unvalidated = Converter.read(file.toPath(), ReadOptions.defaults().withValidate(false));
+        assertTrue(unvalidated.isValid());
+        assertNotNull(unvalidated.mzQC());
+    }
+
+    @Test
+    public void testAccessionIndex() {
+        MzQC mzQC = MzQCGenerator.generate(50, 2, 4);
+        AccessionIndex index = AccessionIndex.of(mzQC);
+        assertEquals(4, index.getRunAccessions().size());
+        for (int i = 0; i < mzQC.runQualities().size(); i++) {
+            for (String accession : index.getRunAccessions()) {
+                assertEquals(mzQC.getRunQualityMetricsByAccession(i, accession), index.getRunQualityMetrics(i, accession));
+            }
+        }
+        assertEquals(50, index.getRunQualityMetrics("MS:4000059").size());
+        assertEquals(50, index.getRunsWithAccession("MS:4000060").length);
+        assertEquals(2, index.getSetQualityMetrics("MS:4000135").size());
+        assertEquals(mzQC.setQualities().get(1).qualityMetrics().get(0), index.getSetQualityMetrics(1, "MS:4000059").get(0));
+        assertTrue(index.getRunQualityMetrics(3, "MS:0000000").isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> index.getRunQualityMetrics(50, "MS:4000059"));
+    }
+
+    @Test
+    public void testDateTimeFastPath() {
+        for (String text : List.of("2021-11-10T14:03:00Z", "2021-11-10T14:03Z", "2021-11-10T14:03:00.123456789+02:00",
+                "2020-02-29T23:59:59.5-11:30", "0001-01-01T00:00:00Z", "2021-11-10T24:00:00Z", "2021-02-30T10:00:00Z",
+                "2021-11-10 14:03:00.5Z", "2021-11-10T14:03:00")) {
+            OffsetDateTime expected = Converter.parseDateTimeString(text);
+            OffsetDateTime fast = Converter.parseIsoDateTime(text.toCharArray(), 0, text.length());
+            if (fast != null) {
+                assertEquals(expected, fast, text);
+            }
+            char[] buffer = new char[Converter.ISO_DATE_TIME_LENGTH];
+            int length = Converter.formatIsoDateTime(expected, buffer);
+            assertEquals(DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(expected), new String(buffer, 0, length), text);
+        }
+        assertNull(Converter.parseIsoDateTime("2021-13-10T14:03:00Z".toCharArray(), 0, 20));
+        assertThrows(IOException.class, () -> Converter.of("{\"mzQC\": {\"version\": \"1.0.0\", \"creationDate\": \"yesterday\"}}"));
+    }
+
+    @Test
+    public void testCodecRoundTrip() throws IOException {
+        MzQC mzQC = MzQCGenerator.generate(3, 1, 4);
+        assertEquals(mzQC, Converter.of(Converter.toJsonString(mzQC)));
+        // empty and null values are omitted, unknown properties are rejected with their path
+        var empty = new MzQC(null, null, List.of(), OffsetDateTime.parse("2021-11-10T14:03:00Z"), "", List.of(
+                new BaseQuality(new Metadata(List.of(), null, List.of(), "run"), List.of(new QualityMetric("MS:4000059", null, "n", null, null)))), null, "1.0.0");
+        String json = Converter.toJsonString(empty);
+        assertFalse(json.contains("description"));
+        assertFalse(json.contains("controlledVocabularies"));
+        assertFalse(json.contains("setQualities"));
+        assertEquals(empty.creationDate(), Converter.of(json).creationDate());
+        assertTrue(json.contains("\"2021-11-10T14:03:00Z\""), json);
+        String unknown = json.replace("\"label\"", "\"unknown\" : 1, \"label\"");
+        IOException ex = assertThrows(IOException.class, () -> Converter.of(unknown));
+        assertTrue(ex.getMessage().contains("runQualities"), ex.getMessage());
+    }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.networknt.schema.ValidationMessage;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class MzQCValidatorTest {
+
+    @Test
+    public void testSharedValidatorConcurrently() throws Exception {
+        assertSame(MzQCValidator.getDefault(), MzQCValidator.getDefault());
+        String valid = Converter.toJsonString(MzQCGenerator.generate(10, 1, 3));
+        String invalid = valid.replace("\"version\" : \"1.0.0\"", "\"version\" : 1");
+        Set<ValidationMessage> expected = new MzQCValidator().validate(invalid);
+        assertFalse(expected.isEmpty());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Set<ValidationMessage>>> tasks = IntStream.range(0, 64).mapToObj((i) -> (Callable<Set<ValidationMessage>>) () -> {
+                return MzQCValidator.getDefault().validate(i % 2 == 0 ? valid : invalid);
+            }).toList();
+            List<Future<Set<ValidationMessage>>> results = executor.invokeAll(tasks);
+            for (int i = 0; i < results.size(); i++) {
+                if (i % 2 == 0) {
+                    assertTrue(results.get(i).get().isEmpty());
+                } else {
+                    assertEquals(expected, results.get(i).get());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testValidateObjectMatchesJsonRoute() throws Exception {
+        MzQC valid = MzQCGenerator.generate(3, 1, 2);
+        assertTrue(Converter.validate(valid).isEmpty());
+        BaseQuality run = valid.runQualities().get(0);
+        Metadata metadata = new Metadata(run.metadata().analysisSoftware(), null, null, run.metadata().label());
+        MzQC invalid = new MzQC(null, null, null, valid.creationDate(), null,
+                List.of(new BaseQuality(metadata, run.qualityMetrics()), new BaseQuality(run.metadata(), List.of(new QualityMetric("MS:4000059", null, null, 1, null)))),
+                null, null);
+        Set<ValidationMessage> fromJson = MzQCValidator.getDefault().validate(Converter.toJsonString(invalid));
+        Set<ValidationMessage> fromObject = MzQCValidator.getDefault().validate(invalid);
+        assertFalse(fromJson.isEmpty());
+        assertEquals(fromJson, fromObject);
+    }
+}
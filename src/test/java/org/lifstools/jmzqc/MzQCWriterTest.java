@@ -0,0 +1,107 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.networknt.schema.ValidationMessage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class MzQCWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testWriteIncrementally() throws IOException {
+        MzQC mzQC = MzQCGenerator.generate(40, 2, 3);
+        MzQC header = new MzQC(mzQC.contactAddress(), mzQC.contactName(), mzQC.controlledVocabularies(), mzQC.creationDate(), mzQC.description(), null, null, mzQC.version());
+        File file = tempDir.resolve("writer-test.mzQC").toFile();
+        try ( MzQCWriter writer = new MzQCWriter(file, header)) {
+            for (BaseQuality run : mzQC.runQualities()) {
+                writer.writeRunQuality(run);
+            }
+            for (BaseQuality set : mzQC.setQualities()) {
+                writer.writeSetQuality(set);
+            }
+            assertThrows(IllegalStateException.class, () -> writer.writeRunQuality(mzQC.runQualities().get(0)));
+        }
+        Set<ValidationMessage> messages = Converter.validate(file);
+        assertTrue(messages.isEmpty(), messages.toString());
+        File expectedFile = tempDir.resolve("writer-test-expected.mzQC").toFile();
+        MzQC expected = Converter.of(Converter.toJsonFile(mzQC, expectedFile));
+        assertEquals(expected, Converter.of(file));
+    }
+
+    @Test
+    public void testWriteSmile() throws IOException {
+        MzQC mzQC = MzQCGenerator.generate(4, 1, 3);
+        Path file = tempDir.resolve("writer-test.mzQC.smile");
+        new MzQCWriter(file, mzQC).close();
+        byte[] data = Files.readAllBytes(file);
+        assertEquals(MzQCFormat.SMILE, MzQCFormat.detect(data, data.length));
+        assertEquals(mzQC, Converter.of(file.toFile()));
+    }
+
+    @Test
+    public void testStreamClosedIfHeaderFails() {
+        AtomicBoolean closed = new AtomicBoolean();
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+        // the header holds enough run qualities to overflow the generator buffer
+        assertThrows(IOException.class, () -> new MzQCWriter(failing, MzQCGenerator.generate(200, 0, 10)));
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void testWriteSetQualitiesOnly() throws IOException {
+        MzQC mzQC = MzQCGenerator.generate(0, 2, 1);
+        File file = tempDir.resolve("writer-test-sets.mzQC").toFile();
+        new MzQCWriter(file, mzQC).close();
+        MzQC read = Converter.of(file);
+        assertEquals(Collections.emptyList(), read.runQualities());
+        assertEquals(2, read.setQualities().size());
+        assertTrue(Converter.validate(file).isEmpty());
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares binding a complete document with reading a projection of two
+ * scalar accessions from a document with large table values. Run with the
+ * {@code -prof gc} JMH argument to compare allocation rates.
+ *
+ * Run with {@code ./mvnw -Pjmh -DskipTests verify -Djmh.includes=ProjectionBenchmark}.
+ *
+ * @author nilshoffmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProjectionBenchmark {
+
+    private File file;
+    private Projection accessions;
+    private Projection singleRun;
+
+    @Setup
+    public void setup() throws IOException {
+        file = File.createTempFile("projection-benchmark", ".mzQC");
+        Converter.toJsonFile(MzQCGenerator.generate(100, 1, 20, 2000), file);
+        accessions = Projection.all().withAccessions("MS:4000059", "MS:4000060");
+        singleRun = Projection.all().withRunIndices(50);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public MzQC readAll() throws IOException {
+        return Converter.of(file);
+    }
+
+    @Benchmark
+    public MzQC readAccessions() throws IOException {
+        try (MzQCReader reader = new MzQCReader(file, accessions)) {
+            return reader.read();
+        }
+    }
+
+    @Benchmark
+    public MzQC readSingleRun() throws IOException {
+        try (MzQCReader reader = new MzQCReader(file, singleRun)) {
+            return reader.read();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class QcOntologyTest {
+
+    @Test
+    public void testBundledVocabulary() {
+        QcOntology cv = QcOntology.getDefault();
+        assertSame(cv, QcOntology.getDefault());
+        assertEquals(239, cv.getTerms().size());
+        QcOntology.Term ms1Spectra = cv.getTerm("MS:4000059").orElseThrow();
+        assertEquals("Number of MS1 spectra", ms1Spectra.name());
+        assertEquals("The number of MS1 events in the run.", ms1Spectra.definition());
+        assertEquals(List.of("UO:0000189"), ms1Spectra.getUnits());
+        assertEquals(List.of("MS1-Count"), ms1Spectra.synonyms());
+        assertEquals(QcOntology.ValueType.SINGLE_VALUE, ms1Spectra.valueType());
+        assertTrue(cv.isMetric("MS:4000059"));
+        assertTrue(cv.isA("MS:4000059", "MS:4000023"));
+        assertFalse(cv.isA("MS:4000059", "MS:4000024"));
+        assertTrue(cv.hasRelation("MS:4000059", "MS:4000013"));
+        assertTrue(cv.getAncestors("MS:4000059").contains(QcOntology.QC_METRIC));
+
+        assertEquals(QcOntology.ValueType.N_TUPLE, cv.getValueType("MS:4000051"));
+        QcOntology.Term tic = cv.getTerm("MS:4000067").orElseThrow();
+        assertEquals(QcOntology.ValueType.TABLE, tic.valueType());
+        assertEquals(List.of("MS:4000108", "MS:4000109"), tic.getColumns());
+
+        assertFalse(cv.contains("MS:9999999"));
+        assertEquals(QcOntology.ValueType.UNKNOWN, cv.getValueType("MS:9999999"));
+        assertFalse(cv.isMetric(null));
+    }
+}
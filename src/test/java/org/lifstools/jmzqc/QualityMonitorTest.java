@@ -0,0 +1,128 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class QualityMonitorTest {
+
+    private static final String ACCESSION = "MS:4000059";
+
+    @TempDir
+    Path tempDir;
+
+    private static BaseQuality run(int index, double value) {
+        return new BaseQuality(new Metadata(null, null, null, "run_" + index),
+                new ArrayList<>(List.of(
+                        new QualityMetric(ACCESSION, null, "number of MS1 spectra", value, null),
+                        new QualityMetric("MS:4000067", null, "table", List.of(1, 2), null))));
+    }
+
+    private static OffsetDateTime date(int index) {
+        return MzQCGenerator.CREATION_DATE.plusHours(index);
+    }
+
+    private static double baseline(int index) {
+        return 100 + ((index * 7) % 5) - 2;
+    }
+
+    @Test
+    public void testOutliers() {
+        QualityMonitor monitor = new QualityMonitor(QualityMonitor.Settings.defaults());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(List.of(), monitor.observe(run(i, baseline(i)), date(i)));
+        }
+        List<QualityMonitor.Outlier> outliers = monitor.observe(run(50, 150), date(50));
+        Set<QualityMonitor.Rule> rules = outliers.stream().map(QualityMonitor.Outlier::rule).collect(Collectors.toSet());
+        assertEquals(EnumSet.allOf(QualityMonitor.Rule.class), rules);
+        QualityMonitor.Outlier shewhart = outliers.stream().filter((o) -> o.rule() == QualityMonitor.Rule.SHEWHART).findFirst().get();
+        assertEquals("run_50", shewhart.runLabel());
+        assertEquals(ACCESSION, shewhart.accession());
+        assertTrue(shewhart.upper() < 150 && shewhart.lower() > 90);
+        assertEquals(51, monitor.getObservations());
+        assertEquals(51, monitor.getState(ACCESSION).count());
+        assertEquals(100, monitor.getState(ACCESSION).median(), 2.0d);
+
+        assertThrows(IllegalArgumentException.class, () -> monitor.observe(run(51, 100), date(10)));
+        assertThrows(IllegalArgumentException.class, () -> QualityMonitor.Settings.defaults().withLambda(0));
+    }
+
+    @Test
+    public void testWarmup() {
+        QualityMonitor monitor = new QualityMonitor(QualityMonitor.Settings.defaults().withWarmup(3));
+        monitor.observe(run(0, 100), null);
+        monitor.observe(run(1, 101), null);
+        assertEquals(List.of(), monitor.observe(run(2, 1000), null));
+        assertTrue(!monitor.observe(run(3, 1e6), null).isEmpty());
+    }
+
+    @Test
+    public void testSnapshot() throws IOException {
+        QualityMonitor uninterrupted = new QualityMonitor(QualityMonitor.Settings.defaults().withLambda(0.3d));
+        QualityMonitor first = new QualityMonitor(QualityMonitor.Settings.defaults().withLambda(0.3d));
+        for (int i = 0; i < 20; i++) {
+            uninterrupted.observe(run(i, baseline(i)), date(i));
+            first.observe(run(i, baseline(i)), date(i));
+        }
+        Path snapshot = tempDir.resolve("monitor.json.gz");
+        assertTrue(QualityMonitor.restore(snapshot).isEmpty());
+        first.snapshot(snapshot);
+        QualityMonitor restored = QualityMonitor.restore(snapshot).get();
+        assertEquals(first.getSettings(), restored.getSettings());
+        assertEquals(first.getStates(), restored.getStates());
+        assertEquals(20, restored.getObservations());
+        assertTrue(date(19).isEqual(restored.getLastCreationDate()));
+        for (int i = 20; i < 30; i++) {
+            double value = i == 25 ? 200 : baseline(i);
+            assertEquals(uninterrupted.observe(run(i, value), date(i)), restored.observe(run(i, value), date(i)));
+        }
+        assertEquals(uninterrupted.getStates(), restored.getStates());
+    }
+
+    @Test
+    public void testObserveDocumentInCompletionTimeOrder() {
+        List<BaseQuality> runs = new ArrayList<>();
+        for (int i = 9; i >= 0; i--) {
+            var inputFile = new InputFile(null,
+                    List.of(new CvParameter(MzQCMerger.COMPLETION_TIME, null, "completion time", date(i).toString())),
+                    null, "run_" + i + ".mzML");
+            runs.add(new BaseQuality(new Metadata(null, null, List.of(inputFile), "run_" + i),
+                    new ArrayList<>(List.of(new QualityMetric(ACCESSION, null, null, i == 9 ? 500 : baseline(i), null)))));
+        }
+        MzQC mzQC = new MzQC(null, null, null, MzQCGenerator.CREATION_DATE, null, runs, null, "1.0.0");
+        QualityMonitor monitor = new QualityMonitor(QualityMonitor.Settings.defaults());
+        List<QualityMonitor.Outlier> outliers = monitor.observe(mzQC);
+        assertTrue(!outliers.isEmpty());
+        assertTrue(outliers.stream().allMatch((o) -> "run_9".equals(o.runLabel())));
+        assertTrue(date(9).isEqual(monitor.getLastCreationDate()));
+    }
+}
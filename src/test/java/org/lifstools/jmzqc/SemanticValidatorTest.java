@@ -0,0 +1,76 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.networknt.schema.ValidationMessage;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class SemanticValidatorTest {
+
+    private static final Unit COUNT_UNIT = new Unit(new CvParameter("UO:0000189", null, "count unit", null), null);
+    private static final Unit SECOND_UNIT = new Unit(new CvParameter("UO:0000010", null, "second", null), null);
+
+    @Test
+    public void testSemanticChecks() {
+        BaseQuality run = MzQCGenerator.generate(1, 0, 0).runQualities().get(0);
+        List<QualityMetric> metrics = List.of(
+                new QualityMetric("MS:4000059", null, "Number of MS1 spectra", 13405, COUNT_UNIT),
+                new QualityMetric("MS:1000000", null, "term from another vocabulary", 1, null),
+                new QualityMetric("MS:4999999", null, "unknown", 1, null),
+                new QualityMetric("MS:4000006", null, "table", 1, null),
+                new QualityMetric("MS:4000067", null, "Total ion current chromatogram table", 3, null),
+                new QualityMetric("MS:4000067", null, "Total ion current chromatogram table", Map.of("MS:4000108", List.of(1.0, 2.0)), null),
+                new QualityMetric("MS:4000059", null, "Number of MS1 spectra", 13405, SECOND_UNIT),
+                new QualityMetric("MS:4000067", null, "Total ion current chromatogram table", Map.of("MS:4000108", List.of(1.0, 2.0), "MS:4000109", List.of(3.0, 4.0)), SECOND_UNIT),
+                new QualityMetric("MS:4000059", null, "Number of MS1 spectra", 13405, null));
+        MzQC mzQC = new MzQC(null, null, null, MzQCGenerator.CREATION_DATE, null, List.of(new BaseQuality(run.metadata(), metrics)), null, "1.0.0");
+        Set<ValidationMessage> messages = SemanticValidator.getDefault().validate(mzQC);
+        Map<String, String> typeByPath = messages.stream().collect(Collectors.toMap(ValidationMessage::getPath, ValidationMessage::getType));
+        assertEquals(Map.of(
+                "$.mzQC.runQualities[0].qualityMetrics[2].accession", SemanticValidator.TYPE_UNKNOWN_TERM,
+                "$.mzQC.runQualities[0].qualityMetrics[3].accession", SemanticValidator.TYPE_NOT_A_METRIC,
+                "$.mzQC.runQualities[0].qualityMetrics[4].value", SemanticValidator.TYPE_VALUE_TYPE,
+                "$.mzQC.runQualities[0].qualityMetrics[5].value", SemanticValidator.TYPE_MISSING_COLUMN,
+                "$.mzQC.runQualities[0].qualityMetrics[6].unit", SemanticValidator.TYPE_UNEXPECTED_UNIT,
+                "$.mzQC.runQualities[0].qualityMetrics[7].unit", SemanticValidator.TYPE_MISSING_COLUMN_UNIT), typeByPath);
+        assertTrue(messages.stream().anyMatch((m) -> m.getMessage().equals("$.mzQC.runQualities[0].qualityMetrics[5].value: table metric MS:4000067 (Total ion current chromatogram table) is missing required column MS:4000109")));
+        assertTrue(messages.stream().anyMatch((m) -> m.getMessage().equals("$.mzQC.runQualities[0].qualityMetrics[6].unit: unit UO:0000010 is not declared for metric MS:4000059 (Number of MS1 spectra), expected one of [UO:0000189]")));
+        assertTrue(messages.stream().anyMatch((m) -> m.getMessage().equals("$.mzQC.runQualities[0].qualityMetrics[7].unit: table metric MS:4000067 (Total ion current chromatogram table) has no unit for column MS:4000109, expected one of [MS:1000043]")));
+    }
+
+    @Test
+    public void testReadWithSemanticValidation() throws IOException {
+        MzQC mzQC = MzQCGenerator.generate(2, 1, 20, 3);
+        File file = File.createTempFile("semantic-validation", ".mzQC");
+        Converter.toJsonFile(mzQC, file);
+        assertTrue(Converter.read(file.toPath()).isValid());
+        ReadResult result = Converter.read(file.toPath(), ReadOptions.defaults().withValidateSemantics(true));
+        // all metrics of the generator are defined in the vocabulary
+        assertTrue(result.validationMessages().isEmpty());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Unit.Deserializer} for the single term and the term array
+ * form of a unit, alone and as part of 1000 quality metrics.
+ *
+ * Run with {@code ./mvnw -Pjmh -DskipTests verify -Djmh.includes=UnitBenchmark}.
+ *
+ * @author nilshoffmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UnitBenchmark {
+
+    private ObjectReader unitReader;
+    private ObjectReader metricsReader;
+    private byte[] singleUnit;
+    private byte[] arrayUnit;
+    private byte[] metrics;
+
+    @Setup
+    public void setup() throws IOException {
+        var mapper = Converter.getObjectMapper();
+        unitReader = mapper.readerFor(Unit.class);
+        metricsReader = mapper.readerFor(new TypeReference<List<QualityMetric>>() {
+        });
+        Unit single = new Unit(new CvParameter("UO:0000010", "A time unit which is equal to the duration of 9 192 631 770 periods of the radiation.", "second", null), null);
+        Unit array = new Unit(null, asList(
+                new CvParameter("UO:0000010", null, "second", null),
+                new CvParameter("UO:0000189", null, "count unit", null)));
+        singleUnit = mapper.writeValueAsBytes(single);
+        arrayUnit = mapper.writeValueAsBytes(array);
+        List<QualityMetric> list = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            list.add(new QualityMetric("MS:4000070", "retention time acquisition range", "retention time acquisition range", asList(i * 1.0d, i * 2.0d), i % 2 == 0 ? single : array));
+        }
+        metrics = mapper.writeValueAsBytes(list);
+    }
+
+    @Benchmark
+    public Unit singleUnit() throws IOException {
+        return unitReader.readValue(singleUnit);
+    }
+
+    @Benchmark
+    public Unit arrayUnit() throws IOException {
+        return unitReader.readValue(arrayUnit);
+    }
+
+    @Benchmark
+    public List<QualityMetric> metricsWithUnits() throws IOException {
+        return metricsReader.readValue(metrics);
+    }
+}
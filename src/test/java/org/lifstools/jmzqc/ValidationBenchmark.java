@@ -0,0 +1,87 @@
+/*
+ * Copyright 2021 Nils Hoffmann.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.lifstools.jmzqc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.networknt.schema.JsonSchemaFactory;
+import com.networknt.schema.SchemaValidatorsConfig;
+import com.networknt.schema.SpecVersion;
+import com.networknt.schema.ValidationMessage;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the per-call latency of schema validation with a schema that is
+ * compiled for every call (the behavior before {@link MzQCValidator}) and
+ * with the shared, precompiled validator.
+ *
+ * Run with {@code ./mvnw -Pjmh -DskipTests verify -Djmh.includes=ValidationBenchmark}.
+ *
+ * @author nilshoffmann
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationBenchmark {
+
+    @Param({"small", "large"})
+    public String document;
+
+    private JsonNode tree;
+    private MzQCValidator validator;
+
+    @Setup
+    public void setup() throws IOException {
+        MzQC mzQC = switch (document) {
+            case "small" ->
+                MzQCGenerator.generate(1, 0, 5);
+            case "large" ->
+                MzQCGenerator.generate(1000, 10, 20);
+            default ->
+                throw new IllegalArgumentException("Unknown document size: " + document);
+        };
+        tree = Converter.getObjectMapper().readTree(Converter.toJsonString(mzQC));
+        validator = MzQCValidator.getDefault();
+    }
+
+    @Benchmark
+    public Set<ValidationMessage> recompiledSchema() {
+        JsonSchemaFactory factory = JsonSchemaFactory.getInstance(SpecVersion.VersionFlag.V7);
+        SchemaValidatorsConfig config = new SchemaValidatorsConfig();
+        config.setHandleNullableField(false);
+        return factory.getSchema(Converter.class.getResourceAsStream(MzQCValidator.SCHEMA_RESOURCE), config).validate(tree);
+    }
+
+    @Benchmark
+    public Set<ValidationMessage> compiledSchema() {
+        return validator.validate(tree);
+    }
+}